@@ -0,0 +1,101 @@
+package nlScript.mic;
+
+import nlScript.mic.Microscope.Channel;
+import nlScript.mic.Microscope.Position;
+
+/**
+ * The 16-bit planes of a z-stack acquired at one position with one channel, in the order they
+ * were acquired (top-down or bottom-up). Listeners that keep the stack after stackAcquired()
+ * returns retain it, and release it when done, so that pooled frames can be reused.
+ */
+public class AcquiredStack {
+
+	private final Position position;
+	private final Channel channel;
+	private final int width;
+	private final int height;
+	private final double pixelWidth;  // microns
+	private final double dz;
+	private final boolean topDown;
+	private final Frame[] planes;
+
+	public AcquiredStack(Position position, Channel channel, int width, int height, double pixelWidth, double dz, boolean topDown, Frame[] planes) {
+		this.position = position;
+		this.channel = channel;
+		this.width = width;
+		this.height = height;
+		this.pixelWidth = pixelWidth;
+		this.dz = dz;
+		this.topDown = topDown;
+		this.planes = planes;
+	}
+
+	public Position getPosition() {
+		return position;
+	}
+
+	public Channel getChannel() {
+		return channel;
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	public double getPixelWidth() {
+		return pixelWidth;
+	}
+
+	public double getDz() {
+		return dz;
+	}
+
+	public boolean isTopDown() {
+		return topDown;
+	}
+
+	public int getPlaneCount() {
+		return planes.length;
+	}
+
+	// in acquisition order
+	public Frame getFrame(int i) {
+		return planes[i];
+	}
+
+	// a copy of the i-th plane in acquisition order
+	public short[] getPlane(int i) {
+		return planes[i].toArray();
+	}
+
+	public AcquiredStack retain() {
+		for(Frame frame : planes)
+			frame.retain();
+		return this;
+	}
+
+	public void release() {
+		for(Frame frame : planes)
+			frame.release();
+	}
+
+	// stage z of the i-th acquired plane
+	public double getZ(int i) {
+		double bottom = position.center.z - position.extent.z / 2;
+		double top = position.center.z + position.extent.z / 2;
+		return topDown ? top - i * dz : bottom + i * dz;
+	}
+
+	public long getSizeInBytes() {
+		return 2L * width * height * planes.length;
+	}
+
+	public String toString() {
+		return position.name + " / " + channel.name + ": " + width + "x" + height + "x" + planes.length
+				+ (topDown ? " (top-down)" : " (bottom-up)");
+	}
+}
@@ -0,0 +1,46 @@
+package nlScript.mic;
+
+import nlScript.mic.Microscope.Binning;
+import nlScript.mic.Microscope.Lens;
+import nlScript.mic.Microscope.MagnificationChanger;
+
+import java.util.Arrays;
+
+// What an acquisition sentence acquires, and with which optics settings
+public class Acquisition {
+
+	public final String[] positionNames;
+	public final String[] channelNames;
+	public final double dz;
+	public final Lens lens;
+	public final MagnificationChanger magnificationChanger;
+	public final Binning binning;
+
+	// compiled by the microscope on first use, see Microscope.acquire(Acquisition)
+	volatile AcquisitionPlan compiled;
+
+	public Acquisition(String[] positionNames, String[] channelNames, double dz, Lens lens, MagnificationChanger magnificationChanger, Binning binning) {
+		// rather than failing each time it is acquired
+		if(!(dz > 0))
+			throw new IllegalArgumentException("The z step of a stack must be positive: " + dz);
+		this.positionNames = positionNames;
+		this.channelNames = channelNames;
+		this.dz = dz;
+		this.lens = lens;
+		this.magnificationChanger = magnificationChanger;
+		this.binning = binning;
+	}
+
+	// whether both can be acquired in the same pass, without changing the optics in between
+	public boolean isCompatible(Acquisition o) {
+		return lens == o.lens
+				&& magnificationChanger == o.magnificationChanger
+				&& binning == o.binning
+				&& dz == o.dz;
+	}
+
+	public String toString() {
+		return "acquire " + Arrays.toString(positionNames) + " x " + Arrays.toString(channelNames)
+				+ " (dz = " + dz + ", " + lens + ", " + magnificationChanger + ", " + binning + ")";
+	}
+}
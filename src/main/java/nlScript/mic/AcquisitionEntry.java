@@ -0,0 +1,21 @@
+package nlScript.mic;
+
+import nlScript.mic.Microscope.Resource;
+
+public class AcquisitionEntry extends TimelineEntry {
+
+	private final Acquisition acquisition;
+
+	public AcquisitionEntry(Series series, int cycle, Acquisition acquisition, Microscope microscope) {
+		super(Kind.ACQUISITION, Resource.OPTICS, series, cycle, () -> microscope.acquire(acquisition));
+		this.acquisition = acquisition;
+	}
+
+	public Acquisition getAcquisition() {
+		return acquisition;
+	}
+
+	public String toString() {
+		return getPlannedTime() + ": " + acquisition;
+	}
+}
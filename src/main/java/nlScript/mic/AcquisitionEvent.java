@@ -0,0 +1,116 @@
+package nlScript.mic;
+
+import nlScript.mic.Microscope.Binning;
+import nlScript.mic.Microscope.Channel;
+import nlScript.mic.Microscope.LED;
+import nlScript.mic.Microscope.LEDSetting;
+import nlScript.mic.Microscope.Lens;
+import nlScript.mic.Microscope.MagnificationChanger;
+import nlScript.mic.Microscope.Position;
+
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * The state of the microscope at the time a stack was acquired. Events are slots of an
+ * {@link AcquisitionEventBus} and are reused, so consumers must copy what they want to keep.
+ */
+public class AcquisitionEvent {
+
+	private static final LED[] LEDS = LED.values();
+
+	// guards the slot against being overwritten while a non-blocking consumer reads it
+	final StampedLock lock = new StampedLock();
+
+	long sequence = -1;
+	private long time;
+	private Position position;
+	private Channel channel;
+	private int exposureTime;
+	private final int[] ledIntensities = new int[LEDS.length];
+	private Lens lens;
+	private MagnificationChanger magnificationChanger;
+	private Binning binning;
+	private double temperature;
+	private double co2Concentration;
+
+	void set(long sequence, Position position, Channel channel, Microscope microscope) {
+		this.sequence = sequence;
+		this.time = System.currentTimeMillis();
+		this.position = position;
+		this.channel = channel;
+		this.exposureTime = channel == null ? 0 : channel.getExposureTime();
+		for(int i = 0; i < LEDS.length; i++) {
+			LEDSetting setting = channel == null ? null : channel.getLEDSetting(LEDS[i]);
+			ledIntensities[i] = setting == null ? -1 : setting.getIntensity();
+		}
+		this.lens = microscope.getLens();
+		this.magnificationChanger = microscope.getMagnificationChanger();
+		this.binning = microscope.getBinning();
+		this.temperature = microscope.getTemperature();
+		this.co2Concentration = microscope.getCO2Concentration();
+	}
+
+	void copyFrom(AcquisitionEvent o) {
+		sequence = o.sequence;
+		time = o.time;
+		position = o.position;
+		channel = o.channel;
+		exposureTime = o.exposureTime;
+		System.arraycopy(o.ledIntensities, 0, ledIntensities, 0, ledIntensities.length);
+		lens = o.lens;
+		magnificationChanger = o.magnificationChanger;
+		binning = o.binning;
+		temperature = o.temperature;
+		co2Concentration = o.co2Concentration;
+	}
+
+	public long getSequence() {
+		return sequence;
+	}
+
+	// wall clock time in milliseconds
+	public long getTime() {
+		return time;
+	}
+
+	public Position getPosition() {
+		return position;
+	}
+
+	public Channel getChannel() {
+		return channel;
+	}
+
+	public int getExposureTime() {
+		return exposureTime;
+	}
+
+	// -1 if the LED was off
+	public int getLEDIntensity(LED led) {
+		return ledIntensities[led.ordinal()];
+	}
+
+	public Lens getLens() {
+		return lens;
+	}
+
+	public MagnificationChanger getMagnificationChanger() {
+		return magnificationChanger;
+	}
+
+	public Binning getBinning() {
+		return binning;
+	}
+
+	public double getTemperature() {
+		return temperature;
+	}
+
+	public double getCO2Concentration() {
+		return co2Concentration;
+	}
+
+	public String toString() {
+		return "#" + sequence + " " + (position == null ? null : position.name) + " / " + (channel == null ? null : channel.name);
+	}
+}
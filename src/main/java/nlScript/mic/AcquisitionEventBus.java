@@ -0,0 +1,300 @@
+package nlScript.mic;
+
+import nlScript.mic.Microscope.Channel;
+import nlScript.mic.Microscope.Position;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * Decouples acquisition from slow listeners such as the UI, storage or analysis. The microscope
+ * publishes every acquired stack into a ring buffer of preallocated events (a single producer at a
+ * time), and each subscriber processes them on its own thread, keeping track of its own sequence.
+ * What happens when a subscriber falls behind by the whole buffer depends on its backpressure
+ * policy, only BLOCK subscribers can hold up acquisition.
+ */
+public class AcquisitionEventBus implements Microscope.AcquisiitonListener {
+
+	public enum WaitStrategy {
+		BUSY_SPIN,  // lowest latency, but occupies a core for every waiting thread
+		YIELDING,   // spins, then yields
+		SLEEPING,   // spins, yields, then parks for 100 microseconds at a time
+		BLOCKING    // parks until signalled
+	}
+
+	public enum Backpressure {
+		BLOCK,   // acquisition waits for the subscriber, no event is lost
+		DROP,    // the subscriber loses the oldest events it has not processed yet
+		SAMPLE   // the subscriber skips to the latest event whenever it is ready for the next one
+	}
+
+	private static final int SPIN_TRIES = 100;
+
+	// upper limit for parking, in case a wake-up is missed
+	private static final long MAX_PARK_NANOS = 10_000_000L;
+
+	private final Microscope microscope;
+	private final AcquisitionEvent[] ring;
+	private final int mask;
+	private final WaitStrategy waitStrategy;
+
+	private volatile long published = -1;
+	private final AtomicReference<Subscription[]> subscriptions = new AtomicReference<>(new Subscription[0]);
+	private volatile Thread waitingProducer;
+	private long producerWaitNanos = 0;
+
+	public class Subscription {
+		private final String name;
+		private final Backpressure backpressure;
+		private final Consumer<AcquisitionEvent> handler;
+		// what non-blocking subscribers process, so that the slot may be overwritten meanwhile
+		private final AcquisitionEvent copy = new AcquisitionEvent();
+		private final Thread thread;
+
+		private volatile long sequence;  // of the last processed event
+		private volatile long stopAt = Long.MAX_VALUE;
+		private volatile boolean parked = false;
+		private volatile long processed = 0;
+		private volatile long dropped = 0;
+		private volatile long failed = 0;
+
+		private Subscription(String name, Backpressure backpressure, Consumer<AcquisitionEvent> handler, long sequence) {
+			this.name = name;
+			this.backpressure = backpressure;
+			this.handler = handler;
+			this.sequence = sequence;
+			this.thread = new Thread(this::run, "Acquisition events: " + name);
+			this.thread.setDaemon(true);
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public Backpressure getBackpressure() {
+			return backpressure;
+		}
+
+		public long getProcessedCount() {
+			return processed;
+		}
+
+		public long getDroppedCount() {
+			return dropped;
+		}
+
+		// processed events the handler threw an exception for
+		public long getFailedCount() {
+			return failed;
+		}
+
+		// number of published events not processed yet
+		public long getLag() {
+			return Math.max(0, published - sequence);
+		}
+
+		// Processes what has been published so far (as far as the backpressure policy permits), then stops
+		public void close() throws InterruptedException {
+			stopAt = published;
+			LockSupport.unpark(thread);
+			thread.join();
+			remove(this);
+		}
+
+		private void run() {
+			long next = sequence + 1;
+			while(next <= stopAt) {
+				long available = Math.min(published, stopAt);
+				if(available < next) {
+					await(next);
+					continue;
+				}
+				if(backpressure == Backpressure.BLOCK) {
+					// the producer does not overwrite the slot before we are done with it
+					handle(ring[(int) next & mask]);
+					sequence = next++;
+					Thread producer = waitingProducer;
+					if(producer != null)
+						LockSupport.unpark(producer);
+					continue;
+				}
+				if(backpressure == Backpressure.SAMPLE && available > next) {
+					dropped += available - next;
+					next = available;
+				}
+				long oldest = available - ring.length + 1;
+				if(next < oldest) {
+					dropped += oldest - next;
+					next = oldest;
+				}
+				// try again if it was overwritten meanwhile
+				if(!read(next, copy))
+					continue;
+				handle(copy);
+				sequence = next++;
+			}
+		}
+
+		private void handle(AcquisitionEvent event) {
+			try {
+				handler.accept(event);
+			} catch(RuntimeException e) {
+				// a failing handler fails for most events, so only the first exception is reported
+				if(failed++ == 0) {
+					System.err.println("Acquisition event subscriber " + name + " failed, further failures are only counted:");
+					e.printStackTrace();
+				}
+			}
+			processed++;
+		}
+
+		private void await(long next) {
+			int counter = 0;
+			while(published < next && stopAt >= next) {
+				if(waitStrategy == WaitStrategy.BLOCKING) {
+					parked = true;
+					if(published < next && stopAt >= next)
+						LockSupport.parkNanos(this, MAX_PARK_NANOS);
+					parked = false;
+				} else {
+					idle(counter++);
+				}
+			}
+		}
+	}
+
+	// The capacity is rounded up to a power of 2
+	public AcquisitionEventBus(Microscope microscope, int capacity, WaitStrategy waitStrategy) {
+		int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+		this.microscope = microscope;
+		this.ring = new AcquisitionEvent[size];
+		for(int i = 0; i < size; i++)
+			ring[i] = new AcquisitionEvent();
+		this.mask = size - 1;
+		this.waitStrategy = waitStrategy;
+		microscope.addAcquisitionListener(this);
+	}
+
+	// Subscribers see the events published after they subscribed
+	public Subscription subscribe(String name, Backpressure backpressure, Consumer<AcquisitionEvent> handler) {
+		Subscription s;
+		// the producer's lock, so that no event is published in between
+		synchronized(this) {
+			s = new Subscription(name, backpressure, handler, published);
+			Subscription[] current, updated;
+			do {
+				current = subscriptions.get();
+				updated = Arrays.copyOf(current, current.length + 1);
+				updated[current.length] = s;
+			} while(!subscriptions.compareAndSet(current, updated));
+		}
+		s.thread.start();
+		return s;
+	}
+
+	private void remove(Subscription s) {
+		Subscription[] current, updated;
+		do {
+			current = subscriptions.get();
+			updated = Arrays.stream(current).filter(o -> o != s).toArray(Subscription[]::new);
+		} while(!subscriptions.compareAndSet(current, updated));
+	}
+
+	// Stops listening to the microscope, and closes all subscriptions once they processed what was published
+	public void close() throws InterruptedException {
+		microscope.removeAcquisitionListener(this);
+		for(Subscription s : subscriptions.get())
+			s.close();
+	}
+
+	@Override
+	public synchronized void acquire(Position position, Channel channel) {
+		long next = published + 1;
+		long wrapPoint = next - ring.length;
+		if(wrapPoint > gatingSequence())
+			awaitSpace(wrapPoint);
+
+		AcquisitionEvent slot = ring[(int) next & mask];
+		long stamp = slot.lock.writeLock();
+		try {
+			slot.set(next, position, channel, microscope);
+		} finally {
+			slot.lock.unlockWrite(stamp);
+		}
+		published = next;
+
+		if(waitStrategy == WaitStrategy.BLOCKING) {
+			for(Subscription s : subscriptions.get())
+				if(s.parked)
+					LockSupport.unpark(s.thread);
+		}
+	}
+
+	// the sequence up to which all BLOCK subscribers are done
+	private long gatingSequence() {
+		long min = Long.MAX_VALUE;
+		for(Subscription s : subscriptions.get())
+			if(s.backpressure == Backpressure.BLOCK)
+				min = Math.min(min, s.sequence);
+		return min;
+	}
+
+	private void awaitSpace(long wrapPoint) {
+		long start = System.nanoTime();
+		int counter = 0;
+		while(wrapPoint > gatingSequence()) {
+			if(waitStrategy == WaitStrategy.BLOCKING) {
+				waitingProducer = Thread.currentThread();
+				if(wrapPoint > gatingSequence())
+					LockSupport.parkNanos(this, MAX_PARK_NANOS);
+				waitingProducer = null;
+			} else {
+				idle(counter++);
+			}
+		}
+		producerWaitNanos += System.nanoTime() - start;
+	}
+
+	private void idle(int counter) {
+		switch(waitStrategy) {
+			case YIELDING:
+				if(counter >= SPIN_TRIES)
+					Thread.yield();
+				break;
+			case SLEEPING:
+				if(counter >= 2 * SPIN_TRIES)
+					LockSupport.parkNanos(100_000L);
+				else if(counter >= SPIN_TRIES)
+					Thread.yield();
+				break;
+			default:
+				break;
+		}
+	}
+
+	// Copies the event with the given sequence, returns false if it has been overwritten
+	private boolean read(long sequence, AcquisitionEvent into) {
+		AcquisitionEvent slot = ring[(int) sequence & mask];
+		long stamp = slot.lock.tryOptimisticRead();
+		if(stamp == 0 || slot.sequence != sequence)
+			return false;
+		into.copyFrom(slot);
+		return slot.lock.validate(stamp);
+	}
+
+	public long getPublishedCount() {
+		return published + 1;
+	}
+
+	// how long acquisition waited for BLOCK subscribers
+	public synchronized Duration getProducerWaitTime() {
+		return Duration.ofNanos(producerWaitNanos);
+	}
+
+	public int getCapacity() {
+		return ring.length;
+	}
+}
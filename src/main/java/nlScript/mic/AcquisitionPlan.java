@@ -0,0 +1,67 @@
+package nlScript.mic;
+
+import nlScript.mic.Microscope.Channel;
+import nlScript.mic.Microscope.Position;
+
+/**
+ * An acquisition compiled against a microscope's definitions: the stacks to acquire, with their
+ * positions and channels resolved, in the order and z direction they are acquired in. Running it
+ * does no name lookups and allocates nothing. It is valid as long as the microscope's positions,
+ * channels and ordering settings stay unchanged.
+ */
+public class AcquisitionPlan {
+
+	final Microscope microscope;
+	final long version;
+	final PathPlanner.Strategy pathStrategy;
+
+	final double dz;
+	final double travelSaved;
+
+	// one element per stack
+	private final Position[] positions;
+	private final Channel[] channels;
+	private final boolean[] topDown;
+
+	AcquisitionPlan(Microscope microscope, long version, PathPlanner.Strategy pathStrategy, double dz, double travelSaved,
+			Position[] positions, Channel[] channels, boolean[] topDown) {
+		this.microscope = microscope;
+		this.version = version;
+		this.pathStrategy = pathStrategy;
+		this.dz = dz;
+		this.travelSaved = travelSaved;
+		this.positions = positions;
+		this.channels = channels;
+		this.topDown = topDown;
+	}
+
+	public int size() {
+		return positions.length;
+	}
+
+	public Position getPosition(int i) {
+		return positions[i];
+	}
+
+	public Channel getChannel(int i) {
+		return channels[i];
+	}
+
+	public boolean isTopDown(int i) {
+		return topDown[i];
+	}
+
+	public double getDz() {
+		return dz;
+	}
+
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		for(int i = 0; i < positions.length; i++) {
+			sb.append(positions[i] == null ? null : positions[i].name).append('/')
+					.append(channels[i] == null ? null : channels[i].name)
+					.append(topDown[i] ? "v " : "^ ");
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,85 @@
+package nlScript.mic;
+
+import nlScript.mic.Microscope.Channel;
+import nlScript.mic.Microscope.LED;
+import nlScript.mic.Microscope.LEDSetting;
+
+import java.util.Arrays;
+
+/**
+ * Orders the channels of an acquisition so that consecutive channels switch as few LEDs on or off,
+ * and change their intensities as little as possible. Microscopes keep the order of the script
+ * unless <code>GROUPED</code> is chosen with <code>Microscope.setChannelOrder()</code>.
+ */
+public class ChannelOrder {
+
+	public enum Strategy {
+		DEFINITION_ORDER,
+		GROUPED
+	}
+
+	// Switching an LED on or off costs 1, changing its intensity by 100% costs 1
+	public static double switchingCost(Channel from, Channel to) {
+		double cost = 0;
+		for(LED led : LED.values()) {
+			LEDSetting a = from.getLEDSetting(led);
+			LEDSetting b = to.getLEDSetting(led);
+			if(a == null && b == null)
+				continue;
+			if(a == null || b == null)
+				cost += 1;
+			else
+				cost += Math.abs(a.getIntensity() - b.getIntensity()) / 100.0;
+		}
+		return cost;
+	}
+
+	public static double switchingCost(Channel[] channels) {
+		double cost = 0;
+		for(int i = 1; i < channels.length; i++)
+			cost += switchingCost(channels[i - 1], channels[i]);
+		return cost;
+	}
+
+	public static Channel[] order(Channel[] channels, Strategy strategy) {
+		if(strategy == Strategy.DEFINITION_ORDER || channels.length < 3 || Arrays.asList(channels).contains(null))
+			return channels;
+
+		// nearest neighbour from each possible first channel, keep the cheapest
+		Channel[] best = channels;
+		double bestCost = switchingCost(channels);
+		for(int first = 0; first < channels.length; first++) {
+			Channel[] ordered = nearestNeighbour(channels, first);
+			double cost = switchingCost(ordered);
+			if(cost < bestCost) {
+				bestCost = cost;
+				best = ordered;
+			}
+		}
+		return best;
+	}
+
+	private static Channel[] nearestNeighbour(Channel[] channels, int first) {
+		int n = channels.length;
+		Channel[] ordered = new Channel[n];
+		boolean[] used = new boolean[n];
+		ordered[0] = channels[first];
+		used[first] = true;
+		for(int i = 1; i < n; i++) {
+			int next = -1;
+			double nextCost = Double.POSITIVE_INFINITY;
+			for(int j = 0; j < n; j++) {
+				if(used[j])
+					continue;
+				double cost = switchingCost(ordered[i - 1], channels[j]);
+				if(cost < nextCost) {
+					nextCost = cost;
+					next = j;
+				}
+			}
+			ordered[i] = channels[next];
+			used[next] = true;
+		}
+		return ordered;
+	}
+}
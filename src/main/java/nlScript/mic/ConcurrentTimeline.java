@@ -0,0 +1,178 @@
+package nlScript.mic;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Predicate;
+
+/**
+ * Timeline that can safely be modified while it is processed: <code>put</code> is lock-free,
+ * <code>runAndRemoveEntriesBefore</code> may be called from several threads, and <code>clear</code>
+ * does not need to stop the dispatcher.
+ */
+public class ConcurrentTimeline<E> extends Timeline<E> {
+
+	private final ConcurrentSkipListMap<LocalDateTime, Bucket<E>> timeline = new ConcurrentSkipListMap<>();
+
+	// Entries scheduled for the same time, as a lock-free stack that can be closed atomically.
+	// Once taken by a consumer, a bucket is closed, and put() retries with a fresh one.
+	private static final class Bucket<E> {
+
+		private static final Node<?> CLOSED = new Node<>(null, null);
+
+		private final AtomicReference<Node<E>> head = new AtomicReference<>();
+
+		boolean offer(E entry) {
+			Node<E> h;
+			do {
+				h = head.get();
+				if(h == CLOSED)
+					return false;
+			} while(!head.compareAndSet(h, new Node<>(entry, h)));
+			return true;
+		}
+
+		@SuppressWarnings("unchecked")
+		void closeAndDrainTo(ArrayList<E> list) {
+			Node<E> n = head.getAndSet((Node<E>) CLOSED);
+			if(n == CLOSED)
+				return;
+			int from = list.size();
+			for(; n != null; n = n.next)
+				list.add(n.entry);
+			// restore insertion order
+			Collections.reverse(list.subList(from, list.size()));
+		}
+
+		// Takes the entries that pass the filter and leaves the others in place, ahead of entries
+		// offered meanwhile. Returns whether the bucket was closed because nothing is left.
+		@SuppressWarnings("unchecked")
+		boolean drainMatchingTo(Predicate<? super E> filter, ArrayList<E> list) {
+			ArrayList<E> entries = new ArrayList<>();
+			ArrayList<E> matching = new ArrayList<>();
+			while(true) {
+				Node<E> h = head.get();
+				if(h == CLOSED)
+					return true;
+				entries.clear();
+				for(Node<E> n = h; n != null; n = n.next)
+					entries.add(n.entry);
+				Collections.reverse(entries);
+				matching.clear();
+				Node<E> kept = null;
+				for(E entry : entries) {
+					if(filter.test(entry))
+						matching.add(entry);
+					else
+						kept = new Node<>(entry, kept);
+				}
+				if(matching.isEmpty())
+					return false;
+				if(head.compareAndSet(h, kept != null ? kept : (Node<E>) CLOSED)) {
+					list.addAll(matching);
+					return kept == null;
+				}
+				// an entry was offered meanwhile, try again
+			}
+		}
+
+		void appendTo(ArrayList<E> list) {
+			Node<E> n = head.get();
+			if(n == CLOSED)
+				return;
+			int from = list.size();
+			for(; n != null; n = n.next)
+				list.add(n.entry);
+			Collections.reverse(list.subList(from, list.size()));
+		}
+	}
+
+	private static final class Node<E> {
+		final E entry;
+		final Node<E> next;
+
+		Node(E entry, Node<E> next) {
+			this.entry = entry;
+			this.next = next;
+		}
+	}
+
+	@Override
+	protected boolean store(LocalDateTime time, E entry) {
+		while(true) {
+			Bucket<E> bucket = timeline.computeIfAbsent(time, k -> new Bucket<>());
+			if(bucket.offer(entry))
+				break;
+			// bucket was taken concurrently, get rid of it and try again
+			timeline.remove(time, bucket);
+		}
+		LocalDateTime first = firstTime();
+		return first == null || !first.isBefore(time);
+	}
+
+	@Override
+	protected void removeEntriesBefore(LocalDateTime time, ArrayList<E> due) {
+		for(Map.Entry<LocalDateTime, Bucket<E>> e : timeline.headMap(time).entrySet()) {
+			// whoever removes the bucket from the map owns it
+			if(timeline.remove(e.getKey(), e.getValue()))
+				e.getValue().closeAndDrainTo(due);
+		}
+	}
+
+	@Override
+	protected void removeEntriesBefore(LocalDateTime time, ArrayList<E> due, Predicate<? super E> filter) {
+		for(Map.Entry<LocalDateTime, Bucket<E>> e : timeline.headMap(time).entrySet()) {
+			if(e.getValue().drainMatchingTo(filter, due))
+				timeline.remove(e.getKey(), e.getValue());
+		}
+	}
+
+	// Lock-free: each bucket is read atomically, concurrent inserts and removals are reflected or not
+	@Override
+	protected void collectEvents(LocalDateTime from, LocalDateTime to, EventCollector<E> collector) {
+		ArrayList<E> entries = new ArrayList<>();
+		for(Map.Entry<LocalDateTime, Bucket<E>> e : timeline.subMap(from, true, to, false).entrySet()) {
+			entries.clear();
+			e.getValue().appendTo(entries);
+			for(E entry : entries) {
+				if(!collector.add(e.getKey(), entry))
+					return;
+			}
+		}
+	}
+
+	@Override
+	protected LocalDateTime firstTime() {
+		Map.Entry<LocalDateTime, Bucket<E>> first = timeline.firstEntry();
+		return first == null ? null : first.getKey();
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return timeline.isEmpty();
+	}
+
+	@Override
+	protected void removeAll() {
+		ArrayList<E> discarded = new ArrayList<>();
+		for(Map.Entry<LocalDateTime, Bucket<E>> e : timeline.entrySet()) {
+			if(timeline.remove(e.getKey(), e.getValue()))
+				e.getValue().closeAndDrainTo(discarded);
+		}
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		ArrayList<E> entries = new ArrayList<>();
+		for(Map.Entry<LocalDateTime, Bucket<E>> e : timeline.entrySet()) {
+			entries.clear();
+			e.getValue().appendTo(entries);
+			sb.append(e.getKey()).append(" -> ").append(entries);
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,151 @@
+package nlScript.mic;
+
+import nlScript.mic.OverrunPolicy.Decision;
+import nlScript.mic.TimelineEntry.Kind;
+
+import java.util.EnumMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Consumer;
+
+/**
+ * Lateness (release by the dispatcher minus planned start) and run duration of dispatched timeline
+ * entries, per kind of entry.
+ */
+public class DispatchStatistics {
+
+	private final EnumMap<Kind, Histogram> lateness = new EnumMap<>(Kind.class);
+	private final EnumMap<Kind, Histogram> duration = new EnumMap<>(Kind.class);
+	private final EnumMap<Kind, AtomicLongArray> overruns = new EnumMap<>(Kind.class);
+	private final EnumMap<Kind, AtomicLong> redundant = new EnumMap<>(Kind.class);
+	private final EnumMap<Kind, AtomicLong> stalls = new EnumMap<>(Kind.class);
+
+	private final AtomicLong mergedPasses = new AtomicLong();
+	private final AtomicLong mergedEntries = new AtomicLong();
+
+	private ScheduledExecutorService summaryExecutor;
+
+	public DispatchStatistics() {
+		for(Kind kind : Kind.values()) {
+			lateness.put(kind, new Histogram());
+			duration.put(kind, new Histogram());
+			overruns.put(kind, new AtomicLongArray(Decision.values().length));
+			redundant.put(kind, new AtomicLong());
+			stalls.put(kind, new AtomicLong());
+		}
+	}
+
+	public void record(Kind kind, long latenessNanos, long durationNanos) {
+		lateness.get(kind).record(latenessNanos);
+		duration.get(kind).record(durationNanos);
+	}
+
+	public void recordOverrun(Kind kind, Decision decision) {
+		overruns.get(kind).incrementAndGet(decision.ordinal());
+	}
+
+	public long getOverrunCount(Kind kind, Decision decision) {
+		return overruns.get(kind).get(decision.ordinal());
+	}
+
+	// a setpoint that was not sent because the hardware has the value already
+	public void recordRedundant(Kind kind) {
+		redundant.get(kind).incrementAndGet();
+	}
+
+	public long getRedundantCount(Kind kind) {
+		return redundant.get(kind).get();
+	}
+
+	// an entry that exceeded its timeout
+	public void recordStall(Kind kind) {
+		stalls.get(kind).incrementAndGet();
+	}
+
+	public long getStallCount(Kind kind) {
+		return stalls.get(kind).get();
+	}
+
+	// an acquisition pass that merged several acquisition entries
+	public void recordMerge(int nEntries) {
+		mergedPasses.incrementAndGet();
+		mergedEntries.addAndGet(nEntries);
+	}
+
+	public long getMergedPasses() {
+		return mergedPasses.get();
+	}
+
+	public long getMergedEntries() {
+		return mergedEntries.get();
+	}
+
+	public Histogram getLateness(Kind kind) {
+		return lateness.get(kind);
+	}
+
+	public Histogram getDuration(Kind kind) {
+		return duration.get(kind);
+	}
+
+	public void reset() {
+		for(Kind kind : Kind.values()) {
+			lateness.get(kind).reset();
+			duration.get(kind).reset();
+			for(Decision decision : Decision.values())
+				overruns.get(kind).set(decision.ordinal(), 0);
+			redundant.get(kind).set(0);
+			stalls.get(kind).set(0);
+		}
+		mergedPasses.set(0);
+		mergedEntries.set(0);
+	}
+
+	public String getSummary() {
+		StringBuilder sb = new StringBuilder();
+		for(Kind kind : Kind.values()) {
+			StringBuilder overrun = new StringBuilder();
+			for(Decision decision : Decision.values()) {
+				long n = getOverrunCount(kind, decision);
+				if(n > 0)
+					overrun.append(" ").append(decision).append("=").append(n);
+			}
+			long nRedundant = redundant.get(kind).get();
+			long nStalls = stalls.get(kind).get();
+			if(lateness.get(kind).getCount() == 0 && overrun.length() == 0 && nRedundant == 0 && nStalls == 0)
+				continue;
+			sb.append(kind).append(":\n");
+			sb.append("  lateness: ").append(lateness.get(kind)).append("\n");
+			sb.append("  duration: ").append(duration.get(kind)).append("\n");
+			if(overrun.length() > 0)
+				sb.append("  overruns:").append(overrun).append("\n");
+			if(nRedundant > 0)
+				sb.append("  redundant setpoints dropped: ").append(nRedundant).append("\n");
+			if(nStalls > 0)
+				sb.append("  stalls: ").append(nStalls).append("\n");
+		}
+		if(mergedPasses.get() > 0)
+			sb.append("Merged ").append(mergedEntries.get()).append(" acquisitions into ").append(mergedPasses.get()).append(" passes\n");
+		return sb.toString();
+	}
+
+	public synchronized void startPeriodicSummary(long period, TimeUnit unit, Consumer<String> out) {
+		stopPeriodicSummary();
+		summaryExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread t = new Thread(r, "Dispatch statistics");
+			t.setDaemon(true);
+			return t;
+		});
+		summaryExecutor.scheduleAtFixedRate(() -> out.accept(getSummary()), period, period, unit);
+	}
+
+	public synchronized void stopPeriodicSummary() {
+		if(summaryExecutor != null) {
+			summaryExecutor.shutdownNow();
+			summaryExecutor = null;
+		}
+	}
+}
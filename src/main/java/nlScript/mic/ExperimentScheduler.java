@@ -0,0 +1,404 @@
+package nlScript.mic;
+
+import nlScript.ParseException;
+import nlScript.Parser;
+import nlScript.mic.Microscope.Resource;
+import nlScript.mic.TimelineEntry.Kind;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+/**
+ * Runs several experiments, each with its own <code>LanguageControl</code> and <code>Timeline</code>,
+ * interleaved on one shared <code>Microscope</code>. Due entries of all experiments are queued per
+ * hardware resource, and one worker per resource runs them: it serves the experiment with the highest
+ * priority, and among experiments of equal priority the one that used the resource least relative
+ * to its share. While an experiment waits for a resource, its priority rises by one per aging
+ * interval, so that lower priorities are delayed but not starved. Compatible acquisitions that other
+ * experiments have queued at the same time are acquired in the same pass. Entries are run under the
+ * watchdog of their experiment's timeline.
+ */
+public class ExperimentScheduler {
+
+	public static class Experiment {
+		private final String name;
+		private final int priority;
+		private final double share;
+		private final LanguageControl languageControl;
+
+		// nanoseconds each resource was used for this experiment
+		private final EnumMap<Resource, AtomicLong> usage = new EnumMap<>(Resource.class);
+
+		// due entries, in the order of the experiment's timeline, guarded by the scheduler
+		private final EnumMap<Resource, ArrayDeque<Queued>> queued = new EnumMap<>(Resource.class);
+
+		// System.nanoTime() when the experiment was last served, or its queue was last empty, guarded by the scheduler
+		private final EnumMap<Resource, Long> waitingSince = new EnumMap<>(Resource.class);
+
+		private Experiment(String name, int priority, double share, LanguageControl languageControl) {
+			this.name = name;
+			this.priority = priority;
+			this.share = share;
+			this.languageControl = languageControl;
+			for(Resource resource : Resource.values()) {
+				usage.put(resource, new AtomicLong());
+				queued.put(resource, new ArrayDeque<>());
+			}
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public int getPriority() {
+			return priority;
+		}
+
+		public double getShare() {
+			return share;
+		}
+
+		public LanguageControl getLanguageControl() {
+			return languageControl;
+		}
+
+		public long getUsage(Resource resource, TimeUnit unit) {
+			return unit.convert(usage.get(resource).get(), TimeUnit.NANOSECONDS);
+		}
+
+		private double getWeightedUsage(Resource resource) {
+			return usage.get(resource).get() / share;
+		}
+
+		public String toString() {
+			return name + " (priority " + priority + ", share " + share + ")";
+		}
+	}
+
+	// an entry together with the experiment it belongs to, and when it was released by the experiment's timeline
+	private static final class Queued {
+		final Experiment experiment;
+		final TimelineEntry entry;
+		final LocalDateTime released;
+
+		Queued(Experiment experiment, TimelineEntry entry, LocalDateTime released) {
+			this.experiment = experiment;
+			this.entry = entry;
+			this.released = released;
+		}
+	}
+
+	private final Microscope microscope;
+
+	private final List<Experiment> experiments = new CopyOnWriteArrayList<>();
+
+	private final Object lock = new Object();
+
+	private final EnumMap<Resource, Thread> workers = new EnumMap<>(Resource.class);
+
+	// queued entries plus entries being run, guarded by lock
+	private int pending = 0;
+
+	private final AtomicLong sharedPasses = new AtomicLong();
+
+	private volatile Duration mergeWindow = Duration.ofSeconds(1);
+
+	private volatile Duration agingInterval = Duration.ofMinutes(1);
+
+	public ExperimentScheduler(Microscope microscope) {
+		this.microscope = microscope;
+	}
+
+	public Microscope getMicroscope() {
+		return microscope;
+	}
+
+	public List<Experiment> getExperiments() {
+		return experiments;
+	}
+
+	// acquisition passes that served more than one experiment
+	public long getSharedPasses() {
+		return sharedPasses.get();
+	}
+
+	public Duration getMergeWindow() {
+		return mergeWindow;
+	}
+
+	// Compatible acquisitions of other experiments that are due within this window after an acquisition
+	// are acquired in the same pass. Experiments are started independently, so even acquisitions meant
+	// to coincide are usually not due at exactly the same time.
+	public void setMergeWindow(Duration mergeWindow) {
+		this.mergeWindow = mergeWindow;
+	}
+
+	public Duration getAgingInterval() {
+		return agingInterval;
+	}
+
+	// The time after which a waiting experiment is served as if its priority was one higher.
+	// null for strict priorities, with which lower priorities only get what higher ones leave.
+	public void setAgingInterval(Duration agingInterval) {
+		if(agingInterval != null && (agingInterval.isZero() || agingInterval.isNegative()))
+			throw new IllegalArgumentException("The aging interval must be positive: " + agingInterval);
+		this.agingInterval = agingInterval;
+	}
+
+	// Parses and evaluates the script and starts running it. Channels and positions belong to the
+	// experiment that defines them first, as does the incubation to the experiment that adjusts it:
+	// defining them again in another experiment fails.
+	public Experiment add(String name, String script, int priority, double share) throws ParseException {
+		LanguageControl lc = new LanguageControl(microscope, true);
+		Parser parser = lc.initParser();
+		lc.reset();
+		try {
+			parser.parse(script, null).evaluate();
+		} catch(ParseException | RuntimeException e) {
+			microscope.releaseClaims(lc);
+			throw e;
+		}
+		return add(name, lc, priority, share);
+	}
+
+	Experiment add(String name, LanguageControl lc, int priority, double share) {
+		if(share <= 0)
+			throw new IllegalArgumentException("The share of an experiment must be positive: " + share);
+		Experiment experiment = new Experiment(name, priority, share, lc);
+		experiments.add(experiment);
+		lc.process(entry -> submit(experiment, entry));
+		return experiment;
+	}
+
+	// Stops the experiment, entries already being run are finished
+	public void remove(Experiment experiment) {
+		experiment.languageControl.getTimeline().cancel();
+		synchronized(lock) {
+			for(ArrayDeque<Queued> queue : experiment.queued.values()) {
+				pending -= queue.size();
+				queue.clear();
+			}
+			experiments.remove(experiment);
+			lock.notifyAll();
+		}
+		microscope.releaseClaims(experiment.languageControl);
+	}
+
+	private void submit(Experiment experiment, TimelineEntry entry) {
+		Resource resource = entry.getResource();
+		LocalDateTime released = Timeline.getReleaseTime();
+		synchronized(lock) {
+			if(!experiments.contains(experiment))
+				return;
+			ArrayDeque<Queued> queue = experiment.queued.get(resource);
+			if(queue.isEmpty())
+				experiment.waitingSince.put(resource, System.nanoTime());
+			queue.add(new Queued(experiment, entry, released));
+			pending++;
+			workers.computeIfAbsent(resource, r -> {
+				Thread t = new Thread(() -> work(r), "Experiment scheduler " + r);
+				t.setDaemon(true);
+				t.start();
+				return t;
+			});
+			lock.notifyAll();
+		}
+	}
+
+	private void work(Resource resource) {
+		while(true) {
+			List<Queued> next;
+			synchronized(lock) {
+				while((next = takeNext(resource)) == null) {
+					try {
+						lock.wait();
+					} catch(InterruptedException e) {
+						return;
+					}
+				}
+				gatherCompatible(resource, next);
+			}
+			try {
+				run(resource, next);
+			} catch(RuntimeException e) {
+				e.printStackTrace();
+			} finally {
+				synchronized(lock) {
+					pending -= next.size();
+					lock.notifyAll();
+				}
+			}
+		}
+	}
+
+	// the priority of the experiment, raised by one for every aging interval it has been waiting for the resource
+	private long getAgedPriority(Experiment e, Resource resource, long now) {
+		Duration aging = agingInterval;
+		if(aging == null)
+			return e.priority;
+		return e.priority + (now - e.waitingSince.get(resource)) / aging.toNanos();
+	}
+
+	// Takes the first entry of the experiment to be served next. Called with lock held.
+	private List<Queued> takeNext(Resource resource) {
+		long now = System.nanoTime();
+		Experiment served = null;
+		long servedPriority = 0;
+		for(Experiment e : experiments) {
+			if(e.queued.get(resource).isEmpty())
+				continue;
+			long priority = getAgedPriority(e, resource, now);
+			if(served == null
+					|| priority > servedPriority
+					|| priority == servedPriority && e.getWeightedUsage(resource) < served.getWeightedUsage(resource)) {
+				served = e;
+				servedPriority = priority;
+			}
+		}
+		if(served == null)
+			return null;
+
+		List<Queued> next = new ArrayList<>();
+		next.add(served.queued.get(resource).poll());
+		served.waitingSince.put(resource, now);
+		return next;
+	}
+
+	// If the first entry is an acquisition, adds compatible acquisitions of the other experiments that
+	// are due within the merge window: first those at the front of their queues, then those still in
+	// their timelines. Called with lock held.
+	private void gatherCompatible(Resource resource, List<Queued> next) {
+		Experiment served = next.get(0).experiment;
+		TimelineEntry first = next.get(0).entry;
+		Acquisition acquisition = getAcquisition(first);
+		if(acquisition == null)
+			return;
+		LocalDateTime until = first.getPlannedTime().plus(mergeWindow);
+		Predicate<TimelineEntry> compatible = entry -> {
+			Acquisition other = getAcquisition(entry);
+			return other != null && other.isCompatible(acquisition) && !entry.getPlannedTime().isAfter(until);
+		};
+		for(Experiment e : experiments) {
+			if(e == served)
+				continue;
+			ArrayDeque<Queued> queue = e.queued.get(resource);
+			if(!queue.isEmpty() && compatible.test(queue.peek().entry))
+				e.waitingSince.put(resource, System.nanoTime());
+			while(!queue.isEmpty() && compatible.test(queue.peek().entry))
+				next.add(queue.poll());
+			// taking entries from the timeline would overtake queued ones
+			if(!queue.isEmpty())
+				continue;
+			// released early, together with the first one
+			for(TimelineEntry entry : e.languageControl.getTimeline().takeEntriesBefore(until.plusNanos(1), compatible)) {
+				next.add(new Queued(e, entry, next.get(0).released));
+				pending++;
+			}
+		}
+	}
+
+	private static Acquisition getAcquisition(TimelineEntry entry) {
+		if(entry instanceof AcquisitionEntry)
+			return ((AcquisitionEntry) entry).getAcquisition();
+		if(entry instanceof MergedAcquisition)
+			return ((MergedAcquisition) entry).getEntries().get(0).getAcquisition();
+		return null;
+	}
+
+	private void run(Resource resource, List<Queued> next) {
+		if(next.size() == 1) {
+			Queued q = next.get(0);
+			LanguageControl lc = q.experiment.languageControl;
+			long t0 = System.nanoTime();
+			try {
+				lc.getTimeline().runReleased(q.entry, entry -> lc.run(entry, q.released), q.released);
+			} finally {
+				q.experiment.usage.get(resource).addAndGet(System.nanoTime() - t0);
+			}
+			return;
+		}
+
+		// admit the acquisitions of each experiment according to its own overrun policies
+		List<Experiment> participants = new ArrayList<>();
+		List<LocalDateTime> released = new ArrayList<>();
+		List<List<AcquisitionEntry>> admitted = new ArrayList<>();
+		List<Acquisition> acquisitions = new ArrayList<>();
+		for(Queued q : next) {
+			List<AcquisitionEntry> entries = q.entry instanceof MergedAcquisition
+					? ((MergedAcquisition) q.entry).getEntries()
+					: Collections.singletonList((AcquisitionEntry) q.entry);
+			List<AcquisitionEntry> admittedEntries = new ArrayList<>();
+			for(AcquisitionEntry entry : entries) {
+				if(q.experiment.languageControl.admit(entry, q.released)) {
+					admittedEntries.add(entry);
+					acquisitions.add(entry.getAcquisition());
+				}
+			}
+			if(!admittedEntries.isEmpty()) {
+				participants.add(q.experiment);
+				released.add(q.released);
+				admitted.add(admittedEntries);
+			}
+		}
+		if(acquisitions.isEmpty())
+			return;
+		if(participants.size() > 1)
+			sharedPasses.incrementAndGet();
+
+		long[] lateness = new long[participants.size()];
+		for(int i = 0; i < lateness.length; i++)
+			lateness[i] = ChronoUnit.NANOS.between(admitted.get(i).get(0).getPlannedTime(), released.get(i));
+		// the pass is watched by the timeline of the experiment served
+		Queued served = next.get(0);
+		long t0 = System.nanoTime();
+		try {
+			served.experiment.languageControl.getTimeline().runReleased(served.entry, entry -> {
+				microscope.acquire(acquisitions);
+				for(int i = 0; i < participants.size(); i++) {
+					for(AcquisitionEntry admittedEntry : admitted.get(i))
+						participants.get(i).languageControl.executed(admittedEntry);
+				}
+			}, served.released);
+		} finally {
+			long duration = System.nanoTime() - t0;
+			// the pass is paid for by all participants in equal parts
+			for(int i = 0; i < participants.size(); i++) {
+				Experiment e = participants.get(i);
+				DispatchStatistics statistics = e.languageControl.getStatistics();
+				statistics.record(Kind.ACQUISITION, lateness[i], duration);
+				if(admitted.get(i).size() > 1 || participants.size() > 1)
+					statistics.recordMerge(admitted.get(i).size());
+				e.usage.get(resource).addAndGet(duration / participants.size());
+			}
+		}
+	}
+
+	// Waits until all experiments have finished, or at most the given time. Returns whether they finished.
+	public boolean waitForProcessing(long timeout, TimeUnit unit) throws InterruptedException {
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		while(true) {
+			boolean processing = false;
+			for(Experiment e : experiments)
+				processing |= e.languageControl.getTimeline().isProcessing();
+			synchronized(lock) {
+				if(!processing && pending == 0)
+					return true;
+				long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+				if(remaining <= 0)
+					return false;
+				// timelines don't notify, so check regularly
+				lock.wait(Math.min(remaining, 100));
+			}
+		}
+	}
+}
@@ -0,0 +1,89 @@
+package nlScript.mic;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A 16-bit image plane in a little-endian buffer. Frames taken from a {@link FramePool} are
+ * reference counted: a consumer that keeps a frame beyond the call it was handed over in retains
+ * it, and releases it when done. The last release returns the frame to its pool.
+ */
+public class Frame {
+
+	private final FramePool pool;  // null if not pooled
+	private final ByteBuffer buffer;
+	private final AtomicInteger references = new AtomicInteger();
+	private int width;
+	private int height;
+
+	Frame(FramePool pool, ByteBuffer buffer) {
+		this.pool = pool;
+		this.buffer = buffer.order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	// A frame on the heap, which is not pooled and left to the garbage collector
+	public static Frame allocate(int width, int height) {
+		Frame frame = new Frame(null, ByteBuffer.allocate(2 * width * height));
+		frame.reset(width, height);
+		return frame;
+	}
+
+	void reset(int width, int height) {
+		this.width = width;
+		this.height = height;
+		buffer.clear().limit(2 * width * height);
+		references.set(1);
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	public int getSizeInBytes() {
+		return 2 * width * height;
+	}
+
+	public boolean isPooled() {
+		return pool != null;
+	}
+
+	// A view of the pixel bytes, with its own position and limit
+	public ByteBuffer getBuffer() {
+		return buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	public ShortBuffer getPixels() {
+		return getBuffer().asShortBuffer();
+	}
+
+	// copies the pixels
+	public short[] toArray() {
+		short[] pixels = new short[width * height];
+		getPixels().get(pixels);
+		return pixels;
+	}
+
+	public Frame retain() {
+		int n;
+		do {
+			n = references.get();
+			if(n <= 0)
+				throw new IllegalStateException("Frame has been released already");
+		} while(!references.compareAndSet(n, n + 1));
+		return this;
+	}
+
+	public void release() {
+		int n = references.decrementAndGet();
+		if(n < 0)
+			throw new IllegalStateException("Frame has been released already");
+		if(n == 0 && pool != null)
+			pool.recycle(this);
+	}
+}
@@ -0,0 +1,123 @@
+package nlScript.mic;
+
+import nlScript.mic.Microscope.Binning;
+
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A fixed number of frames in direct buffers, allocated once up front, which the camera fills and
+ * hands on to storage and display. Frames come back to the pool when the last consumer releases
+ * them. If all of them are in use, acquisition waits for one to come back instead of allocating
+ * more, so a slow consumer shows up as waiting time here rather than as a growing heap. A consumer
+ * that keeps frames for good (e.g. a display holding the latest stack) must not stall acquisition,
+ * so after waiting for the maximum wait time, a frame is allocated on the heap instead.
+ */
+public class FramePool {
+
+	private final int frameCapacity;  // bytes
+	private final Frame[] frames;
+	private final ArrayBlockingQueue<Frame> free;
+
+	private final AtomicLong acquired = new AtomicLong();
+	private final AtomicLong exhausted = new AtomicLong();
+	private final AtomicLong waitNanos = new AtomicLong();
+	private final AtomicLong allocated = new AtomicLong();
+	private final AtomicInteger peakInUse = new AtomicInteger();
+
+	private volatile Duration maxWait = Duration.ofSeconds(1);
+
+	public FramePool(int nFrames, int maxWidth, int maxHeight) {
+		this.frameCapacity = 2 * maxWidth * maxHeight;
+		this.frames = new Frame[nFrames];
+		this.free = new ArrayBlockingQueue<>(nFrames);
+		for(int i = 0; i < nFrames; i++) {
+			frames[i] = new Frame(this, ByteBuffer.allocateDirect(frameCapacity));
+			free.add(frames[i]);
+		}
+	}
+
+	// A pool with frames for the full sensor of the given camera
+	public FramePool(int nFrames, SimulatedCamera camera) {
+		this(nFrames, camera.getFrameWidth(Binning.ONE), camera.getFrameHeight(Binning.ONE));
+	}
+
+	// Takes a free frame, waiting for one if all are in use, or allocates one on the heap if none is
+	// released within the maximum wait time. The caller holds the only reference.
+	public Frame acquire(int width, int height) {
+		if(2 * width * height > frameCapacity)
+			throw new IllegalArgumentException("Frame of " + width + "x" + height + " pixels does not fit into the pool's frames");
+		Frame frame = free.poll();
+		if(frame == null) {
+			exhausted.incrementAndGet();
+			long start = System.nanoTime();
+			try {
+				frame = free.poll(maxWait.toNanos(), TimeUnit.NANOSECONDS);
+			} catch(InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new RuntimeException("Interrupted while waiting for a free frame", e);
+			} finally {
+				waitNanos.addAndGet(System.nanoTime() - start);
+			}
+			if(frame == null) {
+				allocated.incrementAndGet();
+				return Frame.allocate(width, height);
+			}
+		}
+		acquired.incrementAndGet();
+		peakInUse.accumulateAndGet(frames.length - free.size(), Math::max);
+		frame.reset(width, height);
+		return frame;
+	}
+
+	void recycle(Frame frame) {
+		free.add(frame);
+	}
+
+	public int getSize() {
+		return frames.length;
+	}
+
+	public int getFreeCount() {
+		return free.size();
+	}
+
+	public int getPeakInUse() {
+		return peakInUse.get();
+	}
+
+	public long getFrameCapacity() {
+		return frameCapacity;
+	}
+
+	public long getAcquiredCount() {
+		return acquired.get();
+	}
+
+	// how often acquire() found the pool empty
+	public long getExhaustedCount() {
+		return exhausted.get();
+	}
+
+	// how long acquisition waited for frames to be released
+	public Duration getWaitTime() {
+		return Duration.ofNanos(waitNanos.get());
+	}
+
+	// how often no frame was released within the maximum wait time, so that one was allocated on the heap
+	public long getAllocatedCount() {
+		return allocated.get();
+	}
+
+	public Duration getMaxWait() {
+		return maxWait;
+	}
+
+	public void setMaxWait(Duration maxWait) {
+		this.maxWait = maxWait;
+	}
+}
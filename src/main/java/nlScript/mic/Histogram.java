@@ -0,0 +1,99 @@
+package nlScript.mic;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Thread-safe histogram of non-negative long values (e.g. nanoseconds) with logarithmic buckets,
+ * each power of two being split into 32 linear sub-buckets (HDR-style, ~3% relative precision).
+ * Recording does not allocate.
+ */
+public class Histogram {
+
+	private static final int SUB_BUCKET_BITS = 5;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	private static final int N_BUCKETS = SUB_BUCKETS * (64 - SUB_BUCKET_BITS);
+
+	private final AtomicLongArray counts = new AtomicLongArray(N_BUCKETS);
+	private final AtomicLong count = new AtomicLong();
+	// the bits of a double, a long sum overflows with large values
+	private final AtomicLong sum = new AtomicLong(Double.doubleToRawLongBits(0));
+	private final AtomicLong max = new AtomicLong();
+
+	static int indexOf(long v) {
+		if(v < SUB_BUCKETS)
+			return (int) v;
+		int msb = 63 - Long.numberOfLeadingZeros(v);
+		int shift = msb - SUB_BUCKET_BITS;
+		int sub = (int) (v >>> shift) - SUB_BUCKETS;
+		return SUB_BUCKETS + shift * SUB_BUCKETS + sub;
+	}
+
+	static long lowerBoundOf(int index) {
+		if(index < SUB_BUCKETS)
+			return index;
+		int shift = (index - SUB_BUCKETS) / SUB_BUCKETS;
+		int sub = (index - SUB_BUCKETS) % SUB_BUCKETS;
+		return (long) (SUB_BUCKETS + sub) << shift;
+	}
+
+	// negative values are recorded as 0
+	public void record(long v) {
+		if(v < 0)
+			v = 0;
+		counts.incrementAndGet(indexOf(v));
+		count.incrementAndGet();
+		long s;
+		while(!sum.compareAndSet(s = sum.get(), Double.doubleToRawLongBits(Double.longBitsToDouble(s) + v)))
+			;
+		long m;
+		while(v > (m = max.get()) && !max.compareAndSet(m, v))
+			;
+	}
+
+	public long getCount() {
+		return count.get();
+	}
+
+	public long getMax() {
+		return max.get();
+	}
+
+	public double getMean() {
+		long n = count.get();
+		return n == 0 ? 0 : Double.longBitsToDouble(sum.get()) / n;
+	}
+
+	// returns the lower bound of the bucket containing the given percentile (0-100)
+	public long getValueAtPercentile(double percentile) {
+		long n = count.get();
+		if(n == 0)
+			return 0;
+		long target = Math.max(1, (long) Math.ceil(percentile / 100 * n));
+		long acc = 0;
+		for(int i = 0; i < N_BUCKETS; i++) {
+			acc += counts.get(i);
+			if(acc >= target)
+				return Math.min(lowerBoundOf(i), getMax());
+		}
+		return getMax();
+	}
+
+	public void reset() {
+		for(int i = 0; i < N_BUCKETS; i++)
+			counts.set(i, 0);
+		count.set(0);
+		sum.set(Double.doubleToRawLongBits(0));
+		max.set(0);
+	}
+
+	// summary in milliseconds, assuming the values are nanoseconds
+	public String toString() {
+		return String.format("n=%d mean=%.3fms p50=%.3fms p99=%.3fms max=%.3fms",
+				getCount(),
+				getMean() / 1e6,
+				getValueAtPercentile(50) / 1e6,
+				getValueAtPercentile(99) / 1e6,
+				getMax() / 1e6);
+	}
+}
@@ -1,5 +1,7 @@
 package nlScript.mic;
 
+import java.util.function.DoubleConsumer;
+
 public class Interpolator {
 
 	public interface Setter {
@@ -14,10 +16,13 @@ public class Interpolator {
 	private final Setter setter;
 
 	private double vFrom;
+	private boolean initialized = false;
 	private final double vTo;
 
 	private final int nCycles;
 
+	private DoubleConsumer startListener = null;
+
 	public Interpolator(Getter getter, Setter setter, double vTo, int nCycles) {
 		this.getter = getter;
 		this.setter = setter;
@@ -27,18 +32,45 @@ public class Interpolator {
 
 	private void initialize() {
 		vFrom = getter.get();
+		initialized = true;
+		if(startListener != null)
+			startListener.accept(vFrom);
 	}
 
-	public void interpolate(int cycle) {
-		if(cycle == this.nCycles - 1) {
-			setter.set(cycle, vTo);
-			return;
-		}
+	// notified when the start value is captured
+	public void setStartListener(DoubleConsumer startListener) {
+		this.startListener = startListener;
+	}
+
+	public double getStartValue() {
+		return vFrom;
+	}
+
+	// restores the value captured in cycle 0, e.g. when resuming an experiment
+	public void setStartValue(double vFrom) {
+		this.vFrom = vFrom;
+		this.initialized = true;
+	}
+
+	// the current value, as read by the getter
+	public double getCurrentValue() {
+		return getter.get();
+	}
+
+	// the value of the given cycle, captures the start value on first use, usually in cycle 0
+	// (which might have been skipped, e.g. because of an overrun)
+	public double getValue(int cycle) {
+		if(cycle == this.nCycles - 1)
+			return vTo;
 
-		if(cycle == 0)
+		// only once, the value might be asked for several times per cycle
+		if(!initialized)
 			initialize();
-		double interpolated = vFrom + cycle * (vTo - vFrom) / (nCycles - 1);
-		setter.set(cycle, interpolated);
+		return vFrom + cycle * (vTo - vFrom) / (nCycles - 1);
+	}
+
+	public void interpolate(int cycle) {
+		setter.set(cycle, getValue(cycle));
 	}
 
 	public static void main(String[] args) {
@@ -0,0 +1,248 @@
+package nlScript.mic;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Append-only journal of a running experiment: its start time, the executed timeline entries
+ * and the state changes made by them. Records are queued and written by a background thread,
+ * which syncs the file to disk once per batch, so that journaling does not delay dispatch.
+ *
+ * Format, one record per line:
+ * <pre>
+ * START &lt;start time&gt;
+ * N &lt;sentence&gt; &lt;sentence key&gt;
+ * D &lt;sentence&gt; &lt;cycle&gt;
+ * I &lt;sentence&gt; &lt;interpolation start value&gt;
+ * S &lt;key&gt; &lt;value&gt;
+ * </pre>
+ * Sentences are numbered in the order they are scheduled, which changes when the script is updated
+ * while running. N records bind a number to the sentence's key (its text and occurrence in the
+ * script), which is what recovery is based on, so that a resumed script finds its records however
+ * its sentences were numbered before.
+ */
+public class Journal implements Closeable {
+
+	// queued last by close(), after all records
+	private static final Object CLOSE = new Object();
+
+	private final FileOutputStream fos;
+	private final BufferedWriter out;
+	private final LinkedBlockingQueue<Object> queue = new LinkedBlockingQueue<>();
+	private final Thread writer;
+	private volatile IOException error = null;
+	private boolean closed = false; // guarded by queue
+	private long dropped = 0;       // guarded by queue
+
+	public Journal(File file, boolean append) throws FileNotFoundException {
+		fos = new FileOutputStream(file, append);
+		out = new BufferedWriter(new OutputStreamWriter(fos, StandardCharsets.UTF_8));
+		writer = new Thread(this::write, "Journal writer");
+		writer.setDaemon(true);
+		writer.start();
+	}
+
+	public void started(LocalDateTime start) {
+		offer("START " + start);
+	}
+
+	public void scheduled(int sentence, String key) {
+		offer("N " + sentence + " " + escape(key));
+	}
+
+	public void executed(int sentence, int cycle) {
+		offer("D " + sentence + " " + cycle);
+	}
+
+	public void interpolationStarted(int sentence, double from) {
+		offer("I " + sentence + " " + from);
+	}
+
+	public void stateChanged(String key, double value) {
+		offer("S " + key + " " + value);
+	}
+
+	// Entries that are still running when the journal is closed must not fail because of it,
+	// so their records are dropped, but not silently
+	private void offer(String record) {
+		synchronized(queue) {
+			if(closed) {
+				if(dropped++ == 0)
+					System.err.println("Journal is closed, dropping record '" + record + "', further ones are only counted");
+				return;
+			}
+			queue.offer(record);
+		}
+	}
+
+	// records that arrived after close()
+	public long getDroppedCount() {
+		synchronized(queue) {
+			return dropped;
+		}
+	}
+
+	public IOException getError() {
+		return error;
+	}
+
+	private void write() {
+		ArrayList<Object> batch = new ArrayList<>();
+		while(true) {
+			try {
+				batch.add(queue.take());
+			} catch(InterruptedException e) {
+				return;
+			}
+			queue.drainTo(batch);
+			boolean close = false;
+			try {
+				for(Object record : batch) {
+					if(record == CLOSE) {
+						close = true;
+						break;
+					}
+					out.write((String) record);
+					out.newLine();
+				}
+				out.flush();
+				fos.getChannel().force(false);
+			} catch(IOException e) {
+				error = e;
+				e.printStackTrace();
+			}
+			batch.clear();
+			if(close)
+				return;
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		synchronized(queue) {
+			if(closed)
+				return;
+			closed = true;
+			queue.offer(CLOSE);
+		}
+		try {
+			writer.join();
+		} catch(InterruptedException e) {
+			e.printStackTrace();
+		}
+		out.close();
+	}
+
+	public static Recovery recover(File file) throws IOException {
+		Recovery recovery = new Recovery();
+		try(BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+			String line;
+			while((line = in.readLine()) != null) {
+				String[] toks = line.split(" ");
+				try {
+					switch(toks[0]) {
+						case "START":
+							recovery.start = LocalDateTime.parse(toks[1]);
+							break;
+						case "N":
+							// the key may contain blanks
+							recovery.sentences.put(Integer.parseInt(toks[1]), unescape(line.split(" ", 3)[2]));
+							break;
+						case "D":
+							recovery.executed.computeIfAbsent(recovery.sentence(toks[1]), k -> new HashSet<>()).add(Integer.parseInt(toks[2]));
+							break;
+						case "I":
+							recovery.interpolationStarts.put(recovery.sentence(toks[1]), Double.parseDouble(toks[2]));
+							break;
+						case "S":
+							recovery.state.put(toks[1], Double.parseDouble(toks[2]));
+							break;
+					}
+				} catch(RuntimeException e) {
+					// a record that was only partially written when the JVM died
+					System.err.println("Ignoring corrupt journal record: " + line);
+				}
+			}
+		}
+		if(recovery.start == null)
+			throw new IOException("No start time found in journal " + file);
+		return recovery;
+	}
+
+	// one record per line, so line breaks in sentences are escaped
+	private static String escape(String s) {
+		return s.replace("\\", "\\\\").replace("\n", "\\n").replace("\r", "\\r");
+	}
+
+	private static String unescape(String s) {
+		StringBuilder sb = new StringBuilder(s.length());
+		for(int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			if(c == '\\' && i + 1 < s.length()) {
+				c = s.charAt(++i);
+				if(c == 'n')
+					c = '\n';
+				else if(c == 'r')
+					c = '\r';
+			}
+			sb.append(c);
+		}
+		return sb.toString();
+	}
+
+	public static class Recovery {
+		private LocalDateTime start;
+		// the sentence keys of the current numbering
+		private final Map<Integer, String> sentences = new HashMap<>();
+		private final Map<String, Set<Integer>> executed = new HashMap<>();
+		private final Map<String, Double> interpolationStarts = new HashMap<>();
+		private final Map<String, Double> state = new HashMap<>();
+
+		private String sentence(String number) {
+			String key = sentences.get(Integer.parseInt(number));
+			if(key == null)
+				throw new IllegalArgumentException("Sentence " + number + " was not scheduled");
+			return key;
+		}
+
+		public LocalDateTime getStart() {
+			return start;
+		}
+
+		public boolean isExecuted(String sentence, int cycle) {
+			Set<Integer> cycles = executed.get(sentence);
+			return cycles != null && cycles.contains(cycle);
+		}
+
+		public int getNumberOfExecutedEntries() {
+			int n = 0;
+			for(Set<Integer> cycles : executed.values())
+				n += cycles.size();
+			return n;
+		}
+
+		public Double getInterpolationStart(String sentence) {
+			return interpolationStarts.get(sentence);
+		}
+
+		public Map<String, Double> getState() {
+			return state;
+		}
+	}
+}
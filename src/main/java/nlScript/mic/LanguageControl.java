@@ -13,19 +13,29 @@ import nlScript.ebnf.Rule;
 import nlScript.ui.ACEditor;
 import nlScript.util.RandomInt;
 import nlScript.core.GeneratorHints.Key;
+import nlScript.mic.TimelineEntry.Kind;
 
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.io.PrintStream;
-import java.time.LocalDate;
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
+import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
 
 import static nlScript.mic.Microscope.*;
 
@@ -40,28 +50,497 @@ public class LanguageControl {
 
 	public final Microscope microscope;
 
-	private final Timeline<Runnable> timeline = new Timeline<>();
+	private final boolean sharedMicroscope;
 
-	private LocalTime globalStart;
+	private final Timeline<TimelineEntry> timeline = new ConcurrentTimeline<>();
+
+	// start of the experiment, in the time base of the clock
+	private LocalDateTime globalStart;
+
+	private TimelineClock clock = new MonotonicClock();
+
+	private final DispatchStatistics statistics = new DispatchStatistics();
+
+	private final EnumMap<Kind, OverrunPolicy> overrunPolicies = new EnumMap<>(Kind.class);
+
+	private final EnumMap<Kind, Duration> timeouts = new EnumMap<>(Kind.class);
+
+	private final Set<Kind> isolated = Collections.synchronizedSet(EnumSet.noneOf(Kind.class));
+
+	private final List<OverrunPolicy.Listener> overrunListeners = new CopyOnWriteArrayList<>();
+
+	private Duration acquisitionMergeWindow;
 
 	public LanguageControl() {
-		this.microscope = new Microscope();
+		this(new Microscope());
 	}
 
 	public LanguageControl(Microscope microscope) {
+		this(microscope, false);
+	}
+
+	// A shared microscope is not reset, and its definitions are not removed by script updates, because
+	// they might be used by other experiments (see ExperimentScheduler).
+	public LanguageControl(Microscope microscope, boolean sharedMicroscope) {
 		this.microscope = microscope;
+		this.sharedMicroscope = sharedMicroscope;
+		// only the most recent of several overdue setpoint cycles is run, all acquisition cycles are run
+		// (as the timeline always did) unless configured otherwise
+		for(Kind kind : Kind.values())
+			overrunPolicies.put(kind, OverrunPolicy.coalesce());
+		overrunPolicies.put(Kind.ACQUISITION, OverrunPolicy.catchUp(Duration.ZERO, Integer.MAX_VALUE));
+		// no timeouts unless configured, long acquisitions (e.g. large tiled stacks) are fine
+		timeline.setWatchdog(e -> timeouts.get(e.getKind()), e -> isolated.contains(e.getKind()), this::stalled);
+		setAcquisitionMergeWindow(Duration.ZERO);
+		timeline.setClock(clock);
 	}
 
+	private Journal journal;
+
+	private Journal.Recovery pendingRecovery;
+
+	private Journal.Recovery recovery;
+
+	private int nScheduledSentences;
+
 	public void reset() {
-		globalStart = LocalTime.now();
-		microscope.reset();
+		recovery = pendingRecovery;
+		pendingRecovery = null;
+		nScheduledSentences = 0;
+		scheduledSentences.clear();
+		previousSentences = null;
+		sentenceOccurrences.clear();
+		evaluatedChannels.clear();
+		evaluatedPositions.clear();
+		channelSentences.clear();
+		positionSentences.clear();
+		closeOutput();
+
+		// relative starts are offsets from the monotonic time captured here, so that later changes
+		// of the wall clock do not shift them
+		clock.anchor();
+		LocalDateTime now = recovery != null ? recovery.getStart() : clock.now();
+		globalStart = now;
+		if(!sharedMicroscope)
+			microscope.reset();
 		timeline.clear();
+
+		if(journal != null)
+			journal.started(now);
+		if(recovery != null) {
+			// runs before any other entry, after all definitions were evaluated
+			final Map<String, Double> state = recovery.getState();
+			LocalDateTime t = now.minusNanos(1);
+			timeline.put(t, new TimelineEntry(Kind.RESTORE, Resource.OPTICS,     t, () -> restoreState(state, Resource.OPTICS)));
+			timeline.put(t, new TimelineEntry(Kind.RESTORE, Resource.INCUBATION, t, () -> restoreState(state, Resource.INCUBATION)));
+		}
+	}
+
+	// Converts a time of day to the clock's time base, once, when the sentence is evaluated. The next
+	// occurrence after the start of the experiment is used.
+	private LocalDateTime absoluteStart(LocalTime time) {
+		LocalDateTime start = globalStart.toLocalDate().atTime(time);
+		if(start.isBefore(globalStart))
+			start = start.plusDays(1);
+		return clock.fromWallTime(start);
+	}
+
+	// Journal all executed timeline entries and state changes, so that a crashed run can be resumed
+	public void setJournal(Journal journal) {
+		this.journal = journal;
+	}
+
+	public Journal getJournal() {
+		return journal;
+	}
+
+	// The next run (i.e. after the next reset()) resumes the experiment recovered from a journal:
+	// it uses the original start time, skips entries that were executed already and restores
+	// interpolated values.
+	public void resume(Journal.Recovery recovery) {
+		this.pendingRecovery = recovery;
+	}
+
+	private void stateChanged(String key, double value) {
+		if(journal != null)
+			journal.stateChanged(key, value);
+	}
+
+	private void restoreState(Map<String, Double> state, Resource resource) {
+		for(Map.Entry<String, Double> e : state.entrySet()) {
+			String[] key = e.getKey().split("/");
+			double v = e.getValue();
+			boolean incubation = key[0].equals("temperature") || key[0].equals("co2");
+			if(incubation != (resource == Resource.INCUBATION))
+				continue;
+			switch(key[0]) {
+				case "temperature":
+					microscope.setTemperature(v);
+					break;
+				case "co2":
+					microscope.setCO2Concentration(v);
+					break;
+				case "exposure":
+					Channel channel = microscope.getChannel(key[1]);
+					if(channel != null)
+						channel.setExposureTime((int) Math.round(v));
+					break;
+				case "led":
+					channel = microscope.getChannel(key[1]);
+					LEDSetting ledSetting = channel == null ? null : channel.getLEDSetting(LED.valueOf(key[2]));
+					if(ledSetting != null)
+						ledSetting.setIntensity((int) Math.round(v));
+					break;
+			}
+		}
+	}
+
+	// The series of all sentences that added entries to the timeline, by the sentence's text and its occurrence in the script
+	private final HashMap<String, TimelineEntry.Series> scheduledSentences = new HashMap<>();
+
+	// the sentences of the previous run, while an edited script is being evaluated
+	private HashMap<String, TimelineEntry.Series> previousSentences = null;
+
+	private final HashMap<String, Integer> sentenceOccurrences = new HashMap<>();
+
+	private final LinkedHashSet<String> evaluatedChannels = new LinkedHashSet<>();
+
+	private final LinkedHashSet<String> evaluatedPositions = new LinkedHashSet<>();
+
+	// the sentences that defined the channels and positions, by name
+	private final HashMap<String, String> channelSentences = new HashMap<>();
+
+	private final HashMap<String, String> positionSentences = new HashMap<>();
+
+	// Whether an update evaluates a definition with the same sentence as before. Replacing it would
+	// reset values changed by ramps, and make the compiled acquisition plans outdated.
+	private boolean isUnchanged(HashMap<String, String> sentences, String name, String text) {
+		String previous = sentences.put(name, text);
+		return previousSentences != null && text.equals(previous);
+	}
+
+	private StackWriter stackWriter = null;
+
+	private boolean outputFolderEvaluated = false;
+
+	// Streams the acquired stacks into the folder, from now on
+	private synchronized void setOutputFolder(File folder) {
+		outputFolderEvaluated = true;
+		if(stackWriter != null && stackWriter.getFolder().equals(folder))
+			return;
+		closeOutput();
+		stackWriter = new StackWriter(folder);
+		microscope.addStackListener(stackWriter);
+	}
+
+	// Writes what is still queued and stops writing
+	public synchronized void closeOutput() {
+		if(stackWriter == null)
+			return;
+		microscope.removeStackListener(stackWriter);
+		try {
+			stackWriter.close();
+		} catch(IOException e) {
+			e.printStackTrace();
+		}
+		stackWriter = null;
+	}
+
+	public synchronized StackWriter getStackWriter() {
+		return stackWriter;
+	}
+
+	// Starts evaluating an edited version of the running script. Unlike reset(), this keeps the start time,
+	// the microscope state and the timeline entries of all sentences that did not change.
+	public void beginUpdate() {
+		// an update that did not finish (e.g. because of an evaluation error) still owns its sentences
+		if(previousSentences != null)
+			scheduledSentences.putAll(previousSentences);
+		previousSentences = new HashMap<>(scheduledSentences);
+		scheduledSentences.clear();
+		sentenceOccurrences.clear();
+		evaluatedChannels.clear();
+		evaluatedPositions.clear();
+		outputFolderEvaluated = false;
+	}
+
+	// Cancels the timeline entries of all sentences that were removed or changed by the update,
+	// and removes channels and positions that are not defined anymore.
+	public void endUpdate() {
+		for(TimelineEntry.Series removed : previousSentences.values())
+			removed.cancel();
+		previousSentences = null;
+		if(!outputFolderEvaluated)
+			closeOutput();
+		channelSentences.keySet().retainAll(evaluatedChannels);
+		positionSentences.keySet().retainAll(evaluatedPositions);
+		if(!sharedMicroscope) {
+			microscope.retainChannels(evaluatedChannels);
+			microscope.retainPositions(evaluatedPositions);
+		}
+	}
+
+	// To be called before evaluating a script: updates the running experiment, or starts a new one
+	public void beforeRun() {
+		if(timeline.isProcessing())
+			beginUpdate();
+		else
+			reset();
+	}
+
+	// To be called after evaluating a script
+	public void afterRun() {
+		if(previousSentences != null)
+			endUpdate();
+		process();
+	}
+
+	private interface EntryFactory {
+		TimelineEntry create(TimelineEntry.Series series, int cycle);
+	}
+
+	// Returns null if the sentence is unchanged since the previous run, in which case its entries are kept
+	private TimelineEntry.Series schedule(String text, LocalDateTime start, long interval, int nCycles, EntryFactory factory) {
+		String key = text + "#" + sentenceOccurrences.merge(text, 1, Integer::sum);
+		if(previousSentences != null) {
+			TimelineEntry.Series kept = previousSentences.remove(key);
+			if(kept != null) {
+				scheduledSentences.put(key, kept);
+				return null;
+			}
+		}
+
+		// the number changes with updates of the script, the key does not
+		final TimelineEntry.Series series = new TimelineEntry.Series(nScheduledSentences++, key, start, interval, nCycles);
+		if(journal != null)
+			journal.scheduled(series.id, key);
+		// only the next cycle is stored in the timeline, a cancelled series ends the recurrence
+		timeline.putRecurring(start, Duration.ofSeconds(interval), nCycles, cycle -> series.isCancelled() ? null : factory.create(series, cycle));
+		scheduledSentences.put(key, series);
+		return series;
+	}
+
+	void schedule(String text, LocalDateTime start, long interval, int nCycles, Acquisition acquisition) {
+		schedule(text, start, interval, nCycles, (series, cycle) -> new AcquisitionEntry(series, cycle, acquisition, microscope));
+	}
+
+	void schedule(String text, LocalDateTime start, long interval, int nCycles, Kind kind, Resource resource, String key, double resolution, Interpolator interpolator) {
+		schedule(text, start, interval, nCycles, (series, cycle) -> {
+			// before the first entry is added to the timeline
+			if(cycle == 0) {
+				Double from = recovery != null ? recovery.getInterpolationStart(series.key) : null;
+				if(from != null) {
+					interpolator.setStartValue(from);
+					if(journal != null)
+						journal.interpolationStarted(series.id, from);
+				}
+				// the start value is captured by the first cycle that actually runs
+				interpolator.setStartListener(v -> {
+					if(journal != null)
+						journal.interpolationStarted(series.id, v);
+				});
+			}
+			return new SetpointEntry(kind, resource, series, cycle, key, interpolator, resolution);
+		});
 	}
 
-	public Timeline<Runnable> getTimeline() {
+	public Timeline<TimelineEntry> getTimeline() {
 		return timeline;
 	}
 
+	public DispatchStatistics getStatistics() {
+		return statistics;
+	}
+
+	// Starts processing the timeline, with entries using different hardware resources running concurrently
+	public void process() {
+		timeline.process(this::run, TimelineEntry::getResource);
+	}
+
+	// Starts processing the timeline, handing due entries to the given dispatcher, which is responsible
+	// for running them, e.g. via run(), admit() and executed()
+	void process(Consumer<TimelineEntry> dispatcher) {
+		timeline.process(dispatcher);
+	}
+
+	public OverrunPolicy getOverrunPolicy(Kind kind) {
+		return overrunPolicies.get(kind);
+	}
+
+	public void setOverrunPolicy(Kind kind, OverrunPolicy policy) {
+		overrunPolicies.put(kind, policy);
+	}
+
+	// Entries of this kind that run longer than timeout are recorded as stalled and interrupted. If
+	// isolate is true, later entries of the same resource continue on a new thread meanwhile.
+	// A null timeout disables the watchdog for this kind.
+	public void setTimeout(Kind kind, Duration timeout, boolean isolate) {
+		timeouts.put(kind, timeout);
+		if(isolate)
+			isolated.add(kind);
+		else
+			isolated.remove(kind);
+	}
+
+	public Duration getTimeout(Kind kind) {
+		return timeouts.get(kind);
+	}
+
+	// Channels and positions of a shared microscope are used, and ramped, by the experiment that defined
+	// them only, and the incubation is controlled by one experiment only
+	private void claim(String definition) {
+		if(sharedMicroscope)
+			microscope.claim(definition, this);
+	}
+
+	private void stalled(TimelineEntry entry) {
+		statistics.recordStall(entry.getKind());
+		System.err.println("Timeline entry stalled for more than " + timeouts.get(entry.getKind()) + ": " + entry);
+	}
+
+	public void addOverrunListener(OverrunPolicy.Listener l) {
+		overrunListeners.add(l);
+	}
+
+	public void removeOverrunListener(OverrunPolicy.Listener l) {
+		overrunListeners.remove(l);
+	}
+
+	private void fireOverrun(TimelineEntry entry, OverrunPolicy.Decision decision) {
+		for(OverrunPolicy.Listener l : overrunListeners)
+			l.overrun(entry, decision);
+	}
+
+	public Duration getAcquisitionMergeWindow() {
+		return acquisitionMergeWindow;
+	}
+
+	// Acquisitions with compatible optics that are due within this window of each other are
+	// acquired in a single pass. With a window of zero, only acquisitions due at the same time are merged.
+	public void setAcquisitionMergeWindow(Duration window) {
+		this.acquisitionMergeWindow = window;
+		timeline.setMerger(window, e -> e instanceof AcquisitionEntry, this::mergeAcquisitions);
+	}
+
+	private List<TimelineEntry> mergeAcquisitions(List<TimelineEntry> due) {
+		List<TimelineEntry> result = new ArrayList<>(due.size());
+		List<MergedAcquisition> groups = new ArrayList<>();
+		for(TimelineEntry entry : due) {
+			if(!(entry instanceof AcquisitionEntry)) {
+				result.add(entry);
+				continue;
+			}
+			AcquisitionEntry acquisition = (AcquisitionEntry) entry;
+			MergedAcquisition group = null;
+			for(MergedAcquisition g : groups) {
+				if(g.isCompatible(acquisition)) {
+					group = g;
+					break;
+				}
+			}
+			if(group == null) {
+				group = new MergedAcquisition(acquisition, this);
+				groups.add(group);
+				result.add(group);
+			} else {
+				group.add(acquisition);
+			}
+		}
+		// no need to wrap single acquisitions
+		for(int i = 0; i < result.size(); i++) {
+			TimelineEntry entry = result.get(i);
+			if(entry instanceof MergedAcquisition && ((MergedAcquisition) entry).getEntries().size() == 1)
+				result.set(i, ((MergedAcquisition) entry).getEntries().get(0));
+		}
+		return result;
+	}
+
+	// when the dispatcher released the entry that is being run, or now if it is run otherwise
+	private LocalDateTime releaseTime() {
+		LocalDateTime released = Timeline.getReleaseTime();
+		return released != null ? released : clock.now();
+	}
+
+	boolean admit(TimelineEntry entry) {
+		return admit(entry, releaseTime());
+	}
+
+	// Returns whether the entry should be run, according to its overrun policy. In real time, this is
+	// decided by the current time, so that cycles which piled up while waiting for their resource are
+	// coalesced. Virtual time does not pass while entries wait, so it is decided by the release time.
+	boolean admit(TimelineEntry entry, LocalDateTime released) {
+		TimelineEntry.Series series = entry.getSeries();
+		if(series == null)
+			return true;
+		// removed by an update of the script
+		if(series.isCancelled())
+			return false;
+		// executed before the experiment was resumed
+		if(recovery != null && recovery.isExecuted(series.key, entry.getCycle()))
+			return false;
+		OverrunPolicy policy = overrunPolicies.get(entry.getKind());
+		LocalDateTime now = clock.isRealTime() ? clock.now() : released;
+		OverrunPolicy.Decision decision = policy.decide(series, entry.getCycle(), now);
+		if(decision != OverrunPolicy.Decision.RUN) {
+			statistics.recordOverrun(entry.getKind(), decision);
+			fireOverrun(entry, decision);
+		}
+		switch(decision) {
+			case SKIPPED:
+			case COALESCED:
+			case DROPPED:
+				return false;
+			case CAUGHT_UP:
+				policy.awaitCatchUpSlot(series, clock);
+				now = clock.now();
+				break;
+		}
+		series.setLastStart(now);
+		return true;
+	}
+
+	void executed(TimelineEntry entry) {
+		TimelineEntry.Series series = entry.getSeries();
+		if(journal != null && series != null)
+			journal.executed(series.id, entry.getCycle());
+	}
+
+	void run(TimelineEntry entry) {
+		run(entry, releaseTime());
+	}
+
+	// Lateness is measured from the planned time to the release by the dispatcher
+	void run(TimelineEntry entry, LocalDateTime released) {
+		if(!admit(entry, released))
+			return;
+
+		// don't send a value the hardware has already
+		if(entry instanceof SetpointEntry && ((SetpointEntry) entry).isRedundant()) {
+			statistics.recordRedundant(entry.getKind());
+			executed(entry);
+			return;
+		}
+
+		long lateness = ChronoUnit.NANOS.between(entry.getPlannedTime(), released);
+		long t0 = System.nanoTime();
+		try {
+			entry.run();
+			executed(entry);
+		} finally {
+			statistics.record(entry.getKind(), lateness, System.nanoTime() - t0);
+		}
+	}
+
+	public TimelineClock getClock() {
+		return clock;
+	}
+
+	// Use a VirtualClock to dry-run an experiment as fast as possible
+	public void setClock(TimelineClock clock) {
+		this.clock = clock;
+		timeline.setClock(clock);
+	}
+
 	private final Random random = new Random();
 
 	private Rule defineChannelRule,
@@ -141,7 +620,11 @@ public class LanguageControl {
 					LEDSetting[] otherLedSettings = convert(e.evaluate("another-led-setting"), LEDSetting[].class);
 					int exposureTime = (Integer) e.evaluate("exposure-time");
 					Channel channel = new Channel(name, firstLedSetting, otherLedSettings, exposureTime);
-					microscope.addChannel(channel);
+					claim("channel " + name);
+					// an unchanged definition is kept by an update, e.g. with its ramped LED intensities
+					if(!isUnchanged(channelSentences, name, e.getParsedString()) || microscope.getChannel(name) == null)
+						microscope.addChannel(channel);
+					evaluatedChannels.add(name);
 					return null;
 				}
 		);
@@ -200,7 +683,10 @@ public class LanguageControl {
 					String name = (String) e.evaluate("region-name");
 					Double[] dimensions = (Double[]) e.evaluate("region-dimensions");
 					Double[] center = (Double[]) e.evaluate("region-center");
-					microscope.addPosition(new Position(name, center, dimensions));
+					claim("position " + name);
+					if(!isUnchanged(positionSentences, name, e.getParsedString()) || microscope.getPosition(name) == null)
+						microscope.addPosition(new Position(name, center, dimensions));
+					evaluatedPositions.add(name);
 					return null;
 				}
 		);
@@ -232,7 +718,10 @@ public class LanguageControl {
 
 		parser.defineSentence(
 				"Define the output folder at {folder:path}.",
-				e -> null);
+				e -> {
+					setOutputFolder(new File((String) e.evaluate("folder")));
+					return null;
+				});
 
 		rule = parser.defineType("defined-channels", "'{channel:[A-Za-z0-9]:+}'",
 				e -> e.getParsedString("channel"),
@@ -271,7 +760,7 @@ public class LanguageControl {
 		rule = parser.defineType("z-distance", "{z-distance:float} microns",
 				e -> e.evaluate("z-distance"),
 				true);
-		parser.setGeneratorHints(rule, "z-distance", GeneratorHints.from(Key.MIN_VALUE, 0f, Key.MAX_VALUE, 50f, Key.DECIMAL_PLACES, 1));
+		parser.setGeneratorHints(rule, "z-distance", GeneratorHints.from(Key.MIN_VALUE, 0.1f, Key.MAX_VALUE, 50f, Key.DECIMAL_PLACES, 1));
 
 		parser.defineType("lens",  "5x lens", e -> Lens.FIVE);
 		parser.defineType("lens", "20x lens", e -> Lens.TWENTY);
@@ -287,7 +776,7 @@ public class LanguageControl {
 		parser.defineType("binning", "5 x 5", e -> Binning.FIVE);
 
 		parser.defineType("start", "At the beginning", e -> globalStart);
-		parser.defineType("start", "At {time:time}",   e -> e.evaluate("time"), true);
+		parser.defineType("start", "At {time:time}",   e -> absoluteStart((LocalTime) e.evaluate("time")), true);
 		parser.defineType("start", "After {delay:time-interval}",
 				e -> {
 					long afterSeconds = (long) e.evaluate("delay");
@@ -327,32 +816,26 @@ public class LanguageControl {
 				"{\n  }with a plane distance of {dz:z-distance}" +
 				"{\n  }using the {lens:lens} with the {magnification:mag} and a binning of {binning:binning}.",
 				e -> {
-					final LocalTime time = (LocalTime) e.evaluate("start");
+					final LocalDateTime start = (LocalDateTime) e.evaluate("start");
 					final long[] repetition = (long[]) e.evaluate("repetition");
 					final long interval = repetition[0];
 					final long duration = repetition[1];
 
-					final String[] positionNames = (String[]) e.evaluate("position-list");
-					final String[] channelNames = (String[]) e.evaluate("channel-list");
+					String[] positionNames = (String[]) e.evaluate("position-list");
+					String[] channelNames = (String[]) e.evaluate("channel-list");
 					final Lens lens = (Lens) e.evaluate("lens");
 					final MagnificationChanger mag = (MagnificationChanger) e.evaluate("magnification");
 					final Binning binning = (Binning) e.evaluate("binning");
 					final double dz = (double) e.evaluate("dz");
 
-					LocalDateTime start = LocalDate.now().atTime(time);
-					if(globalStart.isAfter(time))
-						start = start.plusDays(1);
+					// on a shared microscope, 'all' refers to what this script defines
+					if(sharedMicroscope && positionNames[0].equals(ALL_POSITIONS))
+						positionNames = evaluatedPositions.toArray(new String[0]);
+					if(sharedMicroscope && channelNames[0].equals(ALL_CHANNELS))
+						channelNames = evaluatedChannels.toArray(new String[0]);
 
 					int nCycles = duration < interval ? 1 : (int)(duration / interval + 1);
-					for(int c = 0; c < nCycles; c++) {
-						LocalDateTime plannedExecutionTime = start.plusSeconds(c * interval);
-						timeline.put(plannedExecutionTime, () -> {
-							microscope.setLens(lens);
-							microscope.setMagnificationChanger(mag);
-							microscope.setBinning(binning);
-							microscope.acquire(positionNames, channelNames, dz);
-						});
-					}
+					schedule(e.getParsedString(), start, interval, nCycles, new Acquisition(positionNames, channelNames, dz, lens, mag, binning));
 					return null;
 				});
 		acquisitionRule = rule.get();
@@ -418,7 +901,7 @@ public class LanguageControl {
 				"{\n  }{repetition:repetition}" +
 				"{\n  }the power of the {led:led} led of channel {channel:defined-channels} to {power:led-power}.",
 				e -> {
-					final LocalTime time = (LocalTime) e.evaluate("start");
+					final LocalDateTime start = (LocalDateTime) e.evaluate("start");
 					final long[] repetition = (long[]) e.evaluate("repetition");
 					final long interval = repetition[0];
 					final long duration = repetition[1];
@@ -427,22 +910,18 @@ public class LanguageControl {
 					final String channel = (String) e.evaluate("channel");
 					final int power = (Integer) e.evaluate("power");
 
-					LocalDateTime start = LocalDate.now().atTime(time);
-					if(globalStart.isAfter(time))
-						start = start.plusDays(1);
-
 					int nCycles = duration < interval ? 1 : (int)(duration / interval + 1);
 
 					Interpolator interpolator = new Interpolator(
 							() -> microscope.getChannel(channel).getLEDSetting(led).getIntensity(),
-							(c, v)  -> microscope.getChannel(channel).getLEDSetting(led).setIntensity((int) Math.round(v)),
+							(c, v)  -> {
+								microscope.getChannel(channel).getLEDSetting(led).setIntensity((int) Math.round(v));
+								stateChanged("led/" + channel + "/" + led.name(), v);
+							},
 							power, nCycles);
 
-					for(int c = 0; c < nCycles; c++) {
-						int cycle = c;
-						LocalDateTime plannedExecutionTime = start.plusSeconds(c * interval);
-						timeline.put(plannedExecutionTime, () -> interpolator.interpolate(cycle));
-					}
+					// channel settings are read by acquisitions, so they are changed in the same lane
+					schedule(e.getParsedString(), start, interval, nCycles, Kind.LED_POWER, Resource.OPTICS, "led/" + channel + "/" + led.name(), 1, interpolator);
 					return null;
 				});
 
@@ -488,7 +967,7 @@ public class LanguageControl {
 				"{\n  }{repetition:repetition}" +
 				"{\n  }the exposure time of channel {channel:defined-channels} to {exposure-time:exposure-time}.",
 				e -> {
-					final LocalTime time = (LocalTime) e.evaluate("start");
+					final LocalDateTime start = (LocalDateTime) e.evaluate("start");
 					final long[] repetition = (long[]) e.evaluate("repetition");
 					final long interval = repetition[0];
 					final long duration = repetition[1];
@@ -496,22 +975,17 @@ public class LanguageControl {
 					final String channel = (String) e.evaluate("channel");
 					final int exposureTime = (Integer) e.evaluate("exposure-time");
 
-					LocalDateTime start = LocalDate.now().atTime(time);
-					if(globalStart.isAfter(time))
-						start = start.plusDays(1);
-
 					int nCycles = duration < interval ? 1 : (int)(duration / interval + 1);
 
 					Interpolator interpolator = new Interpolator(
 							() -> microscope.getChannel(channel).getExposureTime(),
-							(c, v) -> microscope.getChannel(channel).setExposureTime((int) Math.round(v)),
+							(c, v) -> {
+								microscope.getChannel(channel).setExposureTime((int) Math.round(v));
+								stateChanged("exposure/" + channel, v);
+							},
 							exposureTime, nCycles);
 
-					for(int c = 0; c < nCycles; c++) {
-						int cycle = c;
-						LocalDateTime plannedExecutionTime = start.plusSeconds(c * interval);
-						timeline.put(plannedExecutionTime, () -> interpolator.interpolate(cycle));
-					}
+					schedule(e.getParsedString(), start, interval, nCycles, Kind.EXPOSURE_TIME, Resource.OPTICS, "exposure/" + channel, 1, interpolator);
 					return null;
 				});
 
@@ -565,29 +1039,25 @@ public class LanguageControl {
 				"{\n  }{repetition:repetition}" +
 				"{\n  }the CO2 concentration to {co2-concentration:co2-concentration}.",
 				e -> {
-					final LocalTime time = (LocalTime) e.evaluate("start");
+					final LocalDateTime start = (LocalDateTime) e.evaluate("start");
 					final long[] repetition = (long[]) e.evaluate("repetition");
 					final long interval = repetition[0];
 					final long duration = repetition[1];
 
 					final double co2Concentration = (Double) e.evaluate("co2-concentration");
-
-					LocalDateTime start = LocalDate.now().atTime(time);
-					if(globalStart.isAfter(time))
-						start = start.plusDays(1);
+					claim("incubation");
 
 					int nCycles = duration < interval ? 1 : (int)(duration / interval + 1);
 
 					Interpolator interpolator = new Interpolator(
 							microscope::getCO2Concentration,
-							(c, v) -> microscope.setCO2Concentration(v),
+							(c, v) -> {
+								microscope.setCO2Concentration(v);
+								stateChanged("co2", v);
+							},
 							co2Concentration, nCycles);
 
-					for(int c = 0; c < nCycles; c++) {
-						int cycle = c;
-						LocalDateTime plannedExecutionTime = start.plusSeconds(c * interval);
-						timeline.put(plannedExecutionTime, () -> interpolator.interpolate(cycle));
-					}
+					schedule(e.getParsedString(), start, interval, nCycles, Kind.CO2_CONCENTRATION, Resource.INCUBATION, "co2", Incubation.CO2_RESOLUTION, interpolator);
 					return null;
 				});
 
@@ -630,29 +1100,25 @@ public class LanguageControl {
 				"{\n  }{repetition:repetition}" +
 				"{\n  }the temperature to {temperature:temperature}.",
 				e -> {
-					final LocalTime time = (LocalTime) e.evaluate("start");
+					final LocalDateTime start = (LocalDateTime) e.evaluate("start");
 					final long[] repetition = (long[]) e.evaluate("repetition");
 					final long interval = repetition[0];
 					final long duration = repetition[1];
 
 					final double temperature = (Double) e.evaluate("temperature");
-
-					LocalDateTime start = LocalDate.now().atTime(time);
-					if(globalStart.isAfter(time))
-						start = start.plusDays(1);
+					claim("incubation");
 
 					int nCycles = duration < interval ? 1 : (int)(duration / interval + 1);
 
 					Interpolator interpolator = new Interpolator(
 							microscope::getTemperature,
-							(c, v) -> microscope.setTemperature(v),
+							(c, v) -> {
+								microscope.setTemperature(v);
+								stateChanged("temperature", v);
+							},
 							temperature, nCycles);
 
-					for(int c = 0; c < nCycles; c++) {
-						int cycle = c;
-						LocalDateTime plannedExecutionTime = start.plusSeconds(c * interval);
-						timeline.put(plannedExecutionTime, () -> interpolator.interpolate(cycle));
-					}
+					schedule(e.getParsedString(), start, interval, nCycles, Kind.TEMPERATURE, Resource.INCUBATION, "temperature", Incubation.TEMPERATURE_RESOLUTION, interpolator);
 					return null;
 				});
 
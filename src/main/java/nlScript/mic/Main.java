@@ -89,9 +89,12 @@ public class Main implements PlugIn {
 			}
 		});
 
-		Microscope mic = lc.microscope;
-		mic.addAcquisitionListener((position, channel) -> {
-			Date currentDate = new Date();
+		// the output is written on its own thread, losing the oldest events rather than holding up acquisition
+		AcquisitionEventBus events = new AcquisitionEventBus(lc.microscope, 1024, AcquisitionEventBus.WaitStrategy.BLOCKING);
+		events.subscribe("output", AcquisitionEventBus.Backpressure.DROP, event -> {
+			Microscope.Position position = event.getPosition();
+			Microscope.Channel channel = event.getChannel();
+			Date currentDate = new Date(event.getTime());
 			SimpleDateFormat dateFormat = new SimpleDateFormat("MMM dd, yyyy, HH:mm:ss", new Locale("en", "US"));
 			String timeStamp = dateFormat.format(currentDate);
 
@@ -103,31 +106,33 @@ public class Main implements PlugIn {
 			out.println("  - " + position.center);
 			out.println();
 			out.println("Channel settings: " + channel.name);
-			out.println("  - Exposure time: " + channel.getExposureTime() + "ms");
+			out.println("  - Exposure time: " + event.getExposureTime() + "ms");
 			for(Microscope.LED led : Microscope.LED.values()) {
-				Microscope.LEDSetting ledSetting = channel.getLEDSetting(led);
-				if(ledSetting != null)
-					out.println("  - LED " + led.WAVELENGTH + ": " + ledSetting.getIntensity() + "%");
+				int intensity = event.getLEDIntensity(led);
+				if(intensity >= 0)
+					out.println("  - LED " + led.WAVELENGTH + ": " + intensity + "%");
 			}
 			out.println();
 			out.println("Optics:");
-			out.println("  - Lens: " + mic.getLens());
-			out.println("  - Mag.Changer: " + mic.getMagnificationChanger());
-			out.println("  - Binning: " + mic.getBinning());
+			out.println("  - Lens: " + event.getLens());
+			out.println("  - Mag.Changer: " + event.getMagnificationChanger());
+			out.println("  - Binning: " + event.getBinning());
 			out.println();
 			out.println("Incubation:");
-			out.println("  - Temperature: " + mic.getTemperature() + "C");
-			out.println("  - CO2 concentration: " + mic.getCO2Concentration() + "%");
+			out.println("  - Temperature: " + event.getTemperature() + "C");
+			out.println("  - CO2 concentration: " + event.getCO2Concentration() + "%");
 			out.println();
 			out.println("Acquire stack");
 			out.println();
 			out.println();
 			out.close();
-			editor.getOutputArea().setText(editor.getOutputArea().getText() + bos);
+			// formatted here, but shown on the event dispatch thread
+			String text = bos.toString();
+			SwingUtilities.invokeLater(() -> editor.getOutputArea().append(text));
 		});
 
-		editor.setBeforeRun(lc::reset);
-		editor.setAfterRun(() -> lc.getTimeline().process(Runnable::run));
+		editor.setBeforeRun(lc::beforeRun);
+		editor.setAfterRun(lc::afterRun);
 		editor.setVisible(true);
 
 		editor.getTextArea().addMouseListener(new MouseAdapter() {
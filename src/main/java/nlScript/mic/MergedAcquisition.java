@@ -0,0 +1,57 @@
+package nlScript.mic;
+
+import nlScript.mic.Microscope.Resource;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Acquisition entries with compatible optics that are due at (about) the same time, acquired in one pass
+public class MergedAcquisition extends TimelineEntry {
+
+	private final List<AcquisitionEntry> entries = new ArrayList<>();
+
+	private final LanguageControl languageControl;
+
+	public MergedAcquisition(AcquisitionEntry first, LanguageControl languageControl) {
+		// runs its entries itself, see run()
+		super(Kind.ACQUISITION, Resource.OPTICS, first.getPlannedTime(), null);
+		this.languageControl = languageControl;
+		entries.add(first);
+	}
+
+	public boolean isCompatible(AcquisitionEntry entry) {
+		return entries.get(0).getAcquisition().isCompatible(entry.getAcquisition());
+	}
+
+	public void add(AcquisitionEntry entry) {
+		entries.add(entry);
+	}
+
+	public List<AcquisitionEntry> getEntries() {
+		return entries;
+	}
+
+	// Acquires the entries that are admitted by their overrun policies in a single pass, in the order they were added
+	@Override
+	public void run() {
+		List<AcquisitionEntry> admitted = new ArrayList<>();
+		List<Acquisition> acquisitions = new ArrayList<>();
+		for(AcquisitionEntry entry : entries) {
+			if(languageControl.admit(entry)) {
+				admitted.add(entry);
+				acquisitions.add(entry.getAcquisition());
+			}
+		}
+		if(admitted.isEmpty())
+			return;
+		if(admitted.size() > 1)
+			languageControl.getStatistics().recordMerge(admitted.size());
+		languageControl.microscope.acquire(acquisitions);
+		for(AcquisitionEntry entry : admitted)
+			languageControl.executed(entry);
+	}
+
+	public String toString() {
+		return "merged " + entries;
+	}
+}
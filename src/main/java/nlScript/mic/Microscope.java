@@ -3,9 +3,22 @@ package nlScript.mic;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 public class Microscope {
 
@@ -24,8 +37,57 @@ public class Microscope {
 	}
 
 	private void fireAcquire(Position p, Channel c) {
-		for(AcquisiitonListener l : listeners)
-			l.acquire(p, c);
+		for(int i = 0; i < listeners.size(); i++)
+			listeners.get(i).acquire(p, c);
+	}
+
+	public interface StackListener {
+		public void stackAcquired(AcquiredStack stack);
+	}
+
+	// may be changed while acquiring
+	private final List<StackListener> stackListeners = new CopyOnWriteArrayList<>();
+
+	public void addStackListener(StackListener l) {
+		stackListeners.add(l);
+	}
+
+	public void removeStackListener(StackListener l) {
+		stackListeners.remove(l);
+	}
+
+	// For devices that produce image data. Takes over the caller's reference to the stack's frames,
+	// listeners that keep the stack beyond stackAcquired() retain it.
+	protected void fireStackAcquired(AcquiredStack stack) {
+		try {
+			for(StackListener l : stackListeners)
+				l.stackAcquired(stack);
+		} finally {
+			stack.release();
+		}
+	}
+
+	// the planes of a stack are dz apart, from the bottom to the top of the position's z extent
+	public static int getPlaneCount(Position position, double dz) {
+		if(!(dz > 0))
+			throw new IllegalArgumentException("The z step of a stack must be positive: " + dz);
+		double steps = Math.floor(position.extent.z / dz + 1e-9);
+		if(steps >= Integer.MAX_VALUE)
+			throw new IllegalArgumentException("Too many planes with a z step of " + dz + " at position " + position);
+		return (int) Math.max(0, steps) + 1;
+	}
+
+	// Independent parts of the hardware, which can be commanded concurrently
+	public enum Resource {
+		OPTICS,     // stage, objective, camera and light sources
+		INCUBATION  // temperature and CO2
+	}
+
+	// Which loop of an acquisition pass is the outer one. CHANNEL_OUTER switches the light sources
+	// less often, at the cost of visiting every position once per channel.
+	public enum LoopOrder {
+		POSITION_OUTER,
+		CHANNEL_OUTER
 	}
 
 	public enum LED {
@@ -61,22 +123,20 @@ public class Microscope {
 
 	public static class Channel {
 		public final String name;
-		private final List<LEDSetting> ledSettings;
+		private final EnumMap<LED, LEDSetting> ledSettings = new EnumMap<>(LED.class);
 		private int exposureTime;
 
 		public Channel(String name, LEDSetting first, LEDSetting[] remaining, int exposureTime) {
 			this.name = name;
-			ledSettings = new ArrayList<>();
-			ledSettings.add(first);
-			ledSettings.addAll(Arrays.asList(remaining));
+			ledSettings.put(first.led, first);
+			// the first setting of an LED counts
+			for(LEDSetting ledSetting : remaining)
+				ledSettings.putIfAbsent(ledSetting.led, ledSetting);
 			this.exposureTime = exposureTime;
 		}
 
 		public LEDSetting getLEDSetting(LED led) {
-			for(LEDSetting ledSetting : ledSettings)
-				if(ledSetting.led == led)
-					return ledSetting;
-			return null;
+			return ledSettings.get(led);
 		}
 
 		public int getExposureTime() {
@@ -176,15 +236,25 @@ public class Microscope {
 	}
 
 	public static class Incubation {
-		private double temperature = 20;
-		private double co2Concentration = 0;
+		// the incubator is controlled in steps of these
+		public static final double TEMPERATURE_RESOLUTION = 0.1;
+		public static final double CO2_RESOLUTION = 0.1;
+
+		private volatile double temperature = 20;
+		private volatile double co2Concentration = 0;
 
 		public void setTemperature(double temperature) {
-			this.temperature = temperature;
+			this.temperature = quantize(temperature, TEMPERATURE_RESOLUTION);
 		}
 
 		public void setCO2Concentration(double co2Concentration) {
-			this.co2Concentration = co2Concentration;
+			this.co2Concentration = quantize(co2Concentration, CO2_RESOLUTION);
+		}
+
+		// divides by the number of steps per unit, which is exact, unlike multiplying by the resolution
+		// (37.3 would become 37.300000000000004)
+		private static double quantize(double v, double resolution) {
+			return Math.round(v / resolution) / (1 / resolution);
 		}
 
 		public void reset() {
@@ -196,51 +266,122 @@ public class Microscope {
 	public static final String ALL_CHANNELS = "ALL_CHANNELS";
 	public static final String ALL_POSITIONS = "ALL_POSITIONS";
 
-	private final List<Channel> channels = new ArrayList<>();
-	private final List<Position> positions = new ArrayList<>();
+	// may be modified by script updates while acquiring
+	private final List<Channel> channels = new CopyOnWriteArrayList<>();
+	private final List<Position> positions = new CopyOnWriteArrayList<>();
+	private final Map<String, Channel> channelsByName = new ConcurrentHashMap<>();
+	private final Map<String, Position> positionsByName = new ConcurrentHashMap<>();
+	private final AtomicLong definitionVersion = new AtomicLong();
+
+	// who defined a channel or position, or controls the incubation, if the microscope is shared by
+	// several experiments, guarded by this
+	private final Map<String, Object> owners = new HashMap<>();
 
 	private Lens lens = Lens.FIVE;
 	private MagnificationChanger magnificationChanger = MagnificationChanger.ONE_ZERO;
 	private Binning binning = Binning.ONE;
 	private final Incubation incubation = new Incubation();
 
+	private final PathPlanner pathPlanner = new PathPlanner();
+	// the channels are acquired in the order of the script, unless reordering is switched on
+	private volatile ChannelOrder.Strategy channelOrder = ChannelOrder.Strategy.DEFINITION_ORDER;
+	private volatile LoopOrder loopOrder = LoopOrder.POSITION_OUTER;
+	private final DoubleAdder travelSaved = new DoubleAdder();
+
+	// What the optics are known to be set to, null if unknown (initially, after a reset and after errors)
+	private Lens sentLens;
+	private MagnificationChanger sentMagnificationChanger;
+	private Binning sentBinning;
+	private final Consumer<Lens> lensCommand = this::sendLens;
+	private final Consumer<MagnificationChanger> magnificationChangerCommand = this::sendMagnificationChanger;
+	private final Consumer<Binning> binningCommand = this::sendBinning;
+	private final AtomicLong sentCommands = new AtomicLong();
+	private final AtomicLong avoidedCommands = new AtomicLong();
+
 	public void reset() {
-		channels.clear();
-		positions.clear();
+		clearChannels();
+		clearPositions();
+		pathPlanner.clearCache();
+		travelSaved.reset();
 		lens = Lens.FIVE;
 		magnificationChanger = MagnificationChanger.ONE_ZERO;
 		binning = Binning.ONE;
 		incubation.reset();
+		invalidateDeviceState();
 	}
 
-	public void addChannel(Channel channel) {
+	// replaces a channel with the same name
+	public synchronized void addChannel(Channel channel) {
+		definitionsChanged();
+		channelsByName.put(channel.name, channel);
+		for(int i = 0; i < channels.size(); i++) {
+			if(channels.get(i).name.equals(channel.name)) {
+				channels.set(i, channel);
+				return;
+			}
+		}
 		this.channels.add(channel);
 	}
 
+	public synchronized void retainChannels(Collection<String> names) {
+		definitionsChanged();
+		channels.removeIf(c -> !names.contains(c.name));
+		channelsByName.keySet().retainAll(names);
+	}
+
 	public Channel getChannel(String name) {
-		for(Channel channel : channels)
-			if(channel.name.equals(name))
-				return channel;
-		return null;
+		return channelsByName.get(name);
 	}
 
-	public void clearChannels() {
+	public synchronized void clearChannels() {
+		definitionsChanged();
 		this.channels.clear();
+		this.channelsByName.clear();
 	}
 
-	public void addPosition(Position position) {
+	// replaces a position with the same name
+	public synchronized void addPosition(Position position) {
+		definitionsChanged();
+		positionsByName.put(position.name, position);
+		for(int i = 0; i < positions.size(); i++) {
+			if(positions.get(i).name.equals(position.name)) {
+				positions.set(i, position);
+				return;
+			}
+		}
 		this.positions.add(position);
 	}
 
+	public synchronized void retainPositions(Collection<String> names) {
+		definitionsChanged();
+		positions.removeIf(p -> !names.contains(p.name));
+		positionsByName.keySet().retainAll(names);
+	}
+
 	public Position getPosition(String name) {
-		for(Position position : positions)
-			if(position.name.equals(name))
-				return position;
-		return null;
+		return positionsByName.get(name);
 	}
 
-	public void clearPositions() {
+	public synchronized void clearPositions() {
+		definitionsChanged();
 		this.positions.clear();
+		this.positionsByName.clear();
+	}
+
+	// Claims a definition (e.g. "channel GFP") for the owner, fails if it was claimed by another one
+	public synchronized void claim(String definition, Object owner) {
+		Object previous = owners.putIfAbsent(definition, owner);
+		if(previous != null && previous != owner)
+			throw new IllegalStateException("The " + definition + " is already used by another experiment");
+	}
+
+	public synchronized void releaseClaims(Object owner) {
+		owners.values().removeIf(o -> o == owner);
+	}
+
+	// Compiled acquisition plans are only valid for the definitions and settings they were compiled with
+	private void definitionsChanged() {
+		definitionVersion.incrementAndGet();
 	}
 
 	public double getTemperature() {
@@ -263,52 +404,265 @@ public class Microscope {
 		return lens;
 	}
 
-	public void setLens(Lens lens) {
+	public synchronized void setLens(Lens lens) {
 		this.lens = lens;
+		sentLens = command(sentLens, lens, lensCommand);
 	}
 
 	public MagnificationChanger getMagnificationChanger() {
 		return magnificationChanger;
 	}
 
-	public void setMagnificationChanger(MagnificationChanger mag) {
+	public synchronized void setMagnificationChanger(MagnificationChanger mag) {
 		this.magnificationChanger = mag;
+		sentMagnificationChanger = command(sentMagnificationChanger, mag, magnificationChangerCommand);
 	}
 
 	public Binning getBinning() {
 		return binning;
 	}
 
-	public void setBinning(Binning binning) {
+	public synchronized void setBinning(Binning binning) {
 		this.binning = binning;
+		sentBinning = command(sentBinning, binning, binningCommand);
+	}
+
+	// Sends the command unless the device is known to be in the target state already,
+	// returns the state the device is known to be in afterwards
+	private <T> T command(T known, T target, Consumer<T> command) {
+		if(known == target) {
+			avoidedCommands.incrementAndGet();
+			return known;
+		}
+		try {
+			command.accept(target);
+		} catch(RuntimeException e) {
+			invalidateDeviceState();
+			throw e;
+		}
+		sentCommands.incrementAndGet();
+		return target;
+	}
+
+	// The commands to the hardware, which only need to be sent if the setting changes
+	protected void sendLens(Lens lens) {}
+
+	protected void sendMagnificationChanger(MagnificationChanger mag) {}
+
+	protected void sendBinning(Binning binning) {}
+
+	// The next setting of each optics component is sent to the device, whether it changed or not
+	public synchronized void invalidateDeviceState() {
+		sentLens = null;
+		sentMagnificationChanger = null;
+		sentBinning = null;
+	}
+
+	public long getSentCommandCount() {
+		return sentCommands.get();
+	}
+
+	public long getAvoidedCommandCount() {
+		return avoidedCommands.get();
 	}
 
 	public void acquire(String[] positionNames, String[] channelNames, double dz) {
-		Channel[] channels;
+		run(compile(positionNames, channelNames, dz));
+	}
+
+	// The acquisition is compiled once, and again only after the definitions changed
+	public void acquire(Acquisition acquisition) {
+		setLens(acquisition.lens);
+		setMagnificationChanger(acquisition.magnificationChanger);
+		setBinning(acquisition.binning);
+		AcquisitionPlan plan = acquisition.compiled;
+		if(!isValid(plan)) {
+			plan = compile(acquisition.positionNames, acquisition.channelNames, acquisition.dz);
+			acquisition.compiled = plan;
+		}
+		run(plan);
+	}
+
+	// Acquires several acquisitions with compatible optics in a single pass over the union of their
+	// positions, imaging every position/channel pair only once.
+	public void acquire(List<Acquisition> acquisitions) {
+		if(acquisitions.isEmpty())
+			return;
+		if(acquisitions.size() == 1) {
+			acquire(acquisitions.get(0));
+			return;
+		}
+		long version = definitionVersion.get();
+		LinkedHashMap<Position, LinkedHashSet<Channel>> plan = new LinkedHashMap<>();
+		for(Acquisition a : acquisitions) {
+			Channel[] channels = resolveChannels(a.channelNames);
+			for(Position position : resolvePositions(a.positionNames))
+				plan.computeIfAbsent(position, k -> new LinkedHashSet<>()).addAll(Arrays.asList(channels));
+		}
+
+		Acquisition first = acquisitions.get(0);
+		setLens(first.lens);
+		setMagnificationChanger(first.magnificationChanger);
+		setBinning(first.binning);
+		run(compile(version, plan.keySet().toArray(new Position[0]), plan::get, first.dz));
+	}
+
+	private Channel[] resolveChannels(String[] channelNames) {
 		if(channelNames.length > 0 && channelNames[0].equals(ALL_CHANNELS))
-			channels = this.channels.toArray(new Channel[0]);
-		else
-			channels = Arrays.stream(channelNames).map(this::getChannel).toArray(Channel[]::new);
+			return this.channels.toArray(new Channel[0]);
+		return Arrays.stream(channelNames).map(this::getChannel).toArray(Channel[]::new);
+	}
 
-		Position[] positions;
+	private Position[] resolvePositions(String[] positionNames) {
 		if(positionNames.length > 0 && positionNames[0].equals(ALL_POSITIONS))
-			positions = this.positions.toArray(new Position[0]);
-		else
-			positions = Arrays.stream(positionNames).map(this::getPosition).toArray(Position[]::new);
-
-		acquirePositionsAndChannels(positions, channels, dz);
+			return this.positions.toArray(new Position[0]);
+		return Arrays.stream(positionNames).map(this::getPosition).toArray(Position[]::new);
 	}
 
 	public void acquirePositionsAndChannels(Position[] positions, Channel[] channels, double dz) {
-		for(Position position : positions) {
+		List<Channel> channelList = Arrays.asList(channels);
+		run(compile(definitionVersion.get(), positions, p -> channelList, dz));
+	}
+
+	public AcquisitionPlan compile(String[] positionNames, String[] channelNames, double dz) {
+		// read before resolving, so that concurrent changes make the plan outdated
+		long version = definitionVersion.get();
+		List<Channel> channelList = Arrays.asList(resolveChannels(channelNames));
+		return compile(version, resolvePositions(positionNames), p -> channelList, dz);
+	}
+
+	public boolean isValid(AcquisitionPlan plan) {
+		return plan != null
+				&& plan.microscope == this
+				&& plan.version == definitionVersion.get()
+				&& plan.pathStrategy == pathPlanner.getStrategy();
+	}
+
+	public void run(AcquisitionPlan plan) {
+		travelSaved.add(plan.travelSaved);
+		try {
+			for(int i = 0, n = plan.size(); i < n; i++)
+				acquireSinglePositionAndChannel(plan.getPosition(i), plan.getChannel(i), plan.dz, plan.isTopDown(i));
+		} catch(RuntimeException e) {
+			// the device may have been left in any state
+			invalidateDeviceState();
+			throw e;
+		}
+	}
+
+	// Collects the stacks of an acquisition pass, in the order they are acquired in
+	private static class PlanBuilder {
+		final ArrayList<Position> positions = new ArrayList<>();
+		final ArrayList<Channel> channels = new ArrayList<>();
+		final ArrayList<Boolean> topDown = new ArrayList<>();
+		double travelSaved = 0;
+
+		void add(Position position, Channel channel, boolean topDown) {
+			this.positions.add(position);
+			this.channels.add(channel);
+			this.topDown.add(topDown);
+		}
+	}
+
+	private AcquisitionPlan compile(long version, Position[] positions, Function<Position, Collection<Channel>> channelsAt, double dz) {
+		PathPlanner.Strategy pathStrategy = pathPlanner.getStrategy();
+		PlanBuilder builder = new PlanBuilder();
+		if(loopOrder == LoopOrder.CHANNEL_OUTER)
+			compileChannelOuter(positions, channelsAt, builder);
+		else
+			compilePositionOuter(positions, channelsAt, builder);
+		boolean[] topDown = new boolean[builder.topDown.size()];
+		for(int i = 0; i < topDown.length; i++)
+			topDown[i] = builder.topDown.get(i);
+		return new AcquisitionPlan(this, version, pathStrategy, dz, builder.travelSaved,
+				builder.positions.toArray(new Position[0]),
+				builder.channels.toArray(new Channel[0]),
+				topDown);
+	}
+
+	// Visits the positions in the planned order, alternating the z direction from stack to stack.
+	// When grouped, the channels at each position are run forwards or backwards, whichever
+	// continues more cheaply from the last channel.
+	private void compilePositionOuter(Position[] positions, Function<Position, Collection<Channel>> channelsAt, PlanBuilder builder) {
+		int[] nStacks = Arrays.stream(positions).mapToInt(p -> channelsAt.apply(p).size()).toArray();
+		PathPlanner.Plan plan = pathPlanner.plan(positions, nStacks);
+		builder.travelSaved += plan.getSaved();
+		Channel last = null;
+		for(int i = 0; i < plan.size(); i++) {
+			Position position = plan.getPosition(i);
+			List<Channel> channels = Arrays.asList(ChannelOrder.order(channelsAt.apply(position).toArray(new Channel[0]), channelOrder));
+			int n = channels.size();
+			if(channelOrder == ChannelOrder.Strategy.GROUPED && last != null && n > 1 && !channels.contains(null)
+					&& ChannelOrder.switchingCost(last, channels.get(n - 1)) < ChannelOrder.switchingCost(last, channels.get(0))) {
+				channels = new ArrayList<>(channels);
+				Collections.reverse(channels);
+			}
+			boolean topDown = plan.startsAtTop(i);
 			for(Channel channel : channels) {
-				acquireSinglePositionAndChannel(position, channel);
+				builder.add(position, channel, topDown);
+				topDown = !topDown;
+			}
+			if(n > 0)
+				last = channels.get(n - 1);
+		}
+	}
+
+	// Switches each channel on once and visits all its positions, every other channel along the
+	// planned path backwards.
+	private void compileChannelOuter(Position[] positions, Function<Position, Collection<Channel>> channelsAt, PlanBuilder builder) {
+		LinkedHashSet<Channel> all = new LinkedHashSet<>();
+		for(Position position : positions)
+			all.addAll(channelsAt.apply(position));
+		PathPlanner.Plan plan = pathPlanner.plan(positions, 1);
+		boolean backwards = false;
+		for(Channel channel : ChannelOrder.order(all.toArray(new Channel[0]), channelOrder)) {
+			builder.travelSaved += plan.getSaved();
+			for(int k = 0; k < plan.size(); k++) {
+				int i = backwards ? plan.size() - 1 - k : k;
+				Position position = plan.getPosition(i);
+				if(channelsAt.apply(position).contains(channel))
+					builder.add(position, channel, plan.startsAtTop(i) ^ backwards);
 			}
+			backwards = !backwards;
 		}
 	}
 
+	// Acquires one stack. Every stack of an acquisition ends up here, via the overload below, so subclasses
+	// that don't care about the z step and direction can keep overriding this one.
 	public void acquireSinglePositionAndChannel(Position position, Channel channel) {
 		fireAcquire(position, channel);
 	}
 
+	// topDown: whether the stack is acquired from its top to its bottom
+	public void acquireSinglePositionAndChannel(Position position, Channel channel, double dz, boolean topDown) {
+		acquireSinglePositionAndChannel(position, channel);
+	}
+
+	public ChannelOrder.Strategy getChannelOrder() {
+		return channelOrder;
+	}
+
+	public void setChannelOrder(ChannelOrder.Strategy channelOrder) {
+		this.channelOrder = channelOrder;
+		definitionsChanged();
+	}
+
+	public LoopOrder getLoopOrder() {
+		return loopOrder;
+	}
+
+	public void setLoopOrder(LoopOrder loopOrder) {
+		this.loopOrder = loopOrder;
+		definitionsChanged();
+	}
+
+	public PathPlanner getPathPlanner() {
+		return pathPlanner;
+	}
+
+	// stage travel in microns saved by path planning, since the last reset
+	public double getTravelSaved() {
+		return travelSaved.sum();
+	}
+
 }
@@ -0,0 +1,66 @@
+package nlScript.mic;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Clock that advances with <code>System.nanoTime()</code>, from the wall-clock time captured by the
+ * last call to {@link #anchor()}. NTP corrections and daylight saving changes of the wall clock do not
+ * affect it, so they can neither make a batch of timeline entries due at once nor stall the timeline.
+ */
+public class MonotonicClock implements TimelineClock {
+
+	private static final class Anchor {
+		final LocalDateTime wallTime;
+		final long nanoTime;
+
+		Anchor(LocalDateTime wallTime, long nanoTime) {
+			this.wallTime = wallTime;
+			this.nanoTime = nanoTime;
+		}
+	}
+
+	private final Clock wallClock;
+
+	private volatile Anchor anchor;
+
+	public MonotonicClock() {
+		this(Clock.systemDefaultZone());
+	}
+
+	// for tests, with a wall clock that can be set
+	MonotonicClock(Clock wallClock) {
+		this.wallClock = wallClock;
+		anchor();
+	}
+
+	@Override
+	public void anchor() {
+		anchor = new Anchor(LocalDateTime.now(wallClock), System.nanoTime());
+	}
+
+	@Override
+	public LocalDateTime now() {
+		Anchor a = anchor;
+		return a.wallTime.plusNanos(System.nanoTime() - a.nanoTime);
+	}
+
+	@Override
+	public LocalDateTime fromWallTime(LocalDateTime wallTime) {
+		return now().plus(Duration.between(LocalDateTime.now(wallClock), wallTime));
+	}
+
+	@Override
+	public LocalDateTime toWallTime(LocalDateTime time) {
+		return LocalDateTime.now(wallClock).plus(Duration.between(now(), time));
+	}
+
+	@Override
+	public void parkUntil(Object blocker, LocalDateTime deadline, long maxNanos) {
+		long waitNanos = Duration.between(now(), deadline).toNanos();
+		if(waitNanos > 0)
+			LockSupport.parkNanos(blocker, Math.min(waitNanos, maxNanos));
+	}
+}
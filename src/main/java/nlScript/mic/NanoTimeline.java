@@ -0,0 +1,260 @@
+package nlScript.mic;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.Predicate;
+
+/**
+ * Compact timeline backend: a binary min-heap over parallel primitive arrays, keyed by
+ * nanoseconds since the epoch. Costs about 20 bytes per entry (plus the entry itself),
+ * instead of a <code>LocalDateTime</code>, a <code>TreeMap.Entry</code> and an <code>ArrayList</code>.
+ * Entries scheduled for the same time are run in insertion order.
+ */
+public class NanoTimeline<E> extends Timeline<E> {
+
+	private static final int INITIAL_CAPACITY = 64;
+
+	private long[] times = new long[INITIAL_CAPACITY];
+	private long[] seqs = new long[INITIAL_CAPACITY];
+	private Object[] entries = new Object[INITIAL_CAPACITY];
+	private int size = 0;
+	private long nextSeq = 0;
+
+	static long toNanos(LocalDateTime time) {
+		return time.toEpochSecond(ZoneOffset.UTC) * 1000000000L + time.getNano();
+	}
+
+	// like toNanos(), but saturates instead of overflowing (e.g. for LocalDateTime.MIN and MAX)
+	private static long toNanosClamped(LocalDateTime time) {
+		long seconds = time.toEpochSecond(ZoneOffset.UTC);
+		if(seconds >= Long.MAX_VALUE / 1000000000L)
+			return Long.MAX_VALUE;
+		if(seconds <= Long.MIN_VALUE / 1000000000L)
+			return Long.MIN_VALUE;
+		return seconds * 1000000000L + time.getNano();
+	}
+
+	static LocalDateTime fromNanos(long nanos) {
+		return LocalDateTime.ofEpochSecond(Math.floorDiv(nanos, 1000000000L), (int) Math.floorMod(nanos, 1000000000L), ZoneOffset.UTC);
+	}
+
+	public void put(long nanos, E entry) {
+		boolean first;
+		synchronized(this) {
+			first = store(nanos, entry);
+		}
+		if(first)
+			wakeDispatcher();
+	}
+
+	@Override
+	protected synchronized boolean store(LocalDateTime time, E entry) {
+		return store(toNanos(time), entry);
+	}
+
+	private boolean store(long nanos, E entry) {
+		return store(nanos, nextSeq++, entry);
+	}
+
+	private boolean store(long nanos, long seq, E entry) {
+		if(size == times.length)
+			grow();
+		int i = size++;
+		times[i] = nanos;
+		seqs[i] = seq;
+		entries[i] = entry;
+		siftUp(i);
+		return times[0] == nanos;
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	protected synchronized void removeEntriesBefore(LocalDateTime time, ArrayList<E> due) {
+		long limit = toNanos(time);
+		while(size > 0 && times[0] < limit) {
+			due.add((E) entries[0]);
+			removeFirst();
+		}
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	protected synchronized void removeEntriesBefore(LocalDateTime time, ArrayList<E> due, Predicate<? super E> filter) {
+		long limit = toNanos(time);
+		ArrayList<E> kept = new ArrayList<>();
+		long[] keptTimes = new long[16];
+		long[] keptSeqs = new long[16];
+		while(size > 0 && times[0] < limit) {
+			E entry = (E) entries[0];
+			if(filter.test(entry)) {
+				due.add(entry);
+			} else {
+				if(kept.size() == keptTimes.length) {
+					keptTimes = Arrays.copyOf(keptTimes, 2 * keptTimes.length);
+					keptSeqs = Arrays.copyOf(keptSeqs, 2 * keptSeqs.length);
+				}
+				keptTimes[kept.size()] = times[0];
+				keptSeqs[kept.size()] = seqs[0];
+				kept.add(entry);
+			}
+			removeFirst();
+		}
+		// re-insert with their original sequence number to keep the order
+		for(int i = 0; i < kept.size(); i++)
+			store(keptTimes[i], keptSeqs[i], kept.get(i));
+	}
+
+	// Starting at the first entry, the heap is visited best-first, so that only the returned entries
+	// and their children are looked at. Otherwise, the arrays are scanned once for the earliest matching
+	// entries, which takes about a millisecond per million entries.
+	@Override
+	@SuppressWarnings("unchecked")
+	protected synchronized void collectEvents(LocalDateTime from, LocalDateTime to, EventCollector<E> collector) {
+		if(size == 0)
+			return;
+		long fromNanos = toNanosClamped(from);
+		long toNanos = toNanosClamped(to);
+		Comparator<Integer> order = (i, j) -> less(i, j) ? -1 : less(j, i) ? 1 : 0;
+		int needed = collector.getNeeded();
+		List<Integer> selected;
+		if(fromNanos <= times[0]) {
+			selected = new ArrayList<>();
+			PriorityQueue<Integer> candidates = new PriorityQueue<>(order);
+			candidates.add(0);
+			while(!candidates.isEmpty() && selected.size() < needed) {
+				int i = candidates.poll();
+				if(times[i] >= toNanos)
+					break;
+				selected.add(i);
+				for(int child = 2 * i + 1; child <= 2 * i + 2 && child < size; child++)
+					candidates.add(child);
+			}
+		} else {
+			// keep the earliest needed ones, the latest of them on top
+			PriorityQueue<Integer> earliest = new PriorityQueue<>(order.reversed());
+			long[] times = this.times;
+			for(int i = 0, n = size; i < n; i++) {
+				if(times[i] < fromNanos || times[i] >= toNanos)
+					continue;
+				if(earliest.size() < needed) {
+					earliest.add(i);
+				} else if(less(i, earliest.peek())) {
+					earliest.poll();
+					earliest.add(i);
+				}
+			}
+			selected = new ArrayList<>(earliest);
+			selected.sort(order);
+		}
+		for(int i : selected) {
+			if(!collector.add(fromNanos(times[i]), (E) entries[i]))
+				break;
+		}
+	}
+
+	@Override
+	protected synchronized LocalDateTime firstTime() {
+		return size == 0 ? null : fromNanos(times[0]);
+	}
+
+	@Override
+	public synchronized boolean isEmpty() {
+		return size == 0;
+	}
+
+	@Override
+	protected synchronized void removeAll() {
+		Arrays.fill(entries, 0, size, null);
+		size = 0;
+	}
+
+	public synchronized int size() {
+		return size;
+	}
+
+	@Override
+	public synchronized String toString() {
+		// pop from a copy of the heap to list the entries in order
+		NanoTimeline<E> copy = new NanoTimeline<>();
+		copy.times = Arrays.copyOf(times, size);
+		copy.seqs = Arrays.copyOf(seqs, size);
+		copy.entries = Arrays.copyOf(entries, size);
+		copy.size = size;
+
+		StringBuilder sb = new StringBuilder();
+		long prev = 0;
+		boolean open = false;
+		while(copy.size > 0) {
+			long t = copy.times[0];
+			if(!open || t != prev) {
+				if(open)
+					sb.append("]");
+				sb.append(fromNanos(t)).append(" -> [");
+				open = true;
+			} else {
+				sb.append(", ");
+			}
+			sb.append(copy.entries[0]);
+			prev = t;
+			copy.removeFirst();
+		}
+		if(open)
+			sb.append("]");
+		return sb.toString();
+	}
+
+	private void grow() {
+		int capacity = times.length * 2;
+		times = Arrays.copyOf(times, capacity);
+		seqs = Arrays.copyOf(seqs, capacity);
+		entries = Arrays.copyOf(entries, capacity);
+	}
+
+	private boolean less(int i, int j) {
+		return times[i] < times[j] || (times[i] == times[j] && seqs[i] < seqs[j]);
+	}
+
+	private void swap(int i, int j) {
+		long t = times[i]; times[i] = times[j]; times[j] = t;
+		long s = seqs[i];  seqs[i]  = seqs[j];  seqs[j]  = s;
+		Object e = entries[i]; entries[i] = entries[j]; entries[j] = e;
+	}
+
+	private void siftUp(int i) {
+		while(i > 0) {
+			int parent = (i - 1) >>> 1;
+			if(!less(i, parent))
+				break;
+			swap(i, parent);
+			i = parent;
+		}
+	}
+
+	private void siftDown(int i) {
+		while(true) {
+			int left = 2 * i + 1;
+			if(left >= size)
+				break;
+			int smallest = left;
+			int right = left + 1;
+			if(right < size && less(right, left))
+				smallest = right;
+			if(!less(smallest, i))
+				break;
+			swap(i, smallest);
+			i = smallest;
+		}
+	}
+
+	private void removeFirst() {
+		int last = --size;
+		swap(0, last);
+		entries[last] = null;
+		siftDown(0);
+	}
+}
@@ -0,0 +1,102 @@
+package nlScript.mic;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * What to do with the cycles of a repeated sentence that are due while a previous cycle is still
+ * running, e.g. when acquiring all positions and channels takes longer than the interval.
+ */
+public class OverrunPolicy {
+
+	public enum Type {
+		SKIP,      // drop cycles that start too late, continue with the next cycle on schedule
+		COALESCE,  // of all cycles that are due, run only the latest one
+		CATCH_UP   // run all cycles, but not faster than a minimum gap, and drop cycles beyond a maximum backlog
+	}
+
+	public enum Decision {
+		RUN,
+		SKIPPED,
+		COALESCED,
+		CAUGHT_UP,
+		DROPPED
+	}
+
+	public interface Listener {
+		void overrun(TimelineEntry entry, Decision decision);
+	}
+
+	private static final long MAX_PARK_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+	private final Type type;
+	private final Duration grace;
+	private final Duration minGap;
+	private final int maxBacklog;
+
+	private OverrunPolicy(Type type, Duration grace, Duration minGap, int maxBacklog) {
+		this.type = type;
+		this.grace = grace;
+		this.minGap = minGap;
+		this.maxBacklog = maxBacklog;
+	}
+
+	// drops cycles that start more than half an interval late
+	public static OverrunPolicy skip() {
+		return new OverrunPolicy(Type.SKIP, null, null, 0);
+	}
+
+	public static OverrunPolicy skip(Duration grace) {
+		return new OverrunPolicy(Type.SKIP, grace, null, 0);
+	}
+
+	public static OverrunPolicy coalesce() {
+		return new OverrunPolicy(Type.COALESCE, null, null, 0);
+	}
+
+	public static OverrunPolicy catchUp(Duration minGap, int maxBacklog) {
+		return new OverrunPolicy(Type.CATCH_UP, null, minGap, maxBacklog);
+	}
+
+	public Type getType() {
+		return type;
+	}
+
+	public Decision decide(TimelineEntry.Series series, int cycle, LocalDateTime now) {
+		int latest = series.getLatestDueCycle(now);
+		boolean overrun = latest > cycle;
+		switch(type) {
+			case SKIP:
+				long lateness = ChronoUnit.NANOS.between(series.getPlannedTime(cycle), now);
+				long graceNanos = grace != null ? grace.toNanos() : TimeUnit.SECONDS.toNanos(series.interval) / 2;
+				return overrun || lateness > graceNanos ? Decision.SKIPPED : Decision.RUN;
+			case COALESCE:
+				return overrun ? Decision.COALESCED : Decision.RUN;
+			case CATCH_UP:
+				if(!overrun)
+					return Decision.RUN;
+				return latest - cycle > maxBacklog ? Decision.DROPPED : Decision.CAUGHT_UP;
+		}
+		throw new IllegalStateException("Unknown overrun policy " + type);
+	}
+
+	// blocks until the minimum gap since the last cycle of the series has passed
+	public void awaitCatchUpSlot(TimelineEntry.Series series, TimelineClock clock) {
+		LocalDateTime lastStart = series.getLastStart();
+		if(lastStart == null || minGap == null)
+			return;
+		LocalDateTime notBefore = lastStart.plus(minGap);
+		while(clock.now().isBefore(notBefore))
+			clock.parkUntil(this, notBefore, MAX_PARK_NANOS);
+	}
+
+	public String toString() {
+		switch(type) {
+			case CATCH_UP: return type + "(min. gap " + minGap + ", max. backlog " + maxBacklog + ")";
+			case SKIP:     return grace == null ? type.toString() : type + "(grace " + grace + ")";
+			default:       return type.toString();
+		}
+	}
+}
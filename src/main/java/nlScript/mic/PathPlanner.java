@@ -0,0 +1,306 @@
+package nlScript.mic;
+
+import nlScript.mic.Microscope.Position;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Orders the positions of an acquisition pass to reduce stage travel, if switched on with
+ * {@link #setStrategy(Strategy)}. The z direction of consecutive
+ * stacks alternates, so that each stack starts close to where the previous one ended. Travel is
+ * measured from the end of one stack to the start of the next, using the stage coordinates of the
+ * position centers and the bottom and top of their stacks. Plans are cached per position set.
+ */
+public class PathPlanner {
+
+	public enum Strategy {
+		DEFINITION_ORDER,
+		NEAREST_NEIGHBOUR,  // followed by 2-opt
+		SERPENTINE          // rows along x, alternating direction
+	}
+
+	public static class Plan {
+		private final Position[] positions;
+		private final int[] nStacks;
+		private final boolean[] startAtTop;  // z direction of the first stack at each position
+		private final double travel;
+		private final double originalTravel;
+
+		private Plan(Position[] positions, int[] nStacks, boolean[] startAtTop, double travel, double originalTravel) {
+			this.positions = positions;
+			this.nStacks = nStacks;
+			this.startAtTop = startAtTop;
+			this.travel = travel;
+			this.originalTravel = originalTravel;
+		}
+
+		public int size() {
+			return positions.length;
+		}
+
+		public Position getPosition(int i) {
+			return positions[i];
+		}
+
+		public int getNumberOfStacks(int i) {
+			return nStacks[i];
+		}
+
+		public boolean startsAtTop(int i) {
+			return startAtTop[i];
+		}
+
+		// stage travel between stacks, in microns
+		public double getTravel() {
+			return travel;
+		}
+
+		// stage travel for the definition order, with every stack acquired bottom-up
+		public double getOriginalTravel() {
+			return originalTravel;
+		}
+
+		public double getSaved() {
+			return originalTravel - travel;
+		}
+
+		public String toString() {
+			StringBuilder sb = new StringBuilder();
+			for(int i = 0; i < positions.length; i++)
+				sb.append(positions[i].name).append(startAtTop[i] ? "v " : "^ ");
+			return sb.append(String.format("(travel %.0f instead of %.0f microns)", travel, originalTravel)).toString();
+		}
+	}
+
+	private static final int CACHE_SIZE = 64;
+
+	private static final int MAX_2OPT_PASSES = 50;
+
+	// the positions are visited in the order of the script, unless another strategy is chosen
+	private volatile Strategy strategy = Strategy.DEFINITION_ORDER;
+
+	// keyed by the position objects (which are replaced when redefined) and their numbers of stacks
+	private final LinkedHashMap<List<Object>, Plan> cache = new LinkedHashMap<List<Object>, Plan>(16, 0.75f, true) {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<List<Object>, Plan> eldest) {
+			return size() > CACHE_SIZE;
+		}
+	};
+
+	public Strategy getStrategy() {
+		return strategy;
+	}
+
+	public void setStrategy(Strategy strategy) {
+		this.strategy = strategy;
+		clearCache();
+	}
+
+	public synchronized void clearCache() {
+		cache.clear();
+	}
+
+	public Plan plan(Position[] positions, int nStacksPerPosition) {
+		int[] nStacks = new int[positions.length];
+		Arrays.fill(nStacks, nStacksPerPosition);
+		return plan(positions, nStacks);
+	}
+
+	// nStacks[i] is the number of stacks (i.e. channels) acquired at positions[i]
+	public Plan plan(Position[] positions, int[] nStacks) {
+		List<Object> key = new ArrayList<>(2 * positions.length);
+		key.addAll(Arrays.asList(positions));
+		for(int n : nStacks)
+			key.add(n);
+		synchronized(this) {
+			Plan plan = cache.get(key);
+			if(plan != null)
+				return plan;
+		}
+		Plan plan = createPlan(positions, nStacks);
+		synchronized(this) {
+			cache.put(key, plan);
+		}
+		return plan;
+	}
+
+	private Plan createPlan(Position[] positions, int[] nStacks) {
+		int n = positions.length;
+		boolean[] bottomUp = new boolean[n];
+		// unknown positions are passed on as they are
+		if(Arrays.asList(positions).contains(null))
+			return new Plan(positions, nStacks, bottomUp, 0, 0);
+		double originalTravel = travel(positions, nStacks, bottomUp, false);
+
+		int[] order;
+		switch(strategy) {
+			case NEAREST_NEIGHBOUR: order = twoOpt(positions, nearestNeighbour(positions)); break;
+			case SERPENTINE:        order = serpentine(positions); break;
+			default:                order = identity(n); break;
+		}
+		Position[] ordered = new Position[n];
+		int[] orderedStacks = new int[n];
+		for(int i = 0; i < n; i++) {
+			ordered[i] = positions[order[i]];
+			orderedStacks[i] = nStacks[order[i]];
+		}
+
+		// each stack starts at the end of the next stack that is closer to where the previous one ended
+		boolean[] startAtTop = new boolean[n];
+		for(int i = 1; i < n; i++) {
+			Position prev = ordered[i - 1];
+			boolean prevEndsAtTop = startAtTop[i - 1] ^ (orderedStacks[i - 1] % 2 == 1);
+			double[] from = point(prev, prevEndsAtTop);
+			startAtTop[i] = distance(from, point(ordered[i], true)) < distance(from, point(ordered[i], false));
+		}
+		return new Plan(ordered, orderedStacks, startAtTop, travel(ordered, orderedStacks, startAtTop, true), originalTravel);
+	}
+
+	// the x, y, z coordinates of the bottom or top of the position's stack
+	private static double[] point(Position p, boolean top) {
+		double z = p.center.z + (top ? 0.5 : -0.5) * p.extent.z;
+		return new double[] { p.center.x, p.center.y, z };
+	}
+
+	private static double distance(double[] a, double[] b) {
+		double dx = a[0] - b[0], dy = a[1] - b[1], dz = a[2] - b[2];
+		return Math.sqrt(dx * dx + dy * dy + dz * dz);
+	}
+
+	// between the bottoms of the stacks, called in the inner loops of the planning, so without allocating points
+	private static double distance(Position a, Position b) {
+		double dx = a.center.x - b.center.x;
+		double dy = a.center.y - b.center.y;
+		double dz = (a.center.z - 0.5 * a.extent.z) - (b.center.z - 0.5 * b.extent.z);
+		return Math.sqrt(dx * dx + dy * dy + dz * dz);
+	}
+
+	// travel between stacks; with snake, consecutive stacks at a position alternate in direction,
+	// otherwise every stack starts at its bottom
+	private static double travel(Position[] positions, int[] nStacks, boolean[] startAtTop, boolean snake) {
+		double travel = 0;
+		double[] end = null;
+		for(int i = 0; i < positions.length; i++) {
+			Position p = positions[i];
+			if(end != null)
+				travel += distance(end, point(p, startAtTop[i]));
+			if(snake) {
+				end = point(p, startAtTop[i] ^ (nStacks[i] % 2 == 1));
+			} else {
+				// back to the bottom for each further stack
+				travel += Math.max(0, nStacks[i] - 1) * p.extent.z;
+				end = point(p, true);
+			}
+		}
+		return travel;
+	}
+
+	private static int[] identity(int n) {
+		int[] order = new int[n];
+		for(int i = 0; i < n; i++)
+			order[i] = i;
+		return order;
+	}
+
+	// starts at the first defined position
+	private static int[] nearestNeighbour(Position[] positions) {
+		int n = positions.length;
+		int[] order = new int[n];
+		boolean[] visited = new boolean[n];
+		if(n == 0)
+			return order;
+		visited[0] = true;
+		for(int i = 1; i < n; i++) {
+			Position last = positions[order[i - 1]];
+			int best = -1;
+			double bestDistance = Double.POSITIVE_INFINITY;
+			for(int j = 0; j < n; j++) {
+				if(visited[j])
+					continue;
+				double d = distance(last, positions[j]);
+				if(d < bestDistance) {
+					bestDistance = d;
+					best = j;
+				}
+			}
+			order[i] = best;
+			visited[best] = true;
+		}
+		return order;
+	}
+
+	// Reverses segments of the (open) path as long as that shortens it
+	private static int[] twoOpt(Position[] positions, int[] order) {
+		int n = order.length;
+		boolean improved = true;
+		for(int pass = 0; improved && pass < MAX_2OPT_PASSES; pass++) {
+			improved = false;
+			for(int i = 0; i < n - 2; i++) {
+				Position a = positions[order[i]];
+				Position b = positions[order[i + 1]];
+				double ab = distance(a, b);
+				for(int j = i + 2; j < n; j++) {
+					Position c = positions[order[j]];
+					// replace a-b ... c-d by a-c ... b-d, the path's end has no d
+					double gain;
+					if(j == n - 1) {
+						gain = ab - distance(a, c);
+					} else {
+						Position d = positions[order[j + 1]];
+						gain = ab + distance(c, d) - distance(a, c) - distance(b, d);
+					}
+					if(gain > 1e-9) {
+						reverse(order, i + 1, j);
+						b = positions[order[i + 1]];
+						ab = distance(a, b);
+						improved = true;
+					}
+				}
+			}
+		}
+		return order;
+	}
+
+	private static void reverse(int[] a, int from, int to) {
+		for(; from < to; from++, to--) {
+			int t = a[from];
+			a[from] = a[to];
+			a[to] = t;
+		}
+	}
+
+	// Rows are formed by positions whose y differs by less than half the largest position height
+	private static int[] serpentine(Position[] positions) {
+		int n = positions.length;
+		Integer[] byY = new Integer[n];
+		double tolerance = 0;
+		for(int i = 0; i < n; i++) {
+			byY[i] = i;
+			tolerance = Math.max(tolerance, positions[i].extent.y / 2);
+		}
+		Arrays.sort(byY, Comparator.comparingDouble(i -> positions[i].center.y));
+
+		int[] order = new int[n];
+		int k = 0;
+		boolean leftToRight = true;
+		for(int rowStart = 0; rowStart < n; ) {
+			double rowY = positions[byY[rowStart]].center.y;
+			int rowEnd = rowStart;
+			while(rowEnd < n && positions[byY[rowEnd]].center.y - rowY <= tolerance)
+				rowEnd++;
+			Integer[] row = Arrays.copyOfRange(byY, rowStart, rowEnd);
+			Comparator<Integer> byX = Comparator.comparingDouble(i -> positions[i].center.x);
+			Arrays.sort(row, leftToRight ? byX : byX.reversed());
+			for(int i : row)
+				order[k++] = i;
+			leftToRight = !leftToRight;
+			rowStart = rowEnd;
+		}
+		return order;
+	}
+}
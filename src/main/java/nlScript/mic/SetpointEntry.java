@@ -0,0 +1,50 @@
+package nlScript.mic;
+
+import nlScript.mic.Microscope.Resource;
+
+/**
+ * A cycle of a sentence that moves a hardware value (temperature, CO2 concentration, LED power,
+ * exposure time) towards a target. The hardware only resolves steps of <code>resolution</code>,
+ * so a cycle that does not change the value in these steps is redundant.
+ */
+public class SetpointEntry extends TimelineEntry {
+
+	private final String key;
+	private final Interpolator interpolator;
+	private final double resolution;
+
+	public SetpointEntry(Kind kind, Resource resource, Series series, int cycle, String key, Interpolator interpolator, double resolution) {
+		super(kind, resource, series, cycle, () -> interpolator.interpolate(cycle));
+		this.key = key;
+		this.interpolator = interpolator;
+		this.resolution = resolution;
+	}
+
+	// the hardware value that is set, e.g. "temperature" or "led/<channel>/<LED>"
+	public String getKey() {
+		return key;
+	}
+
+	public double getResolution() {
+		return resolution;
+	}
+
+	// the value this cycle sets (captures the start value of the interpolation in cycle 0)
+	public double getValue() {
+		return interpolator.getValue(getCycle());
+	}
+
+	// whether the value is the current one, in steps of the hardware resolution
+	public boolean isRedundant() {
+		return quantize(getValue()) == quantize(interpolator.getCurrentValue());
+	}
+
+	private long quantize(double v) {
+		return Math.round(v / resolution);
+	}
+
+	@Override
+	public String toString() {
+		return getPlannedTime() + ": " + key + " (cycle " + getCycle() + ")";
+	}
+}
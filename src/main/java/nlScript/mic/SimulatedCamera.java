@@ -0,0 +1,272 @@
+package nlScript.mic;
+
+import nlScript.mic.Microscope.Binning;
+import nlScript.mic.Microscope.Channel;
+import nlScript.mic.Microscope.LED;
+import nlScript.mic.Microscope.LEDSetting;
+import nlScript.mic.Microscope.Lens;
+import nlScript.mic.Microscope.MagnificationChanger;
+import nlScript.mic.Microscope.Position;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Camera that renders synthetic 16-bit z-stacks of a sample: fluorescent blobs scattered over the
+ * whole stage, each of them visible in some of the channels, and blurred when out of focus.
+ * The frame size follows from the sensor size and the binning, the pixel size additionally from the
+ * objective and the magnification changer, and the number of planes from the position's z extent
+ * and the z step. In real-time mode, frames are delivered at the rate a real camera would.
+ * With a frame pool, planes are rendered into frames from the pool, otherwise into new frames on
+ * the heap.
+ */
+public class SimulatedCamera {
+
+	private static final double BLOB_SPACING = 25;     // microns
+	private static final double DEPTH_OF_FIELD = 2;    // microns
+	private static final int BACKGROUND = 100;
+
+	// exp(-t) for t in [0, EXP_RANGE), in steps of 1 / EXP_STEPS
+	private static final int EXP_STEPS = 256;
+	private static final int EXP_RANGE = 20;
+	private static final double[] EXP = new double[EXP_RANGE * EXP_STEPS + 1];
+
+	static {
+		for(int i = 0; i < EXP.length; i++)
+			EXP[i] = Math.exp(-(double) i / EXP_STEPS);
+		EXP[EXP.length - 1] = 0;
+	}
+
+	private static double expNeg(double t) {
+		int i = (int) (t * EXP_STEPS);
+		return i < EXP.length ? EXP[i] : 0;
+	}
+
+	private final int sensorWidth;
+	private final int sensorHeight;
+	private final double sensorPixelSize;  // microns
+
+	private volatile double frameRate = 100;   // at most, in frames per second
+	private volatile Duration exposure = null; // null for the channel's exposure time
+	private volatile boolean realTime = false;
+	private volatile FramePool framePool = null;
+
+	// reused for rendering, guarded by this
+	private short[] pixels = new short[0];
+	private double[] gx = new double[0];
+	private double[] gy = new double[0];
+
+	private final AtomicLong frames = new AtomicLong();
+	private final AtomicLong seed = new AtomicLong(0x9E3779B97F4A7C15L);
+
+	public SimulatedCamera() {
+		this(2048, 2048, 6.5);
+	}
+
+	public SimulatedCamera(int sensorWidth, int sensorHeight, double sensorPixelSize) {
+		this.sensorWidth = sensorWidth;
+		this.sensorHeight = sensorHeight;
+		this.sensorPixelSize = sensorPixelSize;
+	}
+
+	public double getFrameRate() {
+		return frameRate;
+	}
+
+	public void setFrameRate(double frameRate) {
+		this.frameRate = frameRate;
+	}
+
+	public Duration getExposure() {
+		return exposure;
+	}
+
+	// null to use the exposure time of the channel
+	public void setExposure(Duration exposure) {
+		this.exposure = exposure;
+	}
+
+	public boolean isRealTime() {
+		return realTime;
+	}
+
+	// whether acquire() takes as long as it would on a real camera
+	public void setRealTime(boolean realTime) {
+		this.realTime = realTime;
+	}
+
+	public FramePool getFramePool() {
+		return framePool;
+	}
+
+	// null to allocate a new frame for every plane
+	public void setFramePool(FramePool framePool) {
+		this.framePool = framePool;
+	}
+
+	public long getFrameCount() {
+		return frames.get();
+	}
+
+	public int getFrameWidth(Binning binning) {
+		return sensorWidth / binning.binning;
+	}
+
+	public int getFrameHeight(Binning binning) {
+		return sensorHeight / binning.binning;
+	}
+
+	// in microns at the sample
+	public double getPixelWidth(Lens lens, MagnificationChanger mag, Binning binning) {
+		return sensorPixelSize * binning.binning / (lens.magnification * mag.magnification);
+	}
+
+	private long getExposureNanos(Channel channel) {
+		Duration exposure = this.exposure;
+		return exposure != null ? exposure.toNanos() : channel.getExposureTime() * 1_000_000L;
+	}
+
+	public long getFrameNanos(Channel channel) {
+		return Math.max(getExposureNanos(channel), (long) (1e9 / frameRate));
+	}
+
+	// The caller holds the only reference to the stack's frames, and releases them when done
+	public synchronized AcquiredStack acquire(Position position, Channel channel, double dz, boolean topDown, Lens lens, MagnificationChanger mag, Binning binning) {
+		int width = getFrameWidth(binning);
+		int height = getFrameHeight(binning);
+		double pixelWidth = getPixelWidth(lens, mag, binning);
+		int nPlanes = Microscope.getPlaneCount(position, dz);
+		long frameNanos = getFrameNanos(channel);
+
+		// signal scales with the LED intensities and the exposure time
+		double gain = 0;
+		for(LED led : LED.values()) {
+			LEDSetting setting = channel.getLEDSetting(led);
+			if(setting != null)
+				gain += setting.getIntensity() / 100.0;
+		}
+		gain *= getExposureNanos(channel) / 20e6;
+		int channelHash = channel.name.hashCode();
+
+		FramePool pool = framePool;
+		// a stack with more planes than the pool has frames would wait for its own frames
+		if(pool != null && nPlanes > pool.getSize())
+			pool = null;
+		if(pixels.length < width * height)
+			pixels = new short[width * height];
+		Frame[] planes = new Frame[nPlanes];
+		AcquiredStack stack = new AcquiredStack(position, channel, width, height, pixelWidth, dz, topDown, planes);
+		long start = System.nanoTime();
+		try {
+			for(int p = 0; p < nPlanes; p++) {
+				// waits for a free frame if all of the pool's frames are in use
+				planes[p] = pool != null ? pool.acquire(width, height) : Frame.allocate(width, height);
+				render(pixels, width, height,
+						position.center.x - width * pixelWidth / 2,
+						position.center.y - height * pixelWidth / 2,
+						pixelWidth, stack.getZ(p), position.center.z, gain, channelHash);
+				planes[p].getPixels().put(pixels, 0, width * height);
+				frames.incrementAndGet();
+				if(realTime)
+					parkUntil(start + (p + 1) * frameNanos);
+			}
+		} catch(RuntimeException e) {
+			// nobody else will give the frames acquired so far back to the pool
+			for(Frame plane : planes)
+				if(plane != null)
+					plane.release();
+			throw e;
+		}
+		return stack;
+	}
+
+	private static void parkUntil(long nanoTime) {
+		long remaining;
+		while((remaining = nanoTime - System.nanoTime()) > 0)
+			LockSupport.parkNanos(remaining);
+	}
+
+	private static long hash(long a, long b, long c) {
+		long h = a * 0x9E3779B97F4A7C15L ^ b * 0xC2B2AE3D27D4EB4FL ^ c * 0x165667B19E3779F9L;
+		h ^= h >>> 33;
+		h *= 0xFF51AFD7ED558CCDL;
+		h ^= h >>> 33;
+		return h;
+	}
+
+	// uniform in [0, 1)
+	private static double unit(long h, int shift) {
+		return ((h >>> shift) & 0xFFFF) / 65536.0;
+	}
+
+	// Fills the frame with background and noise, and adds a Gaussian for every blob near the frame
+	private void render(short[] pixels, int width, int height, double x0, double y0, double pixelWidth,
+			double z, double centerZ, double gain, int channelHash) {
+		long r = seed.addAndGet(0x9E3779B97F4A7C15L) | 1;
+		for(int i = 0; i < width * height; i++) {
+			r ^= r << 13;
+			r ^= r >>> 7;
+			r ^= r << 17;
+			pixels[i] = (short) (BACKGROUND + (r & 31));
+		}
+
+		double margin = 4 * BLOB_SPACING;
+		int i0 = (int) Math.floor((x0 - margin) / BLOB_SPACING);
+		int i1 = (int) Math.floor((x0 + width * pixelWidth + margin) / BLOB_SPACING);
+		int j0 = (int) Math.floor((y0 - margin) / BLOB_SPACING);
+		int j1 = (int) Math.floor((y0 + height * pixelWidth + margin) / BLOB_SPACING);
+		for(int j = j0; j <= j1; j++) {
+			for(int i = i0; i <= i1; i++) {
+				long h = hash(i, j, 0);
+				// visible in about two thirds of the channels
+				if(hash(i, j, channelHash) % 3 == 0)
+					continue;
+				double bx = (i + unit(h, 0)) * BLOB_SPACING;
+				double by = (j + unit(h, 16)) * BLOB_SPACING;
+				double bz = centerZ + (unit(h, 32) - 0.5) * 10;
+				double radius = 2 + 3 * unit(h, 48);
+				double brightness = 0.3 + 0.7 * unit(hash(i, j, 1), 0);
+
+				double defocus = (z - bz) / DEPTH_OF_FIELD;
+				double blur = 1 + defocus * defocus;
+				double sigma = radius * Math.sqrt(blur) / pixelWidth;
+				double amplitude = gain * brightness * 3000 / blur;
+				if(amplitude < 1)
+					continue;
+
+				double cx = (bx - x0) / pixelWidth;
+				double cy = (by - y0) / pixelWidth;
+				// up to where the Gaussian drops below half a count
+				int extent = (int) Math.ceil(sigma * Math.sqrt(2 * Math.log(2 * amplitude)));
+				int xa = Math.max(0, (int) cx - extent), xb = Math.min(width - 1, (int) cx + extent);
+				int ya = Math.max(0, (int) cy - extent), yb = Math.min(height - 1, (int) cy + extent);
+				if(xa > xb || ya > yb)
+					continue;
+
+				// separable: a row and a column of the Gaussian
+				if(gx.length < xb - xa + 1)
+					gx = new double[xb - xa + 1];
+				if(gy.length < yb - ya + 1)
+					gy = new double[yb - ya + 1];
+				double f = 0.5 / (sigma * sigma);
+				for(int x = xa; x <= xb; x++)
+					gx[x - xa] = expNeg(f * (x - cx) * (x - cx));
+				for(int y = ya; y <= yb; y++)
+					gy[y - ya] = amplitude * expNeg(f * (y - cy) * (y - cy));
+
+				for(int y = ya; y <= yb; y++) {
+					double ay = gy[y - ya];
+					if(ay < 0.5)
+						continue;
+					int offset = y * width;
+					for(int x = xa; x <= xb; x++) {
+						int idx = offset + x;
+						int v = (pixels[idx] & 0xffff) + (int) (ay * gx[x - xa]);
+						pixels[idx] = (short) Math.min(v, 65535);
+					}
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,176 @@
+package nlScript.mic;
+
+import java.time.Duration;
+import java.util.EnumMap;
+
+/**
+ * Microscope that does not wait for anything, but adds up how long a real device would take to
+ * acquire: stage moves and settling, switching LEDs on and off or changing their intensity, and
+ * exposing and reading out each plane of a stack. With a camera, it also produces the stacks.
+ */
+public class SimulatedMicroscope extends Microscope {
+
+	private double xySpeed = 10000;       // microns per second
+	private double zSpeed = 1000;         // microns per second
+	private long settleNanos = 30_000_000L;
+	private long ledSwitchNanos = 50_000_000L;
+	private long ledIntensityNanos = 5_000_000L;
+	private long readoutNanos = 10_000_000L;
+	private long lensNanos = 2_000_000_000L;
+	private long magnificationChangerNanos = 500_000_000L;
+	private long binningNanos = 50_000_000L;
+
+	private volatile SimulatedCamera camera = null;
+
+	private double x = 0, y = 0, z = 0;
+	private final EnumMap<LED, Integer> leds = new EnumMap<>(LED.class);
+
+	private long elapsedNanos = 0;
+	private long stacks = 0;
+	private long ledSwitches = 0;
+	private double stageTravel = 0;
+
+	public void setStageSpeed(double xySpeed, double zSpeed) {
+		this.xySpeed = xySpeed;
+		this.zSpeed = zSpeed;
+	}
+
+	public void setSettleTime(Duration settle) {
+		this.settleNanos = settle.toNanos();
+	}
+
+	// time to switch a single LED on or off, and to change its intensity
+	public void setLEDSwitchTime(Duration onOff, Duration intensity) {
+		this.ledSwitchNanos = onOff.toNanos();
+		this.ledIntensityNanos = intensity.toNanos();
+	}
+
+	public void setReadoutTime(Duration readout) {
+		this.readoutNanos = readout.toNanos();
+	}
+
+	public SimulatedCamera getCamera() {
+		return camera;
+	}
+
+	// null for no image data
+	public void setCamera(SimulatedCamera camera) {
+		this.camera = camera;
+	}
+
+	public void setOpticsSwitchTime(Duration lens, Duration magnificationChanger, Duration binning) {
+		this.lensNanos = lens.toNanos();
+		this.magnificationChangerNanos = magnificationChanger.toNanos();
+		this.binningNanos = binning.toNanos();
+	}
+
+	@Override
+	protected synchronized void sendLens(Lens lens) {
+		elapsedNanos += lensNanos;
+	}
+
+	@Override
+	protected synchronized void sendMagnificationChanger(MagnificationChanger mag) {
+		elapsedNanos += magnificationChangerNanos;
+	}
+
+	@Override
+	protected synchronized void sendBinning(Binning binning) {
+		elapsedNanos += binningNanos;
+	}
+
+	@Override
+	public void reset() {
+		super.reset();
+		resetDevice();
+	}
+
+	public synchronized void resetDevice() {
+		invalidateDeviceState();
+		x = y = z = 0;
+		leds.clear();
+		elapsedNanos = 0;
+		stacks = 0;
+		ledSwitches = 0;
+		stageTravel = 0;
+	}
+
+	@Override
+	public void acquireSinglePositionAndChannel(Position position, Channel channel, double dz, boolean topDown) {
+		SimulatedCamera camera = this.camera;
+		// fails for an invalid z step before the stage moves
+		int planes = getPlaneCount(position, dz);
+		synchronized(this) {
+			double bottom = position.center.z - position.extent.z / 2;
+			double top = position.center.z + position.extent.z / 2;
+			moveTo(position.center.x, position.center.y, topDown ? top : bottom);
+			switchLEDs(channel);
+			long frameNanos = camera != null
+					? camera.getFrameNanos(channel)
+					: channel.getExposureTime() * 1_000_000L + readoutNanos;
+			elapsedNanos += planes * frameNanos;
+			moveTo(x, y, topDown ? bottom : top);
+			stacks++;
+		}
+		if(camera != null)
+			fireStackAcquired(camera.acquire(position, channel, dz, topDown, getLens(), getMagnificationChanger(), getBinning()));
+		super.acquireSinglePositionAndChannel(position, channel, dz, topDown);
+	}
+
+	// x, y and z move at the same time
+	private void moveTo(double tx, double ty, double tz) {
+		double dxy = Math.hypot(tx - x, ty - y);
+		double dz = Math.abs(tz - z);
+		if(dxy == 0 && dz == 0)
+			return;
+		double seconds = Math.max(dxy / xySpeed, dz / zSpeed);
+		elapsedNanos += (long) (seconds * 1e9);
+		if(dxy > 0)
+			elapsedNanos += settleNanos;
+		stageTravel += Math.sqrt(dxy * dxy + dz * dz);
+		x = tx;
+		y = ty;
+		z = tz;
+	}
+
+	private void switchLEDs(Channel channel) {
+		for(LED led : LED.values()) {
+			LEDSetting setting = channel.getLEDSetting(led);
+			Integer current = leds.get(led);
+			Integer target = setting == null ? null : setting.getIntensity();
+			if(current == null && target == null)
+				continue;
+			if(current == null || target == null) {
+				elapsedNanos += ledSwitchNanos;
+				ledSwitches++;
+			} else if(!current.equals(target)) {
+				elapsedNanos += ledIntensityNanos;
+			}
+			if(target == null)
+				leds.remove(led);
+			else
+				leds.put(led, target);
+		}
+	}
+
+	public synchronized Duration getElapsedTime() {
+		return Duration.ofNanos(elapsedNanos);
+	}
+
+	public synchronized long getStackCount() {
+		return stacks;
+	}
+
+	public synchronized long getLEDSwitchCount() {
+		return ledSwitches;
+	}
+
+	// in microns
+	public synchronized double getStageTravel() {
+		return stageTravel;
+	}
+
+	public synchronized double getStacksPerHour() {
+		return elapsedNanos == 0 ? 0 : stacks * 3600e9 / elapsedNanos;
+	}
+}
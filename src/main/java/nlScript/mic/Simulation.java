@@ -0,0 +1,40 @@
+package nlScript.mic;
+
+import nlScript.ParseException;
+import nlScript.Parser;
+
+/**
+ * Dry-runs a script on a VirtualClock: the timeline is processed as fast as possible, while
+ * the microscope's acquisition listeners are still called in the planned order.
+ */
+public class Simulation {
+
+	private final LanguageControl lc;
+	private final VirtualClock clock;
+
+	public Simulation() {
+		this(new LanguageControl());
+	}
+
+	public Simulation(LanguageControl lc) {
+		this.lc = lc;
+		this.clock = new VirtualClock();
+		lc.setClock(clock);
+	}
+
+	public LanguageControl getLanguageControl() {
+		return lc;
+	}
+
+	public VirtualClock getClock() {
+		return clock;
+	}
+
+	public void run(String script) throws ParseException {
+		Parser parser = lc.initParser();
+		lc.reset();
+		parser.parse(script, null).evaluate();
+		lc.process();
+		lc.getTimeline().waitForProcessing();
+	}
+}
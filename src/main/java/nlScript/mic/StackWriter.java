@@ -0,0 +1,330 @@
+package nlScript.mic;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Streams acquired stacks to disk on a background thread. The stacks of each position and channel
+ * are appended, bottom plane first, to multi-page 16-bit TIFF files named
+ * <code>&lt;position&gt;_&lt;channel&gt;_&lt;chunk&gt;.tif</code>, with a new chunk started whenever
+ * a file would exceed the chunk size. Pages are written with positional <code>FileChannel</code>
+ * writes into space that is reserved ahead in large steps, straight from the frames' buffers.
+ * Queued stacks are retained until they are written. Acquisition only waits if more than the
+ * configured amount of data is queued. Stacks acquired after {@link #close()} are not written.
+ */
+public class StackWriter implements Microscope.StackListener {
+
+	public static final long DEFAULT_CHUNK_SIZE = 1L << 30;
+	public static final long DEFAULT_MAX_QUEUED = 512L << 20;
+	private static final long PREALLOCATION_STEP = 256L << 20;
+	private static final int MAX_OPEN_FILES = 32;
+
+	// little-endian TIFF tags
+	private static final int NEW_SUBFILE_TYPE = 254, IMAGE_WIDTH = 256, IMAGE_LENGTH = 257, BITS_PER_SAMPLE = 258,
+			COMPRESSION = 259, PHOTOMETRIC = 262, IMAGE_DESCRIPTION = 270, STRIP_OFFSETS = 273, SAMPLES_PER_PIXEL = 277,
+			ROWS_PER_STRIP = 278, STRIP_BYTE_COUNTS = 279, X_RESOLUTION = 282, Y_RESOLUTION = 283, RESOLUTION_UNIT = 296;
+	private static final int SHORT = 3, LONG = 4, RATIONAL = 5, ASCII = 2;
+
+	private final File folder;
+	private final long chunkSize;
+	private final long maxQueued;
+
+	private static final AcquiredStack END = new AcquiredStack(null, null, 0, 0, 0, 0, false, new Frame[0]);
+	private final LinkedBlockingQueue<AcquiredStack> queue = new LinkedBlockingQueue<>();
+	private long queuedBytes = 0;  // guarded by queue
+	private long blockedNanos = 0; // guarded by queue
+	private boolean closed = false; // guarded by queue
+
+	private final Thread thread;
+	private volatile IOException error = null;
+	private volatile long writtenBytes = 0;
+	private volatile long writtenStacks = 0;
+
+	// the files that are currently appended to, in order of use
+	private final LinkedHashMap<String, TiffFile> files = new LinkedHashMap<>(16, 0.75f, true);
+	// page headers, and where the previous page is linked to the next one
+	private ByteBuffer buffer = ByteBuffer.allocateDirect(0);
+	private final ByteBuffer link = ByteBuffer.allocateDirect(4).order(ByteOrder.LITTLE_ENDIAN);
+
+	public StackWriter(File folder) {
+		this(folder, DEFAULT_CHUNK_SIZE, DEFAULT_MAX_QUEUED);
+	}
+
+	public StackWriter(File folder, long chunkSize, long maxQueued) {
+		// offsets are 32 bit in (non-Big)TIFF
+		if(chunkSize <= 0 || chunkSize > 0xFFFFFFFFL)
+			throw new IllegalArgumentException("Chunk size must be between 1 and " + 0xFFFFFFFFL + " bytes: " + chunkSize);
+		this.folder = folder;
+		this.chunkSize = chunkSize;
+		this.maxQueued = maxQueued;
+		this.thread = new Thread(this::run, "Stack writer: " + folder);
+		this.thread.setDaemon(true);
+		this.thread.start();
+	}
+
+	public File getFolder() {
+		return folder;
+	}
+
+	// Queues the stack for writing, and only waits if too much is queued already
+	@Override
+	public void stackAcquired(AcquiredStack stack) {
+		long size = stack.getSizeInBytes();
+		synchronized(queue) {
+			if(queuedBytes > 0 && queuedBytes + size > maxQueued && !closed) {
+				long start = System.nanoTime();
+				while(queuedBytes > 0 && queuedBytes + size > maxQueued && !closed) {
+					try {
+						queue.wait();
+					} catch(InterruptedException e) {
+						Thread.currentThread().interrupt();
+						break;
+					}
+				}
+				blockedNanos += System.nanoTime() - start;
+			}
+			// nothing would write or release it anymore
+			if(closed)
+				return;
+			stack.retain();
+			queuedBytes += size;
+			queue.add(stack);
+		}
+	}
+
+	// Writes what is queued, closes all files and rethrows the first error that occurred
+	public void close() throws IOException {
+		synchronized(queue) {
+			if(!closed) {
+				closed = true;
+				queue.add(END);
+				queue.notifyAll();
+			}
+		}
+		try {
+			thread.join();
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		if(error != null)
+			throw error;
+	}
+
+	public IOException getError() {
+		return error;
+	}
+
+	public long getWrittenBytes() {
+		return writtenBytes;
+	}
+
+	public long getWrittenStacks() {
+		return writtenStacks;
+	}
+
+	// how long acquisition waited because the queue was full
+	public long getBlockedMillis() {
+		synchronized(queue) {
+			return blockedNanos / 1000000;
+		}
+	}
+
+	private void run() {
+		while(true) {
+			AcquiredStack stack;
+			try {
+				stack = queue.take();
+			} catch(InterruptedException e) {
+				break;
+			}
+			if(stack == END)
+				break;
+			try {
+				if(error == null)
+					write(stack);
+			} catch(IOException e) {
+				error = e;
+				e.printStackTrace();
+			}
+			stack.release();
+			synchronized(queue) {
+				queuedBytes -= stack.getSizeInBytes();
+				queue.notifyAll();
+			}
+		}
+		for(TiffFile file : files.values()) {
+			try {
+				file.close();
+			} catch(IOException e) {
+				if(error == null)
+					error = e;
+			}
+		}
+		files.clear();
+	}
+
+	private static String sanitize(String name) {
+		return name.replaceAll("[^A-Za-z0-9._-]", "_");
+	}
+
+	private void write(AcquiredStack stack) throws IOException {
+		String key = sanitize(stack.getPosition().name) + "_" + sanitize(stack.getChannel().name);
+		TiffFile file = files.get(key);
+		if(file == null) {
+			file = new TiffFile(key);
+			files.put(key, file);
+			// close the least recently used files, they are reopened when needed
+			if(files.size() > MAX_OPEN_FILES) {
+				Map.Entry<String, TiffFile> eldest = files.entrySet().iterator().next();
+				eldest.getValue().suspend();
+			}
+		}
+		int n = stack.getPlaneCount();
+		for(int i = 0; i < n; i++) {
+			// bottom plane first
+			Frame plane = stack.getFrame(stack.isTopDown() ? n - 1 - i : i);
+			file.append(stack, plane);
+		}
+		writtenStacks++;
+	}
+
+	// A series of chunk files for one position and channel
+	private class TiffFile {
+		private final String name;
+		private int chunk = -1;
+		private FileChannel channel;
+		private long size;          // bytes written to the current chunk
+		private long allocated;     // length of the current chunk on disk
+		private long lastNextIfd;   // where the previous page points to its successor, 0 if none
+
+		TiffFile(String name) throws IOException {
+			this.name = name;
+			nextChunk();
+		}
+
+		private File chunkFile() {
+			return new File(folder, String.format("%s_%03d.tif", name, chunk));
+		}
+
+		private void nextChunk() throws IOException {
+			close();
+			chunk++;
+			folder.mkdirs();
+			channel = FileChannel.open(chunkFile().toPath(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+					StandardOpenOption.READ, StandardOpenOption.WRITE);
+			ByteBuffer header = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+			header.put((byte) 'I').put((byte) 'I').putShort((short) 42).putInt(8).flip();
+			writeFully(header, 0);
+			size = 8;
+			allocated = 8;
+			lastNextIfd = 0;
+		}
+
+		// closes the channel, but keeps appending to the same chunk when reopened
+		void suspend() throws IOException {
+			if(channel == null)
+				return;
+			channel.truncate(size);
+			channel.close();
+			channel = null;
+			allocated = size;
+		}
+
+		void close() throws IOException {
+			suspend();
+		}
+
+		void append(AcquiredStack stack, Frame plane) throws IOException {
+			if(channel == null)
+				channel = FileChannel.open(chunkFile().toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+			int width = stack.getWidth();
+			int height = stack.getHeight();
+			long pixelBytes = 2L * width * height;
+			// a chunk that has pages already gets one without description, a new chunk one with
+			if(size > 8 && size + (2 + 12 * 13 + 4) + 16 + pixelBytes > chunkSize)
+				nextChunk();
+
+			byte[] description = lastNextIfd == 0
+					? ("ImageJ=1.54g\nunit=micron\nspacing=" + stack.getDz() + "\n\0").getBytes(StandardCharsets.US_ASCII)
+					: null;
+			int nEntries = description == null ? 13 : 14;
+			int ifdSize = 2 + 12 * nEntries + 4;
+			int extraSize = 16 + (description == null ? 0 : description.length);
+			int headerSize = ifdSize + extraSize;
+
+			long pageStart = size;
+			long required = headerSize + pixelBytes;
+			if(buffer.capacity() < headerSize)
+				buffer = ByteBuffer.allocateDirect(Math.max(headerSize, 1024)).order(ByteOrder.LITTLE_ENDIAN);
+			ByteBuffer b = buffer;
+			b.clear();
+			b.order(ByteOrder.LITTLE_ENDIAN);
+
+			long extraStart = pageStart + ifdSize;
+			long pixelStart = pageStart + headerSize;
+			b.putShort((short) nEntries);
+			entry(b, NEW_SUBFILE_TYPE,  LONG,  1, 0);
+			entry(b, IMAGE_WIDTH,       LONG,  1, width);
+			entry(b, IMAGE_LENGTH,      LONG,  1, height);
+			entry(b, BITS_PER_SAMPLE,   SHORT, 1, 16);
+			entry(b, COMPRESSION,       SHORT, 1, 1);
+			entry(b, PHOTOMETRIC,       SHORT, 1, 1);
+			if(description != null)
+				entry(b, IMAGE_DESCRIPTION, ASCII, description.length, extraStart + 16);
+			entry(b, STRIP_OFFSETS,     LONG,  1, pixelStart);
+			entry(b, SAMPLES_PER_PIXEL, SHORT, 1, 1);
+			entry(b, ROWS_PER_STRIP,    LONG,  1, height);
+			entry(b, STRIP_BYTE_COUNTS, LONG,  1, pixelBytes);
+			entry(b, X_RESOLUTION,      RATIONAL, 1, extraStart);
+			entry(b, Y_RESOLUTION,      RATIONAL, 1, extraStart + 8);
+			entry(b, RESOLUTION_UNIT,   SHORT, 1, 1);
+			b.putInt(0);  // last page so far
+			// pixels per micron
+			int denominator = 1000000;
+			int numerator = (int) Math.round(denominator / stack.getPixelWidth());
+			b.putInt(numerator).putInt(denominator).putInt(numerator).putInt(denominator);
+			if(description != null)
+				b.put(description);
+			b.flip();
+
+			if(pageStart + required > allocated) {
+				allocated = Math.max(pageStart + required, allocated + PREALLOCATION_STEP);
+				// reserve the space in one go instead of growing the file with every page
+				writeFully(ByteBuffer.allocate(1), allocated - 1);
+			}
+			writeFully(b, pageStart);
+			writeFully(plane.getBuffer(), pixelStart);
+			size = pageStart + required;
+
+			// link the previous page to this one, once this one is complete
+			if(lastNextIfd != 0) {
+				link.clear();
+				link.putInt((int) pageStart).flip();
+				writeFully(link, lastNextIfd);
+			}
+			lastNextIfd = pageStart + ifdSize - 4;
+			writtenBytes += required;
+		}
+
+		private void entry(ByteBuffer b, int tag, int type, long count, long value) {
+			b.putShort((short) tag).putShort((short) type).putInt((int) count);
+			if(type == SHORT && count == 1)
+				b.putShort((short) value).putShort((short) 0);
+			else
+				b.putInt((int) value);
+		}
+
+		private void writeFully(ByteBuffer b, long position) throws IOException {
+			while(b.hasRemaining())
+				position += channel.write(b, position);
+		}
+	}
+}
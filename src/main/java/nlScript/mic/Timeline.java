@@ -1,79 +1,755 @@
 package nlScript.mic;
 
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
 import java.util.TreeMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
 import java.util.function.Consumer;
-import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
 
 public class Timeline<E> {
 
+	// upper bound for parking the dispatch thread, so that the next deadline is re-evaluated regularly
+	private static final long MAX_PARK_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+	// default time before a deadline at which the dispatcher stops parking and starts spinning in precision mode
+	public static final Duration DEFAULT_SPIN_AHEAD = Duration.ofMillis(2);
+
 	private final TreeMap<LocalDateTime, ArrayList<E>> timeline = new TreeMap<>();
 
+	private volatile TimelineClock clock = TimelineClock.SYSTEM;
+
+	public TimelineClock getClock() {
+		return clock;
+	}
+
+	public void setClock(TimelineClock clock) {
+		this.clock = clock;
+	}
+
 	public void put(LocalDateTime time, E entry) {
-		ArrayList<E> list = timeline.computeIfAbsent(time, k -> new ArrayList<>());
-		list.add(entry);
+		// the new entry might be due earlier than what the dispatcher is currently waiting for
+		if(store(time, entry))
+			wakeDispatcher();
+	}
+
+	// A series of entries at start, start + interval, start + 2 * interval, ..., of which only the
+	// next one is stored in the timeline. The following one is created when it is taken from the timeline,
+	// or earlier when a page of upcoming events reaches it.
+	private static final class Recurrence<E> {
+		final long order;
+		final LocalDateTime start;
+		final Duration interval;
+		final int count;
+		final IntFunction<? extends E> factory;
+		int next = 0;
+
+		// cycles created ahead of time for a page, each cycle is created only once
+		private final Map<Integer, E> ahead = new HashMap<>();
+
+		Recurrence(long order, LocalDateTime start, Duration interval, int count, IntFunction<? extends E> factory) {
+			this.order = order;
+			this.start = start;
+			this.interval = interval;
+			this.count = count;
+			this.factory = factory;
+		}
+
+		LocalDateTime timeOf(int cycle) {
+			return start.plus(interval.multipliedBy(cycle));
+		}
+
+		// the first cycle still to be created that is due at or after from
+		int firstCycleAtOrAfter(LocalDateTime from) {
+			if(!from.isAfter(start) || interval.isZero())
+				return next;
+			try {
+				long nanos = Duration.between(start, from).toNanos();
+				long intervalNanos = interval.toNanos();
+				long cycle = (nanos + intervalNanos - 1) / intervalNanos;
+				return (int) Math.max(next, Math.min(cycle, count));
+			} catch(ArithmeticException e) {
+				return count;
+			}
+		}
+
+		E peek(int cycle) {
+			return ahead.computeIfAbsent(cycle, factory::apply);
+		}
+
+		E take(int cycle) {
+			E entry = ahead.remove(cycle);
+			return entry != null ? entry : factory.apply(cycle);
+		}
+	}
+
+	// the recurrence each stored recurring entry belongs to
+	private final Map<E, Recurrence<E>> recurrences = Collections.synchronizedMap(new IdentityHashMap<>());
+
+	private final AtomicInteger nRecurrences = new AtomicInteger();
+
+	// Adds count entries, one every interval, created lazily by the factory from their cycle index.
+	// If the factory returns null, the recurrence ends.
+	public void putRecurring(LocalDateTime start, Duration interval, int count, IntFunction<? extends E> factory) {
+		putNext(new Recurrence<>(nRecurrences.getAndIncrement(), start, interval, count, factory));
+	}
+
+	private void putNext(Recurrence<E> recurrence) {
+		int cycle;
+		E entry;
+		synchronized(recurrence) {
+			if(recurrence.next >= recurrence.count)
+				return;
+			cycle = recurrence.next++;
+			entry = recurrence.take(cycle);
+		}
+		if(entry == null)
+			return;
+		if(cycle + 1 < recurrence.count)
+			recurrences.put(entry, recurrence);
+		put(recurrence.timeOf(cycle), entry);
+	}
+
+	// to be called for entries taken from the timeline
+	private void taken(List<E> entries) {
+		if(recurrences.isEmpty())
+			return;
+		for(E entry : entries) {
+			Recurrence<E> recurrence = recurrences.remove(entry);
+			if(recurrence != null)
+				putNext(recurrence);
+		}
 	}
 
 	public void runAndRemoveEntriesBefore(LocalDateTime time, Consumer<E> function) {
-		ArrayList<LocalDateTime> timesToRemove = new ArrayList<>();
-		for(LocalDateTime entryTime : timeline.keySet()) {
-			if(entryTime.isBefore(time)) {
-				timesToRemove.add(entryTime);
-				for(E entry : timeline.get(entryTime))
-					function.accept(entry);
+		ArrayList<E> due = new ArrayList<>();
+		removeEntriesBefore(time, due);
+		taken(due);
+		// run outside the lock, entries may add new entries to the timeline
+		for(E entry : due)
+			function.accept(entry);
+	}
+
+	// Removes the entries before time that pass the filter, e.g. to run them early together with others
+	public List<E> takeEntriesBefore(LocalDateTime time, Predicate<? super E> filter) {
+		ArrayList<E> taken = new ArrayList<>();
+		removeEntriesBefore(time, taken, filter);
+		taken(taken);
+		return taken;
+	}
+
+	// adds the entry and returns whether it is now (one of) the earliest entries
+	protected boolean store(LocalDateTime time, E entry) {
+		synchronized(timeline) {
+			ArrayList<E> list = timeline.computeIfAbsent(time, k -> new ArrayList<>());
+			list.add(entry);
+			return timeline.firstKey().equals(time);
+		}
+	}
+
+	protected void removeEntriesBefore(LocalDateTime time, ArrayList<E> due) {
+		synchronized(timeline) {
+			SortedMap<LocalDateTime, ArrayList<E>> head = timeline.headMap(time);
+			for(ArrayList<E> entries : head.values())
+				due.addAll(entries);
+			head.clear();
+		}
+	}
+
+	// like removeEntriesBefore(), but only removes entries that pass the filter
+	protected void removeEntriesBefore(LocalDateTime time, ArrayList<E> due, Predicate<? super E> filter) {
+		synchronized(timeline) {
+			Iterator<ArrayList<E>> it = timeline.headMap(time).values().iterator();
+			while(it.hasNext()) {
+				ArrayList<E> entries = it.next();
+				entries.removeIf(e -> filter.test(e) && due.add(e));
+				if(entries.isEmpty())
+					it.remove();
 			}
+		}
+	}
+
+	protected LocalDateTime firstTime() {
+		synchronized(timeline) {
+			return timeline.isEmpty() ? null : timeline.firstKey();
+		}
+	}
+
+	public boolean isEmpty() {
+		synchronized(timeline) {
+			return timeline.isEmpty();
+		}
+	}
+
+	public static final class Event<E> {
+		private final LocalDateTime time;
+		private final E entry;
+
+		Event(LocalDateTime time, E entry) {
+			this.time = time;
+			this.entry = entry;
+		}
+
+		public LocalDateTime getTime() {
+			return time;
+		}
+
+		public E getEntry() {
+			return entry;
+		}
+
+		@Override
+		public String toString() {
+			return time + " -> " + entry;
+		}
+	}
+
+	// Upcoming events, in the order they will be dispatched. Entries of the same time are either all
+	// contained or none, but the timeline may have changed since the page was created.
+	public static final class Page<E> {
+		private final Timeline<E> timeline;
+		private final List<Event<E>> events;
+		private final boolean hasMore;
+		private final LocalDateTime to;
+
+		// where the next page starts: the time of the last event, and how many events of that time were returned
+		private final LocalDateTime cursor;
+		private final int skip;
+
+		private Page(Timeline<E> timeline, List<Event<E>> events, boolean hasMore, LocalDateTime to, LocalDateTime cursor, int skip) {
+			this.timeline = timeline;
+			this.events = events;
+			this.hasMore = hasMore;
+			this.to = to;
+			this.cursor = cursor;
+			this.skip = skip;
+		}
+
+		public List<Event<E>> getEvents() {
+			return events;
+		}
+
+		public boolean hasMore() {
+			return hasMore;
+		}
+
+		public Page<E> next(int size) {
+			return timeline.getPage(cursor, skip, to, size);
+		}
+	}
+
+	protected static final class EventCollector<E> {
+		private int skip;
+		private final int max;
+		private final ArrayList<Event<E>> events;
+
+		private EventCollector(int skip, int max) {
+			this.skip = skip;
+			this.max = max;
+			this.events = new ArrayList<>(Math.min(max, 1024));
+		}
+
+		// the number of entries, including the skipped ones, still to be added
+		int getNeeded() {
+			return skip + max - events.size();
+		}
+
+		// returns false if no more events are needed
+		boolean add(LocalDateTime time, E entry) {
+			if(skip > 0)
+				skip--;
 			else
+				events.add(new Event<>(time, entry));
+			return events.size() < max;
+		}
+	}
+
+	// Passes the entries due at or after from and before to to the collector, in dispatch order,
+	// until it is full. Implementations should not block the dispatcher for longer than that.
+	protected void collectEvents(LocalDateTime from, LocalDateTime to, EventCollector<E> collector) {
+		synchronized(timeline) {
+			for(Map.Entry<LocalDateTime, ArrayList<E>> e : timeline.subMap(from, to).entrySet()) {
+				for(E entry : e.getValue()) {
+					if(!collector.add(e.getKey(), entry))
+						return;
+				}
+			}
+		}
+	}
+
+	// The next size events
+	public Page<E> getNextEvents(int size) {
+		return getPage(LocalDateTime.MIN, LocalDateTime.MAX, size);
+	}
+
+	// The first size events due at or after from and before to; use Page.next() for the following ones
+	public Page<E> getPage(LocalDateTime from, LocalDateTime to, int size) {
+		return getPage(from, 0, to, size);
+	}
+
+	// The cycles of the recurrences that are not stored yet, due at or after from and before to,
+	// at most max of each, ordered by time and then by when the recurrence was added.
+	private List<Event<E>> collectRecurrences(LocalDateTime from, LocalDateTime to, int max) {
+		List<Recurrence<E>> pending;
+		synchronized(recurrences) {
+			if(recurrences.isEmpty())
+				return Collections.emptyList();
+			pending = new ArrayList<>(recurrences.values());
+		}
+		pending.sort(Comparator.comparingLong(r -> r.order));
+		ArrayList<Event<E>> events = new ArrayList<>();
+		for(Recurrence<E> recurrence : pending) {
+			synchronized(recurrence) {
+				int cycle = recurrence.firstCycleAtOrAfter(from);
+				for(int n = 0; n < max && cycle < recurrence.count; n++, cycle++) {
+					LocalDateTime time = recurrence.timeOf(cycle);
+					if(!time.isBefore(to))
+						break;
+					E entry = recurrence.peek(cycle);
+					if(entry == null)
+						break;
+					events.add(new Event<>(time, entry));
+				}
+			}
+		}
+		events.sort(Comparator.comparing(Event::getTime));
+		return events;
+	}
+
+	private Page<E> getPage(LocalDateTime from, int skip, LocalDateTime to, int size) {
+		// recurrences first: if a cycle is stored in between, it shows up twice rather than not at all
+		List<Event<E>> future = collectRecurrences(from, to, skip + size + 1);
+		EventCollector<E> collector = new EventCollector<>(0, skip + size + 1);
+		collectEvents(from, to, collector);
+		List<Event<E>> events = merge(collector.events, future, skip, size + 1);
+		boolean hasMore = events.size() > size;
+		if(hasMore)
+			events.remove(size);
+
+		LocalDateTime cursor = from;
+		int nextSkip = skip;
+		if(!events.isEmpty()) {
+			LocalDateTime last = events.get(events.size() - 1).time;
+			int n = 0;
+			for(int i = events.size() - 1; i >= 0 && events.get(i).time.equals(last); i--)
+				n++;
+			nextSkip = last.equals(from) ? skip + n : n;
+			cursor = last;
+		}
+		return new Page<>(this, Collections.unmodifiableList(events), hasMore, to, cursor, nextSkip);
+	}
+
+	// Merges the stored events with the future cycles of the recurrences, which come after the stored
+	// events of the same time, and returns at most max of them after the first skip.
+	private static <E> List<Event<E>> merge(List<Event<E>> stored, List<Event<E>> future, int skip, int max) {
+		ArrayList<Event<E>> merged = new ArrayList<>(Math.min(max, stored.size() + future.size()));
+		Map<E, Boolean> seen = new IdentityHashMap<>();
+		for(Event<E> e : stored)
+			seen.put(e.entry, Boolean.TRUE);
+		int i = 0, j = 0;
+		while(merged.size() < max) {
+			Event<E> e;
+			if(i < stored.size() && (j >= future.size() || !future.get(j).time.isBefore(stored.get(i).time))) {
+				e = stored.get(i++);
+			}
+			else if(j < future.size()) {
+				e = future.get(j++);
+				if(seen.containsKey(e.entry))
+					continue;
+			}
+			else {
 				break;
+			}
+			if(skip > 0)
+				skip--;
+			else
+				merged.add(e);
 		}
-		timesToRemove.forEach(timeline.keySet()::remove);
+		return merged;
 	}
 
 	private final AtomicBoolean stop = new AtomicBoolean(false);
-	private ExecutorService executor;
+	private final Object processLock = new Object();
+	private Thread dispatcher;
+	private volatile boolean woken = false;
+	private volatile long spinAheadNanos = 0;
+	private Consumer<E> function;
+	private Function<? super E, ?> laneOf;
+
+	// modified by the dispatch thread and the watchdog
+	private final HashMap<Object, ExecutorService> lanes = new HashMap<>();
+	private final AtomicInteger pendingInLanes = new AtomicInteger();
 
 	public void process(Consumer<E> function) {
-		stop.set(false);
-		executor = Executors.newSingleThreadExecutor();
-		executor.submit(() -> {
-			while (!stop.get() && !timeline.isEmpty()) {
-				Timeline.this.runAndRemoveEntriesBefore(LocalDateTime.now(), function);
-				if(timeline.isEmpty())
-					return;
+		process(function, null);
+	}
+
+	// Entries of different lanes (as returned by laneOf) are run concurrently, entries of the same lane
+	// are run one after the other, in the order of their planned execution time.
+	public void process(Consumer<E> function, Function<? super E, ?> laneOf) {
+		synchronized(processLock) {
+			stop.set(false);
+			this.function = function;
+			this.laneOf = laneOf;
+			if(dispatcher == null) {
+				dispatcher = new Thread(this::dispatch, "Timeline dispatcher");
+				dispatcher.setDaemon(true);
+				if(spinAheadNanos > 0)
+					dispatcher.setPriority(Thread.MAX_PRIORITY);
+				dispatcher.start();
 			}
+			processLock.notifyAll();
+		}
+		wakeDispatcher();
+	}
+
+	public boolean isProcessing() {
+		synchronized(processLock) {
+			return function != null;
+		}
+	}
+
+	public void setPrecisionMode(boolean precise) {
+		setPrecisionMode(precise ? DEFAULT_SPIN_AHEAD : Duration.ZERO);
+	}
+
+	// In precision mode, the dispatcher parks only until spinAhead before the next deadline and
+	// busy-waits on System.nanoTime() for the rest, at the cost of one core. The dispatch thread
+	// gets the highest priority (Java offers no way to pin it to a core). A zero duration switches
+	// precision mode off.
+	public void setPrecisionMode(Duration spinAhead) {
+		spinAheadNanos = spinAhead.toNanos();
+		synchronized(processLock) {
+			if(dispatcher != null)
+				dispatcher.setPriority(spinAheadNanos > 0 ? Thread.MAX_PRIORITY : Thread.NORM_PRIORITY);
+		}
+	}
+
+	public boolean isPrecisionMode() {
+		return spinAheadNanos > 0;
+	}
+
+	// busy-waits for the given time, returns false if the dispatcher was woken up in between
+	private boolean spin(long nanos) {
+		long deadline = System.nanoTime() + nanos;
+		while(System.nanoTime() - deadline < 0) {
+			if(woken)
+				return false;
+		}
+		return true;
+	}
+
+	protected void wakeDispatcher() {
+		woken = true;
+		Thread t = dispatcher;
+		if(t != null)
+			LockSupport.unpark(t);
+	}
+
+	private void dispatch() {
+		while(true) {
+			Consumer<E> fn;
+			Function<? super E, ?> lf;
+			synchronized(processLock) {
+				while(function == null) {
+					try {
+						processLock.wait();
+					} catch(InterruptedException e) {
+						return;
+					}
+				}
+				fn = function;
+				lf = laneOf;
+			}
+
+			// cleared before the earliest time is read, so that an entry put in between wakes the spin below
+			woken = false;
+			LocalDateTime next = firstTime();
+			if(stop.get() || next == null) {
+				// wait for the lanes to finish, their entries might add new ones
+				if(pendingInLanes.get() > 0) {
+					LockSupport.parkNanos(this, MAX_PARK_NANOS);
+					continue;
+				}
+				synchronized(processLock) {
+					function = null;
+					processLock.notifyAll();
+				}
+				continue;
+			}
+
+			LocalDateTime now = clock.now();
+			if(next.isAfter(now)) {
+				if(!clock.isRealTime()) {
+					// virtual time must not move on while entries are still running, they would start late
+					if(pendingInLanes.get() > 0)
+						LockSupport.parkNanos(this, MAX_PARK_NANOS);
+					else
+						clock.parkUntil(this, next, MAX_PARK_NANOS);
+					continue;
+				}
+				long spinAhead = spinAheadNanos;
+				if(spinAhead == 0) {
+					clock.parkUntil(this, next, MAX_PARK_NANOS);
+					continue;
+				}
+				long remaining = Duration.between(now, next).toNanos();
+				if(remaining > spinAhead) {
+					clock.parkUntil(this, next.minusNanos(spinAhead), MAX_PARK_NANOS);
+					continue;
+				}
+				if(!spin(remaining))
+					continue;
+				now = next;
+			}
+
 			try {
-				Thread.sleep(1000);
-			} catch (InterruptedException ignored) {
+				List<E> due = takeDueEntries(now);
+				for(E entry : due) {
+					if(lf == null)
+						runWatched(entry, fn, null, now);
+					else
+						runInLane(lf.apply(entry), entry, fn, now);
+				}
+			} catch(RuntimeException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+	private Duration mergeWindow = Duration.ZERO;
+	private Predicate<? super E> mergeable = null;
+	private UnaryOperator<List<E>> merger = null;
+
+	// Before due entries are dispatched, they are passed to the merger. If any of them is mergeable,
+	// mergeable entries that are due within the merge window are taken from the timeline early and
+	// passed to the merger as well.
+	public synchronized void setMerger(Duration window, Predicate<? super E> mergeable, UnaryOperator<List<E>> merger) {
+		this.mergeWindow = window;
+		this.mergeable = mergeable;
+		this.merger = merger;
+	}
+
+	private List<E> takeDueEntries(LocalDateTime now) {
+		ArrayList<E> due = new ArrayList<>();
+		removeEntriesBefore(now.plusNanos(1), due);
+		taken(due);
+
+		Predicate<? super E> mergeable;
+		UnaryOperator<List<E>> merger;
+		Duration window;
+		synchronized(this) {
+			mergeable = this.mergeable;
+			merger = this.merger;
+			window = this.mergeWindow;
+		}
+		if(merger == null)
+			return due;
+		if(!window.isZero() && due.stream().anyMatch(mergeable))
+			due.addAll(takeEntriesBefore(now.plus(window).plusNanos(1), mergeable));
+		return merger.apply(due);
+	}
+
+	private static final class Watchdog<E> {
+		final Function<? super E, Duration> timeoutOf;
+		final Predicate<? super E> isolatable;
+		final Consumer<? super E> onStall;
+
+		Watchdog(Function<? super E, Duration> timeoutOf, Predicate<? super E> isolatable, Consumer<? super E> onStall) {
+			this.timeoutOf = timeoutOf;
+			this.isolatable = isolatable;
+			this.onStall = onStall;
+		}
+	}
+
+	private volatile Watchdog<E> watchdog = null;
+	private ScheduledExecutorService watchdogExecutor = null;
+
+	// Entries that run longer than their timeout (null for none) are reported to onStall and interrupted.
+	// If an entry is isolatable and runs in a lane, the lane continues with a new worker thread, and
+	// the stalled one is left to finish the entry on its own.
+	public void setWatchdog(Function<? super E, Duration> timeoutOf, Predicate<? super E> isolatable, Consumer<? super E> onStall) {
+		watchdog = new Watchdog<>(timeoutOf, isolatable, onStall);
+	}
+
+	private synchronized ScheduledExecutorService getWatchdogExecutor() {
+		if(watchdogExecutor == null) {
+			watchdogExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+				Thread t = new Thread(r, "Timeline watchdog");
+				t.setDaemon(true);
+				return t;
+			});
+		}
+		return watchdogExecutor;
+	}
+
+	// the clock time at which the entry run by the current thread was found due
+	private static final ThreadLocal<LocalDateTime> releaseTime = new ThreadLocal<>();
+
+	// While process() runs an entry, the time of the clock when the dispatcher released it, otherwise
+	// null. Unlike the clock's current time, this does not include the time the entry waited in its lane.
+	public static LocalDateTime getReleaseTime() {
+		return releaseTime.get();
+	}
+
+	private void runWatched(E entry, Consumer<E> fn, Runnable isolate, LocalDateTime released) {
+		releaseTime.set(released);
+		try {
+			runWatched(entry, fn, isolate);
+		} finally {
+			releaseTime.remove();
+		}
+	}
+
+	// Runs an entry released by process() on a thread of the consumer's own, e.g. after queueing it, with
+	// the watchdog and release time as if process() ran it
+	void runReleased(E entry, Consumer<E> fn, LocalDateTime released) {
+		runWatched(entry, fn, null, released);
+	}
+
+	// isolate is null if the entry does not run in a lane
+	private void runWatched(E entry, Consumer<E> fn, Runnable isolate) {
+		Watchdog<E> w = watchdog;
+		Duration timeout = w == null ? null : w.timeoutOf.apply(entry);
+		if(timeout == null) {
+			fn.accept(entry);
+			return;
+		}
+		final Thread worker = Thread.currentThread();
+		final boolean[] finished = new boolean[] { false };
+		ScheduledFuture<?> alarm = getWatchdogExecutor().schedule(() -> {
+			synchronized(finished) {
+				if(finished[0])
+					return;
+				w.onStall.accept(entry);
+				if(isolate != null && w.isolatable.test(entry))
+					isolate.run();
+				else
+					worker.interrupt();
+			}
+		}, timeout.toNanos(), TimeUnit.NANOSECONDS);
+		try {
+			fn.accept(entry);
+		} finally {
+			synchronized(finished) {
+				finished[0] = true;
 			}
+			alarm.cancel(false);
+			// don't leave an interrupt for the next entry
+			Thread.interrupted();
+		}
+	}
+
+	// a ThreadPoolExecutor rather than Executors.newSingleThreadExecutor(), so that isolate() can take its queue
+	private ThreadPoolExecutor newLane(Object lane) {
+		return new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), r -> {
+			Thread t = new Thread(r, "Timeline lane " + lane);
+			t.setDaemon(true);
+			return t;
 		});
 	}
 
+	private void runInLane(Object lane, E entry, Consumer<E> fn, LocalDateTime released) {
+		pendingInLanes.incrementAndGet();
+		// an entry is done when it finishes, or when it is left behind by its lane
+		AtomicBoolean accounted = new AtomicBoolean(false);
+		Runnable done = () -> {
+			if(accounted.compareAndSet(false, true) && pendingInLanes.decrementAndGet() == 0)
+				wakeDispatcher();
+		};
+		synchronized(lanes) {
+			ExecutorService executor = lanes.computeIfAbsent(lane, this::newLane);
+			executor.execute(() -> {
+				try {
+					runWatched(entry, fn, () -> {
+						isolate(lane, executor);
+						done.run();
+					}, released);
+				} catch(RuntimeException e) {
+					e.printStackTrace();
+				} finally {
+					done.run();
+				}
+			});
+		}
+	}
+
+	// moves the entries waiting in a stalled lane to a new worker
+	private void isolate(Object lane, ExecutorService stalled) {
+		synchronized(lanes) {
+			if(lanes.get(lane) != stalled)
+				return;
+			ExecutorService fresh = newLane(lane);
+			lanes.put(lane, fresh);
+			// not shutdownNow(), which would interrupt the stalled worker
+			ArrayList<Runnable> waiting = new ArrayList<>();
+			((ThreadPoolExecutor) stalled).getQueue().drainTo(waiting);
+			stalled.shutdown();
+			for(Runnable r : waiting)
+				fresh.execute(r);
+		}
+	}
+
 	public void waitForProcessing() {
-		executor.shutdown();
-		try {
-			executor.awaitTermination(1, TimeUnit.HOURS);
-		} catch (InterruptedException e) {
-			e.printStackTrace();
+		long deadline = System.nanoTime() + TimeUnit.HOURS.toNanos(1);
+		synchronized(processLock) {
+			while(function != null) {
+				long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+				if(remaining <= 0)
+					return;
+				try {
+					processLock.wait(remaining);
+				} catch(InterruptedException e) {
+					e.printStackTrace();
+					return;
+				}
+			}
 		}
 	}
 
 	public void cancel() {
 		stop.set(true);
+		wakeDispatcher();
 		waitForProcessing();
 	}
 
 	public void clear() {
-		timeline.clear();
+		recurrences.clear();
+		removeAll();
+	}
+
+	protected void removeAll() {
+		synchronized(timeline) {
+			timeline.clear();
+		}
 	}
 
 	public String toString() {
 		StringBuilder sb = new StringBuilder();
-		for(LocalDateTime t : timeline.keySet()) {
-			ArrayList<E> entries = timeline.get(t);
-			sb.append(t).append(" -> ").append(entries);
+		synchronized(timeline) {
+			for(Map.Entry<LocalDateTime, ArrayList<E>> e : timeline.entrySet())
+				sb.append(e.getKey()).append(" -> ").append(e.getValue());
 		}
 		return sb.toString();
 	}
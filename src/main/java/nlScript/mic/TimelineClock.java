@@ -0,0 +1,47 @@
+package nlScript.mic;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.concurrent.locks.LockSupport;
+
+public interface TimelineClock {
+
+	LocalDateTime now();
+
+	// Blocks the calling thread until <code>deadline</code>, for at most <code>maxNanos</code>,
+	// or until it is unparked.
+	void parkUntil(Object blocker, LocalDateTime deadline, long maxNanos);
+
+	// Re-captures the relation between the clock's time base and the wall clock, if there is one
+	default void anchor() {
+	}
+
+	// Converts a wall-clock time to the clock's time base
+	default LocalDateTime fromWallTime(LocalDateTime wallTime) {
+		return wallTime;
+	}
+
+	// Converts a time of the clock's time base to the wall clock, e.g. for display
+	default LocalDateTime toWallTime(LocalDateTime time) {
+		return time;
+	}
+
+	// whether now() follows real time, i.e. whether it makes sense to busy-wait for a deadline
+	default boolean isRealTime() {
+		return true;
+	}
+
+	TimelineClock SYSTEM = new TimelineClock() {
+		@Override
+		public LocalDateTime now() {
+			return LocalDateTime.now();
+		}
+
+		@Override
+		public void parkUntil(Object blocker, LocalDateTime deadline, long maxNanos) {
+			long waitNanos = Duration.between(LocalDateTime.now(), deadline).toNanos();
+			if(waitNanos > 0)
+				LockSupport.parkNanos(blocker, Math.min(waitNanos, maxNanos));
+		}
+	};
+}
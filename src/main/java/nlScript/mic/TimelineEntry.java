@@ -0,0 +1,131 @@
+package nlScript.mic;
+
+import nlScript.mic.Microscope.Resource;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+
+public class TimelineEntry implements Runnable {
+
+	// the kind of sentence that created the entry
+	public enum Kind {
+		ACQUISITION,
+		LED_POWER,
+		EXPOSURE_TIME,
+		CO2_CONCENTRATION,
+		TEMPERATURE,
+		RESTORE
+	}
+
+	// the cycles of a repeated sentence
+	public static class Series {
+		public final int id;  // the number of the sentence that created the series
+		public final String key;  // the sentence's text and occurrence in the script, null if not created by a sentence
+		public final LocalDateTime start;
+		public final long interval;
+		public final int nCycles;
+
+		// only accessed from the lane the series is run in
+		private LocalDateTime lastStart;
+
+		private volatile boolean cancelled = false;
+
+		public Series(int id, LocalDateTime start, long interval, int nCycles) {
+			this(id, null, start, interval, nCycles);
+		}
+
+		public Series(int id, String key, LocalDateTime start, long interval, int nCycles) {
+			this.id = id;
+			this.key = key;
+			this.start = start;
+			this.interval = interval;
+			this.nCycles = nCycles;
+		}
+
+		public LocalDateTime getPlannedTime(int cycle) {
+			return start.plusSeconds(cycle * interval);
+		}
+
+		// the last cycle with a planned time not after now, or -1
+		public int getLatestDueCycle(LocalDateTime now) {
+			if(now.isBefore(start))
+				return -1;
+			if(interval <= 0)
+				return nCycles - 1;
+			long c = ChronoUnit.SECONDS.between(start, now) / interval;
+			return (int) Math.min(c, nCycles - 1);
+		}
+
+		// entries of a cancelled series are not run anymore
+		public void cancel() {
+			cancelled = true;
+		}
+
+		public boolean isCancelled() {
+			return cancelled;
+		}
+
+		public LocalDateTime getLastStart() {
+			return lastStart;
+		}
+
+		public void setLastStart(LocalDateTime lastStart) {
+			this.lastStart = lastStart;
+		}
+	}
+
+	private final Kind kind;
+	private final Resource resource;
+	private final LocalDateTime plannedTime;
+	private final Series series;
+	private final int cycle;
+	private final Runnable runnable;
+
+	public TimelineEntry(Kind kind, Resource resource, LocalDateTime plannedTime, Runnable runnable) {
+		this(kind, resource, plannedTime, null, 0, runnable);
+	}
+
+	public TimelineEntry(Kind kind, Resource resource, Series series, int cycle, Runnable runnable) {
+		this(kind, resource, series.getPlannedTime(cycle), series, cycle, runnable);
+	}
+
+	private TimelineEntry(Kind kind, Resource resource, LocalDateTime plannedTime, Series series, int cycle, Runnable runnable) {
+		this.kind = kind;
+		this.resource = resource;
+		this.plannedTime = plannedTime;
+		this.series = series;
+		this.cycle = cycle;
+		this.runnable = runnable;
+	}
+
+	public Kind getKind() {
+		return kind;
+	}
+
+	public Resource getResource() {
+		return resource;
+	}
+
+	public LocalDateTime getPlannedTime() {
+		return plannedTime;
+	}
+
+	// null if the entry is not part of a repeated sentence
+	public Series getSeries() {
+		return series;
+	}
+
+	public int getCycle() {
+		return cycle;
+	}
+
+	@Override
+	public void run() {
+		runnable.run();
+	}
+
+	@Override
+	public String toString() {
+		return plannedTime + ": " + kind;
+	}
+}
@@ -0,0 +1,44 @@
+package nlScript.mic;
+
+import java.time.LocalDateTime;
+
+/**
+ * Clock for dry-running experiments: instead of waiting for the next deadline, time jumps
+ * forward to it, so a timeline is processed as fast as the entries themselves allow. The
+ * dispatcher only moves time on once the entries released so far have finished, also those
+ * running in lanes. Entries that are inserted from other threads while the dispatcher
+ * fast-forwards may be run late (in virtual time), entries inserted by other entries are
+ * dispatched correctly.
+ */
+public class VirtualClock implements TimelineClock {
+
+	private LocalDateTime now;
+
+	public VirtualClock() {
+		this(LocalDateTime.now());
+	}
+
+	public VirtualClock(LocalDateTime start) {
+		this.now = start;
+	}
+
+	@Override
+	public synchronized LocalDateTime now() {
+		return now;
+	}
+
+	public synchronized void set(LocalDateTime time) {
+		if(time.isAfter(now))
+			now = time;
+	}
+
+	@Override
+	public boolean isRealTime() {
+		return false;
+	}
+
+	@Override
+	public void parkUntil(Object blocker, LocalDateTime deadline, long maxNanos) {
+		set(deadline);
+	}
+}
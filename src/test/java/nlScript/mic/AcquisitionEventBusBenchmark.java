@@ -0,0 +1,66 @@
+package nlScript.mic;
+
+import nlScript.mic.AcquisitionEventBus.Backpressure;
+import nlScript.mic.AcquisitionEventBus.Subscription;
+import nlScript.mic.AcquisitionEventBus.WaitStrategy;
+import nlScript.mic.Microscope.Channel;
+import nlScript.mic.Microscope.Position;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Acquisition time with slow listeners, called synchronously and behind the event bus.
+ */
+public class AcquisitionEventBusBenchmark {
+
+	private static void work(long nanos) {
+		long end = System.nanoTime() + nanos;
+		while(System.nanoTime() < end)
+			LockSupport.parkNanos(end - System.nanoTime());
+	}
+
+	// Acquires 1000 stacks of 0.5 ms each, with a UI taking 2 ms per event, storage 0.3 ms and
+	// analysis 1 ms, first as synchronous listeners, then behind the bus
+	public static void main(String[] args) throws InterruptedException {
+		int n = 1000;
+		Position position = new Position("P", new Double[] { 0.0, 0.0, 0.0 }, new Double[] { 1.0, 1.0, 1.0 });
+		Channel channel = new Channel("C", new Microscope.LEDSetting(Microscope.LED.LED_470, 50), new Microscope.LEDSetting[0], 1);
+
+		Microscope mic = new Microscope();
+		Microscope.AcquisiitonListener ui = (p, c) -> work(2_000_000);
+		Microscope.AcquisiitonListener storage = (p, c) -> work(300_000);
+		Microscope.AcquisiitonListener analysis = (p, c) -> work(1_000_000);
+		mic.addAcquisitionListener(ui);
+		mic.addAcquisitionListener(storage);
+		mic.addAcquisitionListener(analysis);
+		long t0 = System.nanoTime();
+		for(int i = 0; i < n; i++) {
+			work(500_000);
+			mic.acquireSinglePositionAndChannel(position, channel);
+		}
+		long t1 = System.nanoTime();
+		System.out.printf("synchronous listeners:   %6.0f ms for %d stacks%n", (t1 - t0) / 1e6, n);
+		mic.removeAcquisitionListener(ui);
+		mic.removeAcquisitionListener(storage);
+		mic.removeAcquisitionListener(analysis);
+
+		for(WaitStrategy waitStrategy : WaitStrategy.values()) {
+			AcquisitionEventBus bus = new AcquisitionEventBus(mic, 64, waitStrategy);
+			Subscription uiSub = bus.subscribe("UI", Backpressure.SAMPLE, e -> work(2_000_000));
+			Subscription storageSub = bus.subscribe("storage", Backpressure.BLOCK, e -> work(300_000));
+			Subscription analysisSub = bus.subscribe("analysis", Backpressure.DROP, e -> work(1_000_000));
+			t0 = System.nanoTime();
+			for(int i = 0; i < n; i++) {
+				work(500_000);
+				mic.acquireSinglePositionAndChannel(position, channel);
+			}
+			t1 = System.nanoTime();
+			bus.close();
+			System.out.printf("bus, %-9s            %6.0f ms, producer waited %4d ms; processed/dropped: UI %d/%d, storage %d/%d, analysis %d/%d%n",
+					waitStrategy, (t1 - t0) / 1e6, bus.getProducerWaitTime().toMillis(),
+					uiSub.getProcessedCount(), uiSub.getDroppedCount(),
+					storageSub.getProcessedCount(), storageSub.getDroppedCount(),
+					analysisSub.getProcessedCount(), analysisSub.getDroppedCount());
+		}
+	}
+}
@@ -0,0 +1,108 @@
+package nlScript.mic;
+
+import nlScript.mic.AcquisitionEventBus.Backpressure;
+import nlScript.mic.AcquisitionEventBus.Subscription;
+import nlScript.mic.AcquisitionEventBus.WaitStrategy;
+import nlScript.mic.Microscope.Channel;
+import nlScript.mic.Microscope.LED;
+import nlScript.mic.Microscope.LEDSetting;
+import nlScript.mic.Microscope.Position;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class AcquisitionEventBusTest {
+
+	private static final Position POSITION = new Position("A", new Double[] { 0.0, 0.0, 0.0 }, new Double[] { 100.0, 100.0, 10.0 });
+	private static final Channel GFP = new Channel("GFP", new LEDSetting(LED.LED_470, 50), new LEDSetting[0], 20);
+
+	@Test
+	public void blockingSubscriberSeesEveryEvent() throws InterruptedException {
+		for(WaitStrategy waitStrategy : WaitStrategy.values()) {
+			Microscope microscope = new Microscope();
+			AcquisitionEventBus bus = new AcquisitionEventBus(microscope, 8, waitStrategy);
+			List<Long> sequences = new ArrayList<>();
+			List<Integer> intensities = new ArrayList<>();
+			Subscription s = bus.subscribe("all", Backpressure.BLOCK, e -> {
+				sequences.add(e.getSequence());
+				intensities.add(e.getLEDIntensity(LED.LED_470));
+				intensities.add(e.getLEDIntensity(LED.LED_385));
+			});
+			for(int i = 0; i < 1000; i++)
+				microscope.acquireSinglePositionAndChannel(POSITION, GFP);
+			bus.close();
+
+			assertEquals(1000, bus.getPublishedCount());
+			assertEquals(waitStrategy.toString(), 1000, sequences.size());
+			for(int i = 0; i < sequences.size(); i++)
+				assertEquals(i, (long) sequences.get(i));
+			assertEquals(50, (int) intensities.get(0));
+			assertEquals(-1, (int) intensities.get(1));
+			assertEquals(0, s.getDroppedCount());
+		}
+	}
+
+	// a stalled subscriber does not hold up acquisition, and accounts for every event it missed
+	@Test
+	public void slowSubscribersLoseEvents() throws InterruptedException {
+		for(Backpressure backpressure : new Backpressure[] { Backpressure.DROP, Backpressure.SAMPLE }) {
+			Microscope microscope = new Microscope();
+			AcquisitionEventBus bus = new AcquisitionEventBus(microscope, 4, WaitStrategy.BLOCKING);
+			CountDownLatch release = new CountDownLatch(1);
+			List<Long> sequences = new ArrayList<>();
+			Subscription s = bus.subscribe("slow", backpressure, e -> {
+				sequences.add(e.getSequence());
+				try {
+					release.await(10, TimeUnit.SECONDS);
+				} catch(InterruptedException ex) {
+					Thread.currentThread().interrupt();
+				}
+			});
+			for(int i = 0; i < 100; i++)
+				microscope.acquireSinglePositionAndChannel(POSITION, GFP);
+			release.countDown();
+			bus.close();
+
+			assertEquals(100, s.getProcessedCount() + s.getDroppedCount());
+			assertTrue(backpressure + ": " + sequences, s.getDroppedCount() > 0);
+			assertEquals(99, (long) sequences.get(sequences.size() - 1));
+			for(int i = 1; i < sequences.size(); i++)
+				assertTrue(sequences.get(i) > sequences.get(i - 1));
+		}
+	}
+
+	@Test
+	public void subscribersOnlySeeLaterEvents() throws InterruptedException {
+		Microscope microscope = new Microscope();
+		AcquisitionEventBus bus = new AcquisitionEventBus(microscope, 16, WaitStrategy.BLOCKING);
+		microscope.acquireSinglePositionAndChannel(POSITION, GFP);
+		List<Long> sequences = new ArrayList<>();
+		bus.subscribe("late", Backpressure.BLOCK, e -> sequences.add(e.getSequence()));
+		microscope.acquireSinglePositionAndChannel(POSITION, GFP);
+		bus.close();
+		assertEquals(1, sequences.size());
+		assertEquals(1, (long) sequences.get(0));
+	}
+
+	// a failing handler does not stop its subscriber
+	@Test
+	public void failuresAreCounted() throws InterruptedException {
+		Microscope microscope = new Microscope();
+		AcquisitionEventBus bus = new AcquisitionEventBus(microscope, 16, WaitStrategy.BLOCKING);
+		Subscription s = bus.subscribe("failing", Backpressure.BLOCK, e -> {
+			if(e.getSequence() % 2 == 0)
+				throw new IllegalStateException("event " + e.getSequence());
+		});
+		for(int i = 0; i < 10; i++)
+			microscope.acquireSinglePositionAndChannel(POSITION, GFP);
+		bus.close();
+		assertEquals(10, s.getProcessedCount());
+		assertEquals(5, s.getFailedCount());
+	}
+}
@@ -0,0 +1,47 @@
+package nlScript.mic;
+
+import nlScript.mic.Microscope.Channel;
+import nlScript.mic.Microscope.Position;
+
+/**
+ * Time and allocation per acquisition cycle, with names resolved in every cycle and with a compiled plan.
+ */
+public class AcquisitionPlanBenchmark {
+
+	// Acquires 2000 named positions with 4 channels, resolving the names in every cycle
+	// and with the compiled plan
+	public static void main(String[] args) {
+		int nPositions = 2000;
+		int nCycles = 200;
+		Microscope mic = new Microscope();
+		mic.getPathPlanner().setStrategy(PathPlanner.Strategy.SERPENTINE);
+		String[] channelNames = { "A", "B", "C", "D" };
+		Microscope.LED[] leds = Microscope.LED.values();
+		for(int c = 0; c < channelNames.length; c++)
+			mic.addChannel(new Channel(channelNames[c], new Microscope.LEDSetting(leds[c], 50), new Microscope.LEDSetting[0], 20));
+		String[] positionNames = new String[nPositions];
+		for(int i = 0; i < nPositions; i++) {
+			positionNames[i] = "P" + i;
+			mic.addPosition(new Position(positionNames[i], new Double[] { (i % 50) * 1000.0, (i / 50) * 1000.0, 0.0 }, new Double[] { 100.0, 100.0, 10.0 }));
+		}
+		Acquisition acquisition = new Acquisition(positionNames, channelNames, 1,
+				Microscope.Lens.FIVE, Microscope.MagnificationChanger.ONE_ZERO, Microscope.Binning.ONE);
+
+		for(int round = 0; round < 2; round++) {
+			long a0 = Benchmarks.allocatedBytes();
+			long t0 = System.nanoTime();
+			for(int i = 0; i < nCycles; i++)
+				mic.acquire(positionNames, channelNames, 1);
+			long t1 = System.nanoTime();
+			long a1 = Benchmarks.allocatedBytes();
+			for(int i = 0; i < nCycles; i++)
+				mic.acquire(acquisition);
+			long t2 = System.nanoTime();
+			long a2 = Benchmarks.allocatedBytes();
+			if(round == 1) {
+				System.out.printf("resolved per cycle: %8.1f us/cycle %10d bytes/cycle%n", (t1 - t0) / 1e3 / nCycles, (a1 - a0) / nCycles);
+				System.out.printf("compiled plan:      %8.1f us/cycle %10d bytes/cycle%n", (t2 - t1) / 1e3 / nCycles, (a2 - a1) / nCycles);
+			}
+		}
+	}
+}
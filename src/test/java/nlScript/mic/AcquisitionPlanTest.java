@@ -0,0 +1,126 @@
+package nlScript.mic;
+
+import nlScript.mic.Microscope.Binning;
+import nlScript.mic.Microscope.Channel;
+import nlScript.mic.Microscope.LED;
+import nlScript.mic.Microscope.LEDSetting;
+import nlScript.mic.Microscope.Lens;
+import nlScript.mic.Microscope.MagnificationChanger;
+import nlScript.mic.Microscope.Position;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class AcquisitionPlanTest {
+
+	private static Microscope microscope() {
+		Microscope microscope = new Microscope();
+		microscope.addPosition(new Position("A", new Double[] { 0.0, 0.0, 0.0 }, new Double[] { 100.0, 100.0, 10.0 }));
+		microscope.addPosition(new Position("B", new Double[] { 5000.0, 0.0, 0.0 }, new Double[] { 100.0, 100.0, 10.0 }));
+		microscope.addPosition(new Position("C", new Double[] { 1000.0, 0.0, 0.0 }, new Double[] { 100.0, 100.0, 10.0 }));
+		microscope.addChannel(new Channel("GFP", new LEDSetting(LED.LED_470, 50), new LEDSetting[0], 20));
+		microscope.addChannel(new Channel("DAPI", new LEDSetting(LED.LED_385, 50), new LEDSetting[0], 20));
+		return microscope;
+	}
+
+	private static Acquisition acquisition(String[] positions, String[] channels) {
+		return new Acquisition(positions, channels, 1, Lens.FIVE, MagnificationChanger.ONE_ZERO, Binning.ONE);
+	}
+
+	@Test
+	public void planIsCompiledOnceAndReused() {
+		Microscope microscope = microscope();
+		List<String> acquired = new ArrayList<>();
+		microscope.addAcquisitionListener((p, c) -> acquired.add(p.name + "/" + c.name));
+
+		Acquisition acquisition = acquisition(new String[] { Microscope.ALL_POSITIONS }, new String[] { Microscope.ALL_CHANNELS });
+		microscope.acquire(acquisition);
+		AcquisitionPlan plan = acquisition.compiled;
+		assertNotNull(plan);
+		assertEquals(6, plan.size());
+		assertEquals(6, acquired.size());
+
+		microscope.acquire(acquisition);
+		assertSame(plan, acquisition.compiled);
+		assertEquals(acquired.subList(0, 6), acquired.subList(6, 12));
+	}
+
+	@Test
+	public void changedDefinitionsInvalidateThePlan() {
+		Microscope microscope = microscope();
+		Acquisition acquisition = acquisition(new String[] { "A", "B" }, new String[] { "GFP" });
+		microscope.acquire(acquisition);
+		AcquisitionPlan plan = acquisition.compiled;
+		assertTrue(microscope.isValid(plan));
+
+		microscope.addChannel(new Channel("GFP", new LEDSetting(LED.LED_470, 80), new LEDSetting[0], 20));
+		assertFalse(microscope.isValid(plan));
+		List<Channel> acquired = new ArrayList<>();
+		microscope.addAcquisitionListener((p, c) -> acquired.add(c));
+		microscope.acquire(acquisition);
+		assertNotSame(plan, acquisition.compiled);
+		assertEquals(80, acquired.get(0).getLEDSetting(LED.LED_470).getIntensity());
+
+		plan = acquisition.compiled;
+		microscope.getPathPlanner().setStrategy(PathPlanner.Strategy.NEAREST_NEIGHBOUR);
+		assertFalse(microscope.isValid(plan));
+	}
+
+	// positions are visited in definition order, unless path planning is switched on
+	@Test
+	public void planFollowsThePath() {
+		Microscope microscope = microscope();
+		AcquisitionPlan plan = microscope.compile(new String[] { Microscope.ALL_POSITIONS }, new String[] { "GFP" }, 1);
+		assertEquals("A", plan.getPosition(0).name);
+		assertEquals("B", plan.getPosition(1).name);
+		assertEquals("C", plan.getPosition(2).name);
+
+		microscope.getPathPlanner().setStrategy(PathPlanner.Strategy.NEAREST_NEIGHBOUR);
+		plan = microscope.compile(new String[] { Microscope.ALL_POSITIONS }, new String[] { "GFP" }, 1);
+		assertEquals("A", plan.getPosition(0).name);
+		assertEquals("C", plan.getPosition(1).name);
+		assertEquals("B", plan.getPosition(2).name);
+		assertTrue(plan.isTopDown(1) != plan.isTopDown(0));
+	}
+
+	@Test
+	public void unchangedOpticsAreNotSentAgain() {
+		Microscope microscope = microscope();
+		Acquisition acquisition = acquisition(new String[] { "A" }, new String[] { "GFP" });
+		microscope.acquire(acquisition);
+		long sent = microscope.getSentCommandCount();
+		assertEquals(3, sent);
+		microscope.acquire(acquisition);
+		assertEquals(sent, microscope.getSentCommandCount());
+		assertEquals(3, microscope.getAvoidedCommandCount());
+
+		microscope.invalidateDeviceState();
+		microscope.acquire(acquisition);
+		assertEquals(sent + 3, microscope.getSentCommandCount());
+	}
+
+	// subclasses that only override the overload without the stack geometry still acquire every stack
+	@Test
+	public void plansRunThroughTheSimpleHook() {
+		List<String> acquired = new ArrayList<>();
+		Microscope microscope = new Microscope() {
+			@Override
+			public void acquireSinglePositionAndChannel(Position position, Channel channel) {
+				acquired.add(position.name + "/" + channel.name);
+			}
+		};
+		microscope.addPosition(new Position("A", new Double[] { 0.0, 0.0, 0.0 }, new Double[] { 100.0, 100.0, 10.0 }));
+		microscope.addChannel(new Channel("GFP", new LEDSetting(LED.LED_470, 50), new LEDSetting[0], 20));
+		microscope.acquire(acquisition(new String[] { "A" }, new String[] { "GFP" }));
+		assertEquals(1, acquired.size());
+		assertEquals("A/GFP", acquired.get(0));
+	}
+}
@@ -0,0 +1,61 @@
+package nlScript.mic;
+
+import java.io.File;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Method;
+
+// Measurements shared by the benchmarks
+final class Benchmarks {
+
+	private static final Method THREAD_ALLOCATED_BYTES;
+
+	static {
+		Method m = null;
+		try {
+			// not part of the standard API, but available on HotSpot and OpenJ9
+			m = Class.forName("com.sun.management.ThreadMXBean").getMethod("getThreadAllocatedBytes", long.class);
+		} catch(ReflectiveOperationException e) {
+			// allocation is reported as -1
+		}
+		THREAD_ALLOCATED_BYTES = m;
+	}
+
+	private Benchmarks() {
+	}
+
+	// bytes allocated by the calling thread so far, or -1 if the JVM does not tell
+	static long allocatedBytes() {
+		ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if(THREAD_ALLOCATED_BYTES == null || !THREAD_ALLOCATED_BYTES.getDeclaringClass().isInstance(bean))
+			return -1;
+		try {
+			return (Long) THREAD_ALLOCATED_BYTES.invoke(bean, Thread.currentThread().getId());
+		} catch(ReflectiveOperationException e) {
+			return -1;
+		}
+	}
+
+	static long gcCount() {
+		long n = 0;
+		for(GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+			n += Math.max(0, gc.getCollectionCount());
+		return n;
+	}
+
+	static long gcMillis() {
+		long n = 0;
+		for(GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+			n += Math.max(0, gc.getCollectionTime());
+		return n;
+	}
+
+	static void deleteRecursively(File file) {
+		File[] children = file.listFiles();
+		if(children != null)
+			for(File child : children)
+				deleteRecursively(child);
+		file.delete();
+	}
+}
@@ -0,0 +1,87 @@
+package nlScript.mic;
+
+import nlScript.mic.Microscope.Channel;
+import nlScript.mic.Microscope.LED;
+import nlScript.mic.Microscope.LEDSetting;
+import nlScript.mic.Microscope.Position;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class ChannelOrderTest {
+
+	private static final Channel GFP   = channel("GFP",   LED.LED_470, 50);
+	private static final Channel DAPI  = channel("DAPI",  LED.LED_385, 50);
+	private static final Channel GFP2  = channel("GFP2",  LED.LED_470, 60);
+	private static final Channel DAPI2 = channel("DAPI2", LED.LED_385, 40);
+
+	private static Channel channel(String name, LED led, int intensity) {
+		return new Channel(name, new LEDSetting(led, intensity), new LEDSetting[0], 20);
+	}
+
+	// switching an LED on or off costs 1, changing its intensity by 100% costs 1
+	@Test
+	public void switchingCost() {
+		assertEquals(0, ChannelOrder.switchingCost(GFP, GFP), 1e-9);
+		assertEquals(0.1, ChannelOrder.switchingCost(GFP, GFP2), 1e-9);
+		assertEquals(2, ChannelOrder.switchingCost(GFP, DAPI), 1e-9);
+		Channel both = new Channel("both", new LEDSetting(LED.LED_470, 100), new LEDSetting[] { new LEDSetting(LED.LED_385, 50) }, 20);
+		assertEquals(1.5, ChannelOrder.switchingCost(GFP, both), 1e-9);
+		assertEquals(6, ChannelOrder.switchingCost(new Channel[] { GFP, DAPI, GFP2, DAPI2 }), 1e-9);
+	}
+
+	@Test
+	public void definitionOrderIsKept() {
+		Channel[] channels = { GFP, DAPI, GFP2, DAPI2 };
+		assertSame(channels, ChannelOrder.order(channels, ChannelOrder.Strategy.DEFINITION_ORDER));
+	}
+
+	// channels using the same LED are grouped, with the smallest intensity changes in between
+	@Test
+	public void channelsAreGroupedByLED() {
+		Channel[] ordered = ChannelOrder.order(new Channel[] { GFP, DAPI, GFP2, DAPI2 }, ChannelOrder.Strategy.GROUPED);
+		assertEquals(4, ordered.length);
+		assertEquals(2.2, ChannelOrder.switchingCost(ordered), 1e-9);
+		assertEquals(4, new HashSet<>(Arrays.asList(ordered)).size());
+	}
+
+	// nothing to gain with fewer than three channels, and unknown channels are passed on as they are
+	@Test
+	public void shortAndUnknownChannelListsAreKept() {
+		Channel[] two = { GFP, DAPI };
+		assertSame(two, ChannelOrder.order(two, ChannelOrder.Strategy.GROUPED));
+		Channel[] unknown = { GFP, null, DAPI, GFP2 };
+		assertArrayEquals(unknown, ChannelOrder.order(unknown, ChannelOrder.Strategy.GROUPED));
+	}
+
+	// microscopes keep the order of the script by default; grouped, the channels at the next position
+	// run backwards if that continues with the LEDs of the previous one
+	@Test
+	public void microscopeOrdersChannelsOnlyWhenGrouped() {
+		Microscope microscope = new Microscope();
+		microscope.addPosition(new Position("A", new Double[] { 0.0, 0.0, 0.0 }, new Double[] { 100.0, 100.0, 10.0 }));
+		microscope.addPosition(new Position("B", new Double[] { 1000.0, 0.0, 0.0 }, new Double[] { 100.0, 100.0, 10.0 }));
+		microscope.addChannel(GFP);
+		microscope.addChannel(DAPI);
+		List<String> acquired = new ArrayList<>();
+		microscope.addAcquisitionListener((p, c) -> acquired.add(p.name + "/" + c.name));
+		String[] positions = { Microscope.ALL_POSITIONS };
+		String[] channels = { Microscope.ALL_CHANNELS };
+
+		assertEquals(ChannelOrder.Strategy.DEFINITION_ORDER, microscope.getChannelOrder());
+		microscope.acquire(positions, channels, 1);
+		assertEquals(Arrays.asList("A/GFP", "A/DAPI", "B/GFP", "B/DAPI"), acquired);
+
+		acquired.clear();
+		microscope.setChannelOrder(ChannelOrder.Strategy.GROUPED);
+		microscope.acquire(positions, channels, 1);
+		assertEquals(Arrays.asList("A/GFP", "A/DAPI", "B/DAPI", "B/GFP"), acquired);
+	}
+}
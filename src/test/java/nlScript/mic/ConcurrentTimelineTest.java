@@ -0,0 +1,106 @@
+package nlScript.mic;
+
+import org.junit.Test;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ConcurrentTimelineTest {
+
+	// Several threads insert entries while the timeline is being processed: each of them is run exactly once
+	@Test
+	public void insertWhileProcessing() throws InterruptedException {
+		final int nThreads = 8;
+		final int nPerThread = 20000;
+		ConcurrentTimeline<Integer> timeline = new ConcurrentTimeline<>();
+		AtomicIntegerArray runs = new AtomicIntegerArray(nThreads * nPerThread + 1);
+
+		LocalDateTime start = LocalDateTime.now();
+		int last = nThreads * nPerThread;
+		timeline.put(start.plusSeconds(3600), last);
+		timeline.process(runs::incrementAndGet);
+
+		CountDownLatch done = new CountDownLatch(nThreads);
+		for(int t = 0; t < nThreads; t++) {
+			final int offset = t * nPerThread;
+			new Thread(() -> {
+				ThreadLocalRandom rnd = ThreadLocalRandom.current();
+				// many collisions on the same key, all of them due within the next second
+				for(int i = 0; i < nPerThread; i++)
+					timeline.put(start.plusNanos(rnd.nextInt(1000) * 1000000L), offset + i);
+				done.countDown();
+			}).start();
+		}
+		done.await();
+
+		// finish off the entry due in an hour
+		timeline.runAndRemoveEntriesBefore(start.plusSeconds(3601), runs::incrementAndGet);
+		timeline.waitForProcessing();
+
+		for(int i = 0; i <= last; i++)
+			assertEquals("runs of entry " + i, 1, runs.get(i));
+		assertTrue(timeline.isEmpty());
+	}
+
+	// Clearing does not need to stop the dispatcher, which stops once the timeline is empty
+	@Test
+	public void clearWhileProcessing() {
+		ConcurrentTimeline<Integer> timeline = new ConcurrentTimeline<>();
+		AtomicInteger executed = new AtomicInteger();
+		LocalDateTime start = LocalDateTime.now();
+		for(int i = 0; i < 100000; i++)
+			timeline.put(start.plusSeconds(10 + i), i);
+		timeline.process(i -> executed.incrementAndGet());
+		timeline.clear();
+		timeline.waitForProcessing();
+
+		assertTrue(timeline.isEmpty());
+		assertFalse(timeline.isProcessing());
+		assertEquals(0, executed.get());
+		assertTrue(timeline.getNextEvents(10).getEvents().isEmpty());
+	}
+
+	// Entries that don't pass the filter stay where they are, ahead of entries added later for the same time
+	@Test
+	public void takeEntriesKeepsOrderOfTheOthers() {
+		ConcurrentTimeline<String> timeline = new ConcurrentTimeline<>();
+		LocalDateTime t = LocalDateTime.now().plusHours(1);
+		timeline.put(t, "a");
+		timeline.put(t, "take");
+		timeline.put(t, "b");
+
+		assertEquals(Arrays.asList("take"), timeline.takeEntriesBefore(t.plusNanos(1), "take"::equals));
+		timeline.put(t, "c");
+
+		List<String> remaining = new ArrayList<>();
+		timeline.runAndRemoveEntriesBefore(t.plusNanos(1), remaining::add);
+		assertEquals(Arrays.asList("a", "b", "c"), remaining);
+		assertTrue(timeline.isEmpty());
+	}
+
+	@Test
+	public void takeAllEntriesOfATime() {
+		ConcurrentTimeline<String> timeline = new ConcurrentTimeline<>();
+		LocalDateTime t = LocalDateTime.now().plusHours(1);
+		timeline.put(t, "a");
+		timeline.put(t, "b");
+		timeline.put(t.plusSeconds(1), "c");
+
+		assertEquals(Arrays.asList("a", "b"), timeline.takeEntriesBefore(t.plusNanos(1), e -> true));
+		// the emptied bucket is gone, and the time can be used again
+		timeline.put(t, "d");
+		List<String> remaining = new ArrayList<>();
+		timeline.runAndRemoveEntriesBefore(t.plusSeconds(2), remaining::add);
+		assertEquals(Arrays.asList("d", "c"), remaining);
+	}
+}
@@ -0,0 +1,199 @@
+package nlScript.mic;
+
+import nlScript.mic.Microscope.Binning;
+import nlScript.mic.Microscope.Channel;
+import nlScript.mic.Microscope.LED;
+import nlScript.mic.Microscope.LEDSetting;
+import nlScript.mic.Microscope.Lens;
+import nlScript.mic.Microscope.MagnificationChanger;
+import nlScript.mic.Microscope.Position;
+import nlScript.mic.Microscope.Resource;
+import nlScript.mic.TimelineEntry.Kind;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ExperimentSchedulerTest {
+
+	private static LanguageControl languageControl(Microscope microscope) {
+		LanguageControl lc = new LanguageControl(microscope, true);
+		lc.reset();
+		return lc;
+	}
+
+	// An experiment of top priority keeps the optics busy until all other entries, due shortly after
+	// its own, are queued. Returns the latch that lets it finish.
+	private static CountDownLatch block(ExperimentScheduler scheduler, LocalDateTime now) {
+		CountDownLatch release = new CountDownLatch(1);
+		LanguageControl lc = languageControl(scheduler.getMicroscope());
+		lc.getTimeline().put(now, new TimelineEntry(Kind.ACQUISITION, Resource.OPTICS, now, () -> {
+			try {
+				release.await();
+			} catch(InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}));
+		scheduler.add("blocker", lc, 100, 1);
+		return release;
+	}
+
+	// adds an experiment with n entries that are due at the given time, record their name when run and take millis each
+	private static void add(ExperimentScheduler scheduler, String name, int priority, double share, LocalDateTime time, int n, long millis, List<String> executed) {
+		LanguageControl lc = languageControl(scheduler.getMicroscope());
+		for(int i = 0; i < n; i++) {
+			lc.getTimeline().put(time, new TimelineEntry(Kind.ACQUISITION, Resource.OPTICS, time, () -> {
+				executed.add(name);
+				try {
+					Thread.sleep(millis);
+				} catch(InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}));
+		}
+		scheduler.add(name, lc, priority, share);
+	}
+
+	private static void runQueued(ExperimentScheduler scheduler, CountDownLatch release) throws InterruptedException {
+		Thread.sleep(500);
+		release.countDown();
+		assertTrue(scheduler.waitForProcessing(10, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void higherPrioritiesAreServedFirst() throws InterruptedException {
+		ExperimentScheduler scheduler = new ExperimentScheduler(new SimulatedMicroscope());
+		LocalDateTime now = LocalDateTime.now();
+		CountDownLatch release = block(scheduler, now);
+		List<String> executed = Collections.synchronizedList(new ArrayList<>());
+		add(scheduler, "low", 0, 1, now.plus(Duration.ofMillis(50)), 3, 0, executed);
+		add(scheduler, "high", 1, 1, now.plus(Duration.ofMillis(50)), 3, 0, executed);
+		runQueued(scheduler, release);
+
+		assertEquals(Arrays.asList("high", "high", "high", "low", "low", "low"), executed);
+	}
+
+	// of equal priorities, each experiment gets resource time in proportion to its share
+	@Test
+	public void resourcesAreSharedByShare() throws InterruptedException {
+		ExperimentScheduler scheduler = new ExperimentScheduler(new SimulatedMicroscope());
+		LocalDateTime now = LocalDateTime.now();
+		CountDownLatch release = block(scheduler, now);
+		List<String> executed = Collections.synchronizedList(new ArrayList<>());
+		add(scheduler, "three", 0, 3, now.plus(Duration.ofMillis(50)), 40, 10, executed);
+		add(scheduler, "one", 0, 1, now.plus(Duration.ofMillis(50)), 40, 10, executed);
+		runQueued(scheduler, release);
+
+		assertEquals(80, executed.size());
+		int three = Collections.frequency(executed.subList(0, 40), "three");
+		assertTrue("three: " + three + " of 40", three >= 26 && three <= 34);
+	}
+
+	// with aging, a lower priority is served while a higher one still has entries queued
+	@Test
+	public void waitingExperimentsAge() throws InterruptedException {
+		ExperimentScheduler scheduler = new ExperimentScheduler(new SimulatedMicroscope());
+		scheduler.setAgingInterval(Duration.ofMillis(50));
+		LocalDateTime now = LocalDateTime.now();
+		CountDownLatch release = block(scheduler, now);
+		List<String> executed = Collections.synchronizedList(new ArrayList<>());
+		add(scheduler, "high", 1, 1, now.plus(Duration.ofMillis(50)), 20, 10, executed);
+		add(scheduler, "low", 0, 1, now.plus(Duration.ofMillis(50)), 1, 10, executed);
+		runQueued(scheduler, release);
+
+		assertEquals(21, executed.size());
+		assertTrue(executed.toString(), executed.indexOf("low") < 5);
+	}
+
+	// a compatible acquisition of another experiment that is due within the merge window is acquired early, in the same pass
+	@Test
+	public void compatibleAcquisitionsShareAPass() throws InterruptedException {
+		Microscope microscope = new SimulatedMicroscope();
+		for(String name : new String[] { "A", "B" })
+			microscope.addPosition(new Position(name, new Double[] { 0.0, 0.0, 0.0 }, new Double[] { 100.0, 100.0, 10.0 }));
+		microscope.addChannel(new Channel("GFP", new LEDSetting(LED.LED_470, 50), new LEDSetting[0], 20));
+		Map<String, LocalDateTime> acquired = new ConcurrentHashMap<>();
+		microscope.addAcquisitionListener((p, c) -> acquired.put(p.name, LocalDateTime.now()));
+
+		ExperimentScheduler scheduler = new ExperimentScheduler(microscope);
+		LocalDateTime now = LocalDateTime.now();
+		LocalDateTime a = now.plus(Duration.ofMillis(200));
+		LocalDateTime b = now.plus(Duration.ofMillis(700));
+		LanguageControl first = languageControl(microscope);
+		first.schedule("acquire A", a, 60, 1, acquisition("A"));
+		LanguageControl second = languageControl(microscope);
+		second.schedule("acquire B", b, 60, 1, acquisition("B"));
+		scheduler.add("first", first, 0, 1);
+		scheduler.add("second", second, 0, 1);
+		assertTrue(scheduler.waitForProcessing(10, TimeUnit.SECONDS));
+
+		assertEquals(1, scheduler.getSharedPasses());
+		assertEquals(2, acquired.size());
+		assertTrue(acquired.get("B").isBefore(b));
+		assertEquals(1, second.getStatistics().getMergedPasses());
+	}
+
+	private static Acquisition acquisition(String position) {
+		return new Acquisition(new String[] { position }, new String[] { "GFP" }, 1, Lens.FIVE, MagnificationChanger.ONE_ZERO, Binning.ONE);
+	}
+
+	// a definition of one experiment can't be replaced by another one, until the first one is removed
+	@Test
+	public void definitionsBelongToOneExperiment() {
+		Microscope microscope = new SimulatedMicroscope();
+		ExperimentScheduler scheduler = new ExperimentScheduler(microscope);
+		LanguageControl first = languageControl(microscope);
+		LanguageControl second = languageControl(microscope);
+		ExperimentScheduler.Experiment experiment = scheduler.add("first", first, 0, 1);
+
+		microscope.claim("channel GFP", first);
+		// defining it again in the same experiment is fine
+		microscope.claim("channel GFP", first);
+		try {
+			microscope.claim("channel GFP", second);
+			fail();
+		} catch(IllegalStateException expected) {
+		}
+		microscope.claim("channel RFP", second);
+
+		scheduler.remove(experiment);
+		microscope.claim("channel GFP", second);
+	}
+
+	@Test
+	public void stalledEntriesAreInterrupted() throws InterruptedException {
+		ExperimentScheduler scheduler = new ExperimentScheduler(new SimulatedMicroscope());
+		LanguageControl lc = languageControl(scheduler.getMicroscope());
+		lc.setTimeout(Kind.TEMPERATURE, Duration.ofMillis(50), false);
+		AtomicBoolean interrupted = new AtomicBoolean(false);
+		CountDownLatch done = new CountDownLatch(1);
+		LocalDateTime now = LocalDateTime.now();
+		lc.getTimeline().put(now, new TimelineEntry(Kind.TEMPERATURE, Resource.INCUBATION, now, () -> {
+			try {
+				Thread.sleep(10000);
+			} catch(InterruptedException e) {
+				interrupted.set(true);
+			}
+			done.countDown();
+		}));
+		scheduler.add("stalls", lc, 0, 1);
+
+		assertTrue(done.await(5, TimeUnit.SECONDS));
+		assertTrue(scheduler.waitForProcessing(5, TimeUnit.SECONDS));
+		assertTrue(interrupted.get());
+		assertEquals(1, lc.getStatistics().getStallCount(Kind.TEMPERATURE));
+	}
+}
@@ -0,0 +1,111 @@
+package nlScript.mic;
+
+import nlScript.mic.Microscope.Binning;
+import nlScript.mic.Microscope.Channel;
+import nlScript.mic.Microscope.LED;
+import nlScript.mic.Microscope.LEDSetting;
+import nlScript.mic.Microscope.Lens;
+import nlScript.mic.Microscope.MagnificationChanger;
+import nlScript.mic.Microscope.Position;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Allocation rate and garbage collection of a long time-lapse, with frames on the heap and from a FramePool.
+ */
+public class FramePoolBenchmark {
+
+	// Streams a time-lapse of 4 positions and 2 channels to disk, with a display that keeps the latest
+	// stack of every channel, with frames on the heap and from a pool, and from the pool with an
+	// additional analysis that is slower than acquisition; reports allocation and garbage collection
+	// per block of 50 stacks, and how long acquisition waited for free frames
+	public static void main(String[] args) throws IOException {
+		int nStacks = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+		File root = new File(System.getProperty("java.io.tmpdir"), "frame-pool-benchmark");
+		Benchmarks.deleteRecursively(root);
+		SimulatedCamera camera = new SimulatedCamera();
+		Position[] positions = new Position[4];
+		for(int i = 0; i < positions.length; i++)
+			positions[i] = new Position("P" + i, new Double[] { i * 1000.0, 0.0, 100.0 }, new Double[] { 500.0, 500.0, 20.0 });
+		Channel[] channels = {
+				new Channel("GFP", new LEDSetting(LED.LED_470, 50), new LEDSetting[0], 10),
+				new Channel("mCherry", new LEDSetting(LED.LED_567, 50), new LEDSetting[0], 10),
+		};
+		Binning binning = Binning.TWO;
+		int planes = Microscope.getPlaneCount(positions[0], 2);
+		long stackBytes = 2L * camera.getFrameWidth(binning) * camera.getFrameHeight(binning) * planes;
+
+		// frames on the heap, and a pool with enough frames for the stacks the writer may queue, the display
+		// and the stack being acquired, the second time with an analysis that cannot keep up
+		int queued = 16;
+		int poolSize = (queued + channels.length + 1) * planes;
+		for(int pass = 0; pass < 3; pass++) {
+			FramePool pool = pass > 0
+					? new FramePool(poolSize, camera.getFrameWidth(binning), camera.getFrameHeight(binning))
+					: null;
+			camera.setFramePool(pool);
+			StackWriter writer = new StackWriter(new File(root, "pass-" + pass), StackWriter.DEFAULT_CHUNK_SIZE, queued * stackBytes);
+			ExecutorService analysis = pass == 2 ? Executors.newSingleThreadExecutor() : null;
+			AcquiredStack[] display = new AcquiredStack[channels.length];
+
+			System.out.println(pool == null ? "frames on the heap:"
+					: "pool of " + poolSize + " direct frames" + (analysis != null ? ", analysis taking 250 ms per stack:" : ":"));
+			long t0 = System.nanoTime();
+			long blockStart = t0, alloc0 = Benchmarks.allocatedBytes(), gc0 = Benchmarks.gcCount(), gcMs0 = Benchmarks.gcMillis();
+			for(int s = 0; s < nStacks; s++) {
+				int c = s % channels.length;
+				Position position = positions[(s / channels.length) % positions.length];
+				AcquiredStack stack = camera.acquire(position, channels[c], 2, false, Lens.TWENTY, MagnificationChanger.ONE_ZERO, binning);
+				writer.stackAcquired(stack);
+				// the display keeps the latest stack of each channel
+				if(display[c] != null)
+					display[c].release();
+				display[c] = stack.retain();
+				if(analysis != null) {
+					stack.retain();
+					analysis.execute(() -> {
+						LockSupport.parkNanos(250_000_000L);
+						stack.release();
+					});
+				}
+				stack.release();
+
+				if((s + 1) % 50 == 0) {
+					long now = System.nanoTime(), alloc = Benchmarks.allocatedBytes(), gc = Benchmarks.gcCount(), gcMs = Benchmarks.gcMillis();
+					System.out.printf("  stacks %4d-%4d: %7.1f MB allocated (%6.1f MB/s), %3d GCs, %4d ms GC%n",
+							s - 48, s + 1, (alloc - alloc0) / 1e6, (alloc - alloc0) / 1e6 / ((now - blockStart) / 1e9),
+							gc - gc0, gcMs - gcMs0);
+					blockStart = now;
+					alloc0 = alloc;
+					gc0 = gc;
+					gcMs0 = gcMs;
+				}
+			}
+			for(AcquiredStack stack : display)
+				stack.release();
+			writer.close();
+			if(analysis != null) {
+				analysis.shutdown();
+				try {
+					analysis.awaitTermination(1, TimeUnit.MINUTES);
+				} catch(InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+			long t1 = System.nanoTime();
+			System.out.printf("  %d MB written in %.1f s", writer.getWrittenBytes() >> 20, (t1 - t0) / 1e9);
+			if(pool != null)
+				System.out.printf(", pool of %d MB: peak %d frames in use, exhausted %d times, waited %d ms, %d free at the end",
+						pool.getSize() * pool.getFrameCapacity() >> 20, pool.getPeakInUse(),
+						pool.getExhaustedCount(), pool.getWaitTime().toMillis(), pool.getFreeCount());
+			System.out.println();
+		}
+		camera.setFramePool(null);
+		Benchmarks.deleteRecursively(root);
+	}
+}
@@ -0,0 +1,118 @@
+package nlScript.mic;
+
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class FramePoolTest {
+
+	@Test
+	public void lastReleaseReturnsTheFrame() {
+		FramePool pool = new FramePool(2, 16, 16);
+		Frame frame = pool.acquire(8, 4);
+		assertEquals(8, frame.getWidth());
+		assertEquals(64, frame.getSizeInBytes());
+		assertEquals(32, frame.getPixels().remaining());
+		assertEquals(1, pool.getFreeCount());
+
+		frame.retain();
+		frame.release();
+		assertEquals(1, pool.getFreeCount());
+		frame.release();
+		assertEquals(2, pool.getFreeCount());
+		assertEquals(1, pool.getPeakInUse());
+	}
+
+	@Test
+	public void releasedFramesCannotBeUsed() {
+		FramePool pool = new FramePool(1, 16, 16);
+		Frame frame = pool.acquire(16, 16);
+		frame.release();
+		try {
+			frame.release();
+			fail();
+		} catch(IllegalStateException expected) {
+		}
+		try {
+			frame.retain();
+			fail();
+		} catch(IllegalStateException expected) {
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void framesMustFit() {
+		new FramePool(1, 16, 16).acquire(32, 16);
+	}
+
+	// acquisition waits for a consumer to release a frame instead of allocating a new one
+	@Test
+	public void exhaustedPoolWaits() throws InterruptedException {
+		FramePool pool = new FramePool(1, 16, 16);
+		Frame first = pool.acquire(16, 16);
+		AtomicReference<Frame> second = new AtomicReference<>();
+		Thread t = new Thread(() -> second.set(pool.acquire(16, 16)));
+		t.start();
+		while(pool.getExhaustedCount() == 0)
+			Thread.sleep(1);
+		Thread.sleep(20);
+		first.release();
+		t.join(5000);
+
+		assertSame(first, second.get());
+		assertEquals(2, pool.getAcquiredCount());
+		assertEquals(1, pool.getExhaustedCount());
+		assertTrue(pool.getWaitTime().toMillis() >= 10);
+	}
+
+	// frames that are kept for good don't stall acquisition
+	@Test
+	public void keptFramesAreReplacedByHeapFrames() {
+		FramePool pool = new FramePool(1, 16, 16);
+		pool.setMaxWait(Duration.ofMillis(20));
+		Frame kept = pool.acquire(16, 16);
+		Frame frame = pool.acquire(16, 16);
+		assertFalse(frame.isPooled());
+		assertEquals(1, pool.getAllocatedCount());
+		assertEquals(1, pool.getAcquiredCount());
+		assertTrue(pool.getWaitTime().toMillis() >= 20);
+		kept.release();
+		assertEquals(1, pool.getFreeCount());
+	}
+
+	@Test
+	public void peakInUseIsNotLostUnderContention() throws InterruptedException {
+		FramePool pool = new FramePool(8, 16, 16);
+		Thread[] threads = new Thread[8];
+		CountDownLatch acquired = new CountDownLatch(threads.length);
+		CountDownLatch release = new CountDownLatch(1);
+		for(int i = 0; i < threads.length; i++) {
+			threads[i] = new Thread(() -> {
+				Frame frame = pool.acquire(16, 16);
+				acquired.countDown();
+				try {
+					release.await();
+				} catch(InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				frame.release();
+			});
+			threads[i].start();
+		}
+		assertTrue(acquired.await(5, TimeUnit.SECONDS));
+		release.countDown();
+		for(Thread t : threads)
+			t.join(5000);
+		assertEquals(8, pool.getPeakInUse());
+		assertEquals(8, pool.getFreeCount());
+	}
+}
@@ -0,0 +1,107 @@
+package nlScript.mic;
+
+import nlScript.mic.TimelineEntry.Kind;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class HistogramTest {
+
+	// the relative width of a bucket: each power of two is split into 32 sub-buckets
+	private static final double PRECISION = 1.0 / 32;
+
+	// values below 32 have buckets of their own, above, each bucket starts where the previous one ends
+	@Test
+	public void bucketBoundaries() {
+		for(int v = 0; v < 32; v++) {
+			assertEquals(v, Histogram.indexOf(v));
+			assertEquals(v, Histogram.lowerBoundOf(v));
+		}
+		assertEquals(64, Histogram.lowerBoundOf(Histogram.indexOf(64)));
+		assertEquals(64, Histogram.lowerBoundOf(Histogram.indexOf(65)));
+		assertEquals(66, Histogram.lowerBoundOf(Histogram.indexOf(66)));
+
+		int last = Histogram.indexOf(Long.MAX_VALUE);
+		for(int i = 0; i < last; i++) {
+			long lower = Histogram.lowerBoundOf(i);
+			long next = Histogram.lowerBoundOf(i + 1);
+			assertEquals(i, Histogram.indexOf(lower));
+			assertEquals(i, Histogram.indexOf(next - 1));
+			assertTrue(next - lower <= Math.max(1, lower * PRECISION));
+		}
+	}
+
+	// percentiles are the lower bound of the bucket that contains them
+	@Test
+	public void percentilesAreWithinThePrecision() {
+		Random random = new Random(42);
+		Histogram histogram = new Histogram();
+		long[] values = new long[100000];
+		for(int i = 0; i < values.length; i++) {
+			// log-normal, like latencies, around 1 ms
+			values[i] = (long) Math.exp(Math.log(1e6) + random.nextGaussian());
+			histogram.record(values[i]);
+		}
+		Arrays.sort(values);
+
+		for(double percentile : new double[] { 1, 50, 90, 99, 99.9, 100 }) {
+			long exact = values[(int) Math.ceil(percentile / 100 * values.length) - 1];
+			long estimate = histogram.getValueAtPercentile(percentile);
+			assertTrue(percentile + ": " + estimate + " > " + exact, estimate <= exact);
+			assertTrue(percentile + ": " + estimate + " << " + exact, exact - estimate <= exact * PRECISION);
+		}
+		assertEquals(values.length, histogram.getCount());
+		assertEquals(values[values.length - 1], histogram.getMax());
+		assertEquals(Arrays.stream(values).average().getAsDouble(), histogram.getMean(), 1e-6);
+	}
+
+	// the buckets cover all longs, and the mean does not overflow
+	@Test
+	public void largeAndNegativeValues() {
+		Histogram histogram = new Histogram();
+		histogram.record(-5);
+		histogram.record(1L << 62);
+		histogram.record(Long.MAX_VALUE);
+		histogram.record(Long.MAX_VALUE);
+
+		assertEquals(4, histogram.getCount());
+		assertEquals(Long.MAX_VALUE, histogram.getMax());
+		assertEquals(0, histogram.getValueAtPercentile(25));
+		assertEquals(1L << 62, histogram.getValueAtPercentile(50));
+		long p100 = histogram.getValueAtPercentile(100);
+		assertTrue(p100 <= Long.MAX_VALUE && Long.MAX_VALUE - p100 <= Long.MAX_VALUE * PRECISION);
+		double mean = ((double) (1L << 62) + 2.0 * Long.MAX_VALUE) / 4;
+		assertEquals(mean, histogram.getMean(), mean * 1e-9);
+
+		histogram.reset();
+		assertEquals(0, histogram.getCount());
+		assertEquals(0, histogram.getValueAtPercentile(50));
+	}
+
+	@Test
+	public void statisticsArePerKind() {
+		DispatchStatistics statistics = new DispatchStatistics();
+		// early entries have no lateness
+		statistics.record(Kind.ACQUISITION, -1000, 5_000_000);
+		statistics.record(Kind.ACQUISITION, 2_000_000, 7_000_000);
+		statistics.record(Kind.TEMPERATURE, 1000, 10_000);
+
+		Histogram lateness = statistics.getLateness(Kind.ACQUISITION);
+		assertEquals(2, lateness.getCount());
+		assertEquals(0, lateness.getValueAtPercentile(50));
+		assertEquals(2_000_000, lateness.getMax());
+		Histogram duration = statistics.getDuration(Kind.ACQUISITION);
+		long p50 = duration.getValueAtPercentile(50);
+		assertTrue(p50 <= 5_000_000 && 5_000_000 - p50 <= 5_000_000 * PRECISION);
+		assertEquals(1, statistics.getLateness(Kind.TEMPERATURE).getCount());
+		assertTrue(statistics.getSummary().contains("ACQUISITION"));
+
+		statistics.reset();
+		assertEquals(0, statistics.getLateness(Kind.ACQUISITION).getCount());
+		assertEquals("", statistics.getSummary());
+	}
+}
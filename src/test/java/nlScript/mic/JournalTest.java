@@ -0,0 +1,67 @@
+package nlScript.mic;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.LocalDateTime;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class JournalTest {
+
+	@Rule
+	public TemporaryFolder tmp = new TemporaryFolder();
+
+	@Test
+	public void recordsAreRecovered() throws IOException {
+		File file = tmp.newFile();
+		LocalDateTime start = LocalDateTime.of(2024, 1, 1, 12, 0);
+		Journal journal = new Journal(file, false);
+		journal.started(start);
+		journal.scheduled(3, "At the beginning, acquire...\n  every 1 minute(s) for 1 hour(s)#1");
+		journal.scheduled(4, "adjust the temperature#1");
+		journal.executed(3, 7);
+		journal.interpolationStarted(4, 37.5);
+		// renumbered by an update of the script
+		journal.scheduled(0, "adjust the temperature#1");
+		journal.executed(0, 2);
+		// not scheduled
+		journal.executed(5, 1);
+		journal.stateChanged("temperature", 36.9);
+		// an empty key is a record like any other
+		journal.stateChanged("", 1);
+		journal.close();
+
+		Journal.Recovery recovery = Journal.recover(file);
+		assertEquals(start, recovery.getStart());
+		String acquisition = "At the beginning, acquire...\n  every 1 minute(s) for 1 hour(s)#1";
+		assertTrue(recovery.isExecuted(acquisition, 7));
+		assertFalse(recovery.isExecuted(acquisition, 8));
+		assertTrue(recovery.isExecuted("adjust the temperature#1", 2));
+		assertEquals(2, recovery.getNumberOfExecutedEntries());
+		assertEquals(37.5, recovery.getInterpolationStart("adjust the temperature#1"), 0);
+		assertEquals(36.9, recovery.getState().get("temperature"), 0);
+		assertEquals(1, recovery.getState().get(""), 0);
+	}
+
+	// records after close() are counted, but neither written nor an error
+	@Test
+	public void recordsAfterCloseAreDropped() throws IOException {
+		File file = tmp.newFile();
+		Journal journal = new Journal(file, false);
+		journal.started(LocalDateTime.now());
+		journal.scheduled(1, "acquire#1");
+		journal.close();
+		// closing again does nothing
+		journal.close();
+		journal.executed(1, 1);
+		journal.executed(1, 2);
+		assertEquals(2, journal.getDroppedCount());
+		assertEquals(0, Journal.recover(file).getNumberOfExecutedEntries());
+	}
+}
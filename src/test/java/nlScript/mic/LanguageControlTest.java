@@ -0,0 +1,240 @@
+package nlScript.mic;
+
+import nlScript.mic.Microscope.Binning;
+import nlScript.mic.Microscope.Channel;
+import nlScript.mic.Microscope.LED;
+import nlScript.mic.Microscope.LEDSetting;
+import nlScript.mic.Microscope.Lens;
+import nlScript.mic.Microscope.MagnificationChanger;
+import nlScript.mic.Microscope.Position;
+import nlScript.mic.Microscope.Resource;
+import nlScript.mic.OverrunPolicy.Decision;
+import nlScript.mic.TimelineEntry.Kind;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class LanguageControlTest {
+
+	private static final LocalDateTime START = LocalDateTime.of(2024, 1, 1, 12, 0);
+
+	@Rule
+	public TemporaryFolder tmp = new TemporaryFolder();
+
+	private static LanguageControl languageControl(VirtualClock clock) {
+		LanguageControl lc = new LanguageControl(new SimulatedMicroscope());
+		lc.setClock(clock);
+		lc.reset();
+		lc.microscope.addPosition(new Position("A", new Double[] { 0.0, 0.0, 0.0 }, new Double[] { 100.0, 100.0, 10.0 }));
+		lc.microscope.addPosition(new Position("B", new Double[] { 1000.0, 0.0, 0.0 }, new Double[] { 100.0, 100.0, 10.0 }));
+		lc.microscope.addChannel(new Channel("GFP", new LEDSetting(LED.LED_470, 50), new LEDSetting[0], 20));
+		return lc;
+	}
+
+	// Incubation entries keep the dispatcher busy while acquisitions take a while in real time:
+	// in virtual time, no acquisition is late, and none of them is coalesced
+	@Test
+	public void noAcquisitionIsDroppedInVirtualTime() {
+		VirtualClock clock = new VirtualClock(START);
+		LanguageControl lc = languageControl(clock);
+		AtomicInteger acquired = new AtomicInteger();
+		lc.microscope.addAcquisitionListener((p, c) -> {
+			LockSupport.parkNanos(200_000);
+			acquired.incrementAndGet();
+		});
+
+		Acquisition acquisition = new Acquisition(new String[] { "A" }, new String[] { "GFP" }, 1, Lens.FIVE, MagnificationChanger.ONE_ZERO, Binning.ONE);
+		TimelineEntry.Series acquisitions = new TimelineEntry.Series(0, START, 60, 100);
+		lc.getTimeline().putRecurring(START, Duration.ofSeconds(60), 100,
+				cycle -> new AcquisitionEntry(acquisitions, cycle, acquisition, lc.microscope));
+		TimelineEntry.Series temperature = new TimelineEntry.Series(1, START, 1, 6000);
+		lc.getTimeline().putRecurring(START, Duration.ofSeconds(1), 6000,
+				cycle -> new TimelineEntry(Kind.TEMPERATURE, Resource.INCUBATION, temperature, cycle, () -> lc.microscope.setTemperature(37)));
+
+		lc.process();
+		lc.getTimeline().waitForProcessing();
+
+		DispatchStatistics statistics = lc.getStatistics();
+		assertEquals(100, acquired.get());
+		assertEquals(0, statistics.getOverrunCount(Kind.ACQUISITION, Decision.COALESCED));
+		assertEquals(100, statistics.getLateness(Kind.ACQUISITION).getCount());
+		assertEquals(0, statistics.getLateness(Kind.ACQUISITION).getMax());
+		assertEquals(6000, statistics.getLateness(Kind.TEMPERATURE).getCount());
+		assertEquals(0, statistics.getLateness(Kind.TEMPERATURE).getMax());
+	}
+
+	// acquisitions due at the same time are acquired in one pass, each according to its own series
+	@Test
+	public void mergedAcquisitionsRunTheirEntries() {
+		VirtualClock clock = new VirtualClock(START);
+		LanguageControl lc = languageControl(clock);
+		StringBuilder acquired = new StringBuilder();
+		lc.microscope.addAcquisitionListener((p, c) -> acquired.append(p.name));
+
+		TimelineEntry.Series a = new TimelineEntry.Series(0, START, 60, 10);
+		TimelineEntry.Series b = new TimelineEntry.Series(1, START, 60, 10);
+		lc.getTimeline().putRecurring(START, Duration.ofSeconds(60), 10, cycle -> new AcquisitionEntry(a, cycle, acquisition("A"), lc.microscope));
+		lc.getTimeline().putRecurring(START, Duration.ofSeconds(60), 10, cycle -> {
+			// b is removed from the script after 4 cycles (cycle 5 is created once cycle 4 is due)
+			if(cycle == 5)
+				b.cancel();
+			return new AcquisitionEntry(b, cycle, acquisition("B"), lc.microscope);
+		});
+		lc.process();
+		lc.getTimeline().waitForProcessing();
+
+		assertEquals("ABABABABAAAAAA", acquired.toString());
+		assertEquals(4, lc.getStatistics().getMergedPasses());
+		assertEquals(8, lc.getStatistics().getMergedEntries());
+		assertEquals(10, lc.getStatistics().getLateness(Kind.ACQUISITION).getCount());
+	}
+
+	// An update removes sentence A, keeps B and adds C, which renumbers the sentences. The resumed script
+	// (B and C) skips exactly the cycles that ran before.
+	@Test
+	public void updatedScriptResumesFromItsJournal() throws IOException {
+		File file = tmp.newFile();
+		VirtualClock clock = new VirtualClock(START);
+		// the definitions are not evaluated from the script here, so an update must not remove them
+		LanguageControl lc = new LanguageControl(new SimulatedMicroscope(), true);
+		lc.setClock(clock);
+		lc.setJournal(new Journal(file, false));
+		lc.reset();
+		define(lc.microscope);
+		List<String> acquired = new ArrayList<>();
+		lc.microscope.addAcquisitionListener((p, c) -> acquired.add(p.name + Duration.between(START, clock.now()).toMinutes()));
+
+		lc.schedule("acquire A", START, 60, 5, acquisition("A"));
+		lc.schedule("acquire B", START, 60, 5, acquisition("B"));
+		runUntil(lc, clock, START.plusSeconds(61));
+		lc.beginUpdate();
+		lc.schedule("acquire B", START, 60, 5, acquisition("B"));
+		lc.schedule("acquire C", START.plusSeconds(120), 60, 3, acquisition("C"));
+		lc.endUpdate();
+		runUntil(lc, clock, START.plusSeconds(121));
+		assertEquals(Arrays.asList("A0", "B0", "A1", "B1", "B2", "C2"), acquired);
+		// the experiment crashes here
+		lc.getJournal().close();
+
+		VirtualClock resumedClock = new VirtualClock(START);
+		LanguageControl resumed = new LanguageControl(new SimulatedMicroscope());
+		resumed.setClock(resumedClock);
+		resumed.resume(Journal.recover(file));
+		resumed.setJournal(new Journal(file, true));
+		resumed.reset();
+		define(resumed.microscope);
+		List<String> resumedAcquired = new ArrayList<>();
+		resumed.microscope.addAcquisitionListener((p, c) -> resumedAcquired.add(p.name + Duration.between(START, resumedClock.now()).toMinutes()));
+		resumed.schedule("acquire B", START, 60, 5, acquisition("B"));
+		resumed.schedule("acquire C", START.plusSeconds(120), 60, 3, acquisition("C"));
+		resumed.process();
+		resumed.getTimeline().waitForProcessing();
+		resumed.getJournal().close();
+
+		Collections.sort(resumedAcquired);
+		assertEquals(Arrays.asList("B3", "B4", "C3", "C4"), resumedAcquired);
+	}
+
+	// A run stops part way and is resumed from its journal: cycles that ran are skipped, the last
+	// temperature is restored, and the ramp continues from the temperature it started at
+	@Test
+	public void crashedRunResumesFromItsJournal() throws IOException {
+		File file = tmp.newFile();
+		VirtualClock clock = new VirtualClock(START);
+		LanguageControl lc = new LanguageControl(new SimulatedMicroscope());
+		lc.setClock(clock);
+		lc.setJournal(new Journal(file, false));
+		lc.reset();
+		define(lc.microscope);
+		lc.microscope.setTemperature(33);
+		List<String> events = new ArrayList<>();
+		lc.microscope.addAcquisitionListener((p, c) -> events.add(p.name + minutes(clock)));
+		evaluate(lc, clock, events);
+		runUntil(lc, clock, START.plusSeconds(121));
+		Collections.sort(events);
+		// the first temperature is set already, which counts as executed
+		assertEquals(Arrays.asList("A0", "A1", "A2", "T1=34.0", "T2=35.0"), events);
+		// the experiment crashes here
+		lc.getJournal().close();
+
+		Journal.Recovery recovery = Journal.recover(file);
+		assertEquals(6, recovery.getNumberOfExecutedEntries());
+		VirtualClock resumedClock = new VirtualClock(START);
+		LanguageControl resumed = new LanguageControl(new SimulatedMicroscope());
+		resumed.setClock(resumedClock);
+		resumed.resume(recovery);
+		resumed.setJournal(new Journal(file, true));
+		resumed.reset();
+		define(resumed.microscope);
+		List<String> resumedEvents = new ArrayList<>();
+		resumed.microscope.addAcquisitionListener((p, c) -> resumedEvents.add(p.name + minutes(resumedClock)));
+		evaluate(resumed, resumedClock, resumedEvents);
+		resumed.process();
+		resumed.getTimeline().waitForProcessing();
+		resumed.getJournal().close();
+
+		Collections.sort(resumedEvents);
+		assertEquals(Arrays.asList("A3", "A4", "T3=36.0", "T4=37.0"), resumedEvents);
+		assertEquals(10, Journal.recover(file).getNumberOfExecutedEntries());
+	}
+
+	// what the script "acquire A every minute for 4 minutes, and adjust the temperature to 37 over 4 minutes" evaluates to
+	private static void evaluate(LanguageControl lc, VirtualClock clock, List<String> events) {
+		lc.schedule("acquire A", START, 60, 5, acquisition("A"));
+		Interpolator interpolator = new Interpolator(
+				lc.microscope::getTemperature,
+				(c, v) -> {
+					lc.microscope.setTemperature(v);
+					lc.getJournal().stateChanged("temperature", v);
+					events.add("T" + minutes(clock) + "=" + v);
+				},
+				37, 5);
+		lc.schedule("adjust the temperature", START, 60, 5, Kind.TEMPERATURE, Resource.INCUBATION, "temperature",
+				Microscope.Incubation.TEMPERATURE_RESOLUTION, interpolator);
+	}
+
+	private static long minutes(VirtualClock clock) {
+		return Duration.between(START, clock.now()).toMinutes();
+	}
+
+	// the watchdog is off unless a timeout is configured
+	@Test
+	public void noTimeoutsByDefault() {
+		LanguageControl lc = new LanguageControl(new SimulatedMicroscope());
+		for(Kind kind : Kind.values())
+			assertNull(lc.getTimeout(kind));
+	}
+
+	// runs the entries due before time, one point in time after the other, like the dispatcher would
+	private static void runUntil(LanguageControl lc, VirtualClock clock, LocalDateTime time) {
+		LocalDateTime next;
+		while((next = lc.getTimeline().firstTime()) != null && next.isBefore(time)) {
+			clock.set(next);
+			lc.getTimeline().runAndRemoveEntriesBefore(next.plusNanos(1), lc::run);
+		}
+	}
+
+	private static void define(Microscope microscope) {
+		for(String name : new String[] { "A", "B", "C" })
+			microscope.addPosition(new Position(name, new Double[] { 0.0, 0.0, 0.0 }, new Double[] { 100.0, 100.0, 10.0 }));
+		microscope.addChannel(new Channel("GFP", new LEDSetting(LED.LED_470, 50), new LEDSetting[0], 20));
+	}
+
+	private static Acquisition acquisition(String position) {
+		return new Acquisition(new String[] { position }, new String[] { "GFP" }, 1, Lens.FIVE, MagnificationChanger.ONE_ZERO, Binning.ONE);
+	}
+}
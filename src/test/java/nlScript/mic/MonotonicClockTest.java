@@ -0,0 +1,95 @@
+package nlScript.mic;
+
+import org.junit.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class MonotonicClockTest {
+
+	private static final LocalDateTime START = LocalDateTime.of(2024, 3, 31, 1, 59);
+
+	// generous, the test thread may be descheduled between two readings
+	private static final long TOLERANCE_MILLIS = 500;
+
+	// a wall clock that stands still unless it is set
+	private static final class WallClock extends Clock {
+		private volatile Instant instant = START.toInstant(ZoneOffset.UTC);
+
+		void set(LocalDateTime time) {
+			instant = time.toInstant(ZoneOffset.UTC);
+		}
+
+		@Override
+		public ZoneId getZone() {
+			return ZoneOffset.UTC;
+		}
+
+		@Override
+		public Clock withZone(ZoneId zone) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public Instant instant() {
+			return instant;
+		}
+	}
+
+	private static void assertClose(LocalDateTime expected, LocalDateTime actual) {
+		long millis = Math.abs(Duration.between(expected, actual).toMillis());
+		assertTrue("expected " + expected + ", but was " + actual, millis <= TOLERANCE_MILLIS);
+	}
+
+	@Test
+	public void wallTimesAreConvertedBothWays() {
+		WallClock wall = new WallClock();
+		MonotonicClock clock = new MonotonicClock(wall);
+		assertClose(START, clock.now());
+
+		LocalDateTime inAnHour = START.plusHours(1);
+		assertClose(clock.now().plusHours(1), clock.fromWallTime(inAnHour));
+		assertClose(inAnHour, clock.toWallTime(clock.fromWallTime(inAnHour)));
+		assertClose(START.minusMinutes(5), clock.toWallTime(clock.now().minusMinutes(5)));
+	}
+
+	// the time base keeps running when the wall clock jumps, e.g. at the start of daylight saving time
+	@Test
+	public void wallClockJumpsAreIgnored() {
+		WallClock wall = new WallClock();
+		MonotonicClock clock = new MonotonicClock(wall);
+		LocalDateTime before = clock.now();
+
+		wall.set(START.plusHours(1));
+		LocalDateTime after = clock.now();
+		assertFalse(after.isBefore(before));
+		assertClose(before, after);
+		// wall-clock times refer to the wall clock as it is now
+		assertClose(after.plusMinutes(10), clock.fromWallTime(START.plusHours(1).plusMinutes(10)));
+		assertClose(START.plusHours(1), clock.toWallTime(after));
+
+		wall.set(START.minusHours(1));
+		LocalDateTime back = clock.now();
+		assertFalse(back.isBefore(after));
+		assertClose(before, back);
+
+		// until the clock is anchored again
+		clock.anchor();
+		assertClose(START.minusHours(1), clock.now());
+	}
+
+	@Test
+	public void otherClocksDontConvert() {
+		VirtualClock clock = new VirtualClock(START);
+		assertEquals(START.plusHours(1), clock.fromWallTime(START.plusHours(1)));
+		assertEquals(START.plusHours(1), clock.toWallTime(START.plusHours(1)));
+	}
+}
@@ -0,0 +1,51 @@
+package nlScript.mic;
+
+import java.time.LocalDateTime;
+
+/**
+ * Compares memory per entry and insert/poll throughput of the timeline backends.
+ */
+public class NanoTimelineBenchmark {
+
+	private static long usedMemory() {
+		Runtime rt = Runtime.getRuntime();
+		for(int i = 0; i < 5; i++)
+			System.gc();
+		return rt.totalMemory() - rt.freeMemory();
+	}
+
+	private static void benchmark(String name, Timeline<Runnable> timeline, int n) {
+		final Runnable noop = () -> {};
+		LocalDateTime start = LocalDateTime.of(2024, 1, 1, 0, 0);
+
+		long memBefore = usedMemory();
+		long t0 = System.nanoTime();
+		for(int i = 0; i < n; i++)
+			timeline.put(start.plusSeconds(i), noop);
+		long t1 = System.nanoTime();
+		long memAfter = usedMemory();
+
+		final int[] count = new int[1];
+		long t2 = System.nanoTime();
+		timeline.runAndRemoveEntriesBefore(start.plusSeconds(n), r -> count[0]++);
+		long t3 = System.nanoTime();
+
+		System.out.printf("%-20s %8.1f bytes/entry  insert %6.2f M/s  poll %6.2f M/s  (%d polled)%n",
+				name,
+				(double) (memAfter - memBefore) / n,
+				n / ((t1 - t0) / 1000.0),
+				n / ((t3 - t2) / 1000.0),
+				count[0]);
+	}
+
+	// Compares memory per entry and insert/poll throughput with the TreeMap based timelines
+	public static void main(String[] args) {
+		int n = 2000000;
+		for(int round = 0; round < 2; round++) {
+			System.out.println(round == 0 ? "warm-up" : "measurement");
+			benchmark("Timeline (TreeMap)", new Timeline<>(), n);
+			benchmark("ConcurrentTimeline", new ConcurrentTimeline<>(), n);
+			benchmark("NanoTimeline", new NanoTimeline<>(), n);
+		}
+	}
+}
@@ -0,0 +1,94 @@
+package nlScript.mic;
+
+import org.junit.Test;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class NanoTimelineTest {
+
+	private static final LocalDateTime START = LocalDateTime.of(2024, 1, 1, 12, 0);
+
+	@Test
+	public void entriesComeOutInOrderOfTime() {
+		NanoTimeline<Integer> timeline = new NanoTimeline<>();
+		Random random = new Random(42);
+		int[] seconds = new int[1000];
+		for(int i = 0; i < seconds.length; i++) {
+			seconds[i] = random.nextInt(100);
+			timeline.put(START.plusSeconds(seconds[i]), i);
+		}
+		assertEquals(seconds.length, timeline.size());
+
+		List<Integer> due = new ArrayList<>();
+		timeline.runAndRemoveEntriesBefore(START.plusSeconds(100), due::add);
+		assertEquals(seconds.length, due.size());
+		for(int k = 1; k < due.size(); k++) {
+			int a = due.get(k - 1), b = due.get(k);
+			assertTrue(seconds[a] < seconds[b] || (seconds[a] == seconds[b] && a < b));
+		}
+		assertTrue(timeline.isEmpty());
+	}
+
+	@Test
+	public void sameTimeKeepsInsertionOrder() {
+		NanoTimeline<String> timeline = new NanoTimeline<>();
+		LocalDateTime t = START.plusNanos(123);
+		timeline.put(t, "a");
+		timeline.put(NanoTimeline.toNanos(t), "b");
+		timeline.put(t.minusNanos(1), "first");
+		timeline.put(t, "c");
+
+		List<String> due = new ArrayList<>();
+		timeline.runAndRemoveEntriesBefore(t.plusNanos(1), due::add);
+		assertEquals(Arrays.asList("first", "a", "b", "c"), due);
+	}
+
+	@Test
+	public void takenEntriesLeaveTheOthersInOrder() {
+		NanoTimeline<String> timeline = new NanoTimeline<>();
+		timeline.put(START, "a");
+		timeline.put(START, "take");
+		timeline.put(START, "b");
+		timeline.put(START.plusSeconds(1), "take later");
+
+		assertEquals(Arrays.asList("take", "take later"), timeline.takeEntriesBefore(START.plusSeconds(2), e -> e.startsWith("take")));
+		timeline.put(START, "c");
+		List<String> due = new ArrayList<>();
+		timeline.runAndRemoveEntriesBefore(START.plusSeconds(2), due::add);
+		assertEquals(Arrays.asList("a", "b", "c"), due);
+	}
+
+	// pages starting after the first entry scan the heap instead of walking it from the top
+	@Test
+	public void pagesFromTheMiddle() {
+		NanoTimeline<Integer> timeline = new NanoTimeline<>();
+		for(int i = 99; i >= 0; i--)
+			timeline.put(START.plusSeconds(i), i);
+
+		Timeline.Page<Integer> page = timeline.getPage(START.plusSeconds(50), START.plusSeconds(60), 4);
+		List<Integer> seen = new ArrayList<>();
+		while(true) {
+			for(Timeline.Event<Integer> e : page.getEvents())
+				seen.add(e.getEntry());
+			if(!page.hasMore())
+				break;
+			page = page.next(4);
+		}
+		assertEquals(Arrays.asList(50, 51, 52, 53, 54, 55, 56, 57, 58, 59), seen);
+		assertEquals(100, timeline.size());
+	}
+
+	@Test
+	public void nanosRoundTrip() {
+		LocalDateTime t = LocalDateTime.of(1969, 12, 31, 23, 59, 59, 999999999);
+		assertEquals(t, NanoTimeline.fromNanos(NanoTimeline.toNanos(t)));
+		assertEquals(START, NanoTimeline.fromNanos(NanoTimeline.toNanos(START)));
+	}
+}
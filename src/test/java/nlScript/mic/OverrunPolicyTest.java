@@ -0,0 +1,77 @@
+package nlScript.mic;
+
+import nlScript.mic.OverrunPolicy.Decision;
+import nlScript.mic.TimelineEntry.Kind;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+
+import static org.junit.Assert.assertEquals;
+
+public class OverrunPolicyTest {
+
+	private static final LocalDateTime START = LocalDateTime.of(2024, 1, 1, 12, 0);
+
+	// one cycle per minute
+	private static final TimelineEntry.Series SERIES = new TimelineEntry.Series(0, START, 60, 10);
+
+	@Test
+	public void cyclesOnTimeAreRun() {
+		for(OverrunPolicy policy : new OverrunPolicy[] { OverrunPolicy.skip(), OverrunPolicy.coalesce(), OverrunPolicy.catchUp(Duration.ZERO, 1) })
+			assertEquals(policy.toString(), Decision.RUN, policy.decide(SERIES, 2, START.plusSeconds(125)));
+	}
+
+	// late by more than the grace period (half an interval by default), or overtaken by the next cycle
+	@Test
+	public void skip() {
+		OverrunPolicy skip = OverrunPolicy.skip();
+		assertEquals(Decision.RUN,     skip.decide(SERIES, 2, START.plusSeconds(150)));
+		assertEquals(Decision.SKIPPED, skip.decide(SERIES, 2, START.plusSeconds(151)));
+		assertEquals(Decision.SKIPPED, skip.decide(SERIES, 2, START.plusSeconds(185)));
+
+		OverrunPolicy grace = OverrunPolicy.skip(Duration.ofSeconds(10));
+		assertEquals(Decision.RUN,     grace.decide(SERIES, 2, START.plusSeconds(130)));
+		assertEquals(Decision.SKIPPED, grace.decide(SERIES, 2, START.plusSeconds(131)));
+	}
+
+	@Test
+	public void coalesce() {
+		OverrunPolicy coalesce = OverrunPolicy.coalesce();
+		assertEquals(Decision.COALESCED, coalesce.decide(SERIES, 2, START.plusSeconds(185)));
+		assertEquals(Decision.RUN,       coalesce.decide(SERIES, 3, START.plusSeconds(185)));
+	}
+
+	// overtaken cycles are run, unless the backlog gets too long
+	@Test
+	public void catchUp() {
+		OverrunPolicy catchUp = OverrunPolicy.catchUp(Duration.ofSeconds(5), 2);
+		assertEquals(Decision.CAUGHT_UP, catchUp.decide(SERIES, 2, START.plusSeconds(185)));
+		assertEquals(Decision.CAUGHT_UP, catchUp.decide(SERIES, 2, START.plusSeconds(245)));
+		assertEquals(Decision.DROPPED,   catchUp.decide(SERIES, 2, START.plusSeconds(305)));
+	}
+
+	// caught up cycles keep a minimum gap to the previous one
+	@Test
+	public void catchUpKeepsTheMinimumGap() {
+		VirtualClock clock = new VirtualClock(START.plusSeconds(185));
+		TimelineEntry.Series series = new TimelineEntry.Series(0, START, 60, 10);
+		OverrunPolicy catchUp = OverrunPolicy.catchUp(Duration.ofSeconds(5), 2);
+		catchUp.awaitCatchUpSlot(series, clock);
+		assertEquals(START.plusSeconds(185), clock.now());
+
+		series.setLastStart(START.plusSeconds(183));
+		catchUp.awaitCatchUpSlot(series, clock);
+		assertEquals(START.plusSeconds(188), clock.now());
+	}
+
+	// all overdue acquisition cycles are run by default, like before overrun policies existed
+	@Test
+	public void acquisitionsCatchUpByDefault() {
+		LanguageControl lc = new LanguageControl(new SimulatedMicroscope());
+		OverrunPolicy policy = lc.getOverrunPolicy(Kind.ACQUISITION);
+		assertEquals(OverrunPolicy.Type.CATCH_UP, policy.getType());
+		assertEquals(Decision.CAUGHT_UP, policy.decide(SERIES, 0, START.plusSeconds(540)));
+		assertEquals(OverrunPolicy.Type.COALESCE, lc.getOverrunPolicy(Kind.TEMPERATURE).getType());
+	}
+}
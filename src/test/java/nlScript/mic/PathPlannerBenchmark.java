@@ -0,0 +1,46 @@
+package nlScript.mic;
+
+import nlScript.mic.Microscope.Position;
+import nlScript.mic.PathPlanner.Plan;
+import nlScript.mic.PathPlanner.Strategy;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Stage travel and planning time of the path planning strategies on a 96-well plate.
+ */
+public class PathPlannerBenchmark {
+
+	// Compares the strategies on a 96 well plate, with the wells defined column by column
+	// and in random order
+	public static void main(String[] args) {
+		List<Position> wells = new ArrayList<>();
+		for(int col = 0; col < 12; col++)
+			for(int row = 0; row < 8; row++)
+				wells.add(new Position("" + (char) ('A' + row) + (col + 1),
+						new Double[] { col * 9000.0, row * 9000.0, 100.0 + (row * 7 + col * 3) % 11 * 20.0 },
+						new Double[] { 500.0, 500.0, 200.0 }));
+		Position[] columnwise = wells.toArray(new Position[0]);
+		Collections.shuffle(wells, new Random(42));
+		Position[] shuffled = wells.toArray(new Position[0]);
+
+		PathPlanner planner = new PathPlanner();
+		for(Strategy strategy : Strategy.values()) {
+			planner.setStrategy(strategy);
+			for(Position[] positions : new Position[][] { columnwise, shuffled }) {
+				long t0 = System.nanoTime();
+				Plan plan = planner.plan(positions, 3);
+				long t1 = System.nanoTime();
+				planner.plan(positions, 3);
+				long t2 = System.nanoTime();
+				System.out.printf("%-17s %-10s travel %8.0f um instead of %8.0f um (%5.1f%% saved), planned in %6.2f ms, cached %5.1f us%n",
+						strategy, positions == columnwise ? "column" : "random",
+						plan.getTravel(), plan.getOriginalTravel(), 100 * plan.getSaved() / plan.getOriginalTravel(),
+						(t1 - t0) / 1e6, (t2 - t1) / 1e3);
+			}
+		}
+	}
+}
@@ -0,0 +1,85 @@
+package nlScript.mic;
+
+import nlScript.mic.Microscope.Position;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class PathPlannerTest {
+
+	private static Position position(String name, double x, double y) {
+		return new Position(name, new Double[] { x, y, 0.0 }, new Double[] { 100.0, 100.0, 20.0 });
+	}
+
+	private static Position[] shuffledGrid(int nx, int ny) {
+		List<Position> positions = new ArrayList<>();
+		for(int y = 0; y < ny; y++)
+			for(int x = 0; x < nx; x++)
+				positions.add(position("P" + x + "_" + y, 1000 * x, 1000 * y));
+		Collections.shuffle(positions, new Random(1));
+		return positions.toArray(new Position[0]);
+	}
+
+	@Test
+	public void plannedPathIsShorter() {
+		Position[] positions = shuffledGrid(6, 5);
+		for(PathPlanner.Strategy strategy : PathPlanner.Strategy.values()) {
+			PathPlanner planner = new PathPlanner();
+			planner.setStrategy(strategy);
+			PathPlanner.Plan plan = planner.plan(positions, 2);
+			assertEquals(positions.length, plan.size());
+			for(int i = 0; i < plan.size(); i++)
+				assertTrue(Arrays.asList(positions).contains(plan.getPosition(i)));
+			assertTrue(strategy + ": " + plan, plan.getTravel() <= plan.getOriginalTravel());
+			if(strategy != PathPlanner.Strategy.DEFINITION_ORDER)
+				assertTrue(strategy + ": " + plan, plan.getTravel() < plan.getOriginalTravel() / 2);
+		}
+	}
+
+	@Test
+	public void serpentineAlternatesRows() {
+		Position[] positions = shuffledGrid(3, 2);
+		PathPlanner planner = new PathPlanner();
+		planner.setStrategy(PathPlanner.Strategy.SERPENTINE);
+		PathPlanner.Plan plan = planner.plan(positions, 1);
+		StringBuilder names = new StringBuilder();
+		for(int i = 0; i < plan.size(); i++)
+			names.append(plan.getPosition(i).name).append(' ');
+		assertEquals("P0_0 P1_0 P2_0 P2_1 P1_1 P0_1 ", names.toString());
+	}
+
+	// with one stack per position, each stack starts where the previous one ended
+	@Test
+	public void zDirectionAlternates() {
+		Position[] positions = shuffledGrid(4, 1);
+		PathPlanner.Plan plan = new PathPlanner().plan(positions, 1);
+		for(int i = 1; i < plan.size(); i++)
+			assertTrue(plan.startsAtTop(i) != plan.startsAtTop(i - 1));
+	}
+
+	@Test
+	public void plansAreCachedPerPositionSet() {
+		Position[] positions = shuffledGrid(3, 3);
+		PathPlanner planner = new PathPlanner();
+		PathPlanner.Plan plan = planner.plan(positions, 1);
+		assertSame(plan, planner.plan(positions.clone(), 1));
+		assertNotSame(plan, planner.plan(positions, 2));
+
+		// redefined positions are new objects
+		Position[] redefined = positions.clone();
+		redefined[0] = position(positions[0].name, positions[0].center.x, positions[0].center.y);
+		assertNotSame(plan, planner.plan(redefined, 1));
+
+		planner.clearCache();
+		assertNotSame(plan, planner.plan(positions, 1));
+	}
+}
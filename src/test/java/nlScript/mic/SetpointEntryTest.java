@@ -0,0 +1,81 @@
+package nlScript.mic;
+
+import nlScript.mic.Microscope.Resource;
+import nlScript.mic.TimelineEntry.Kind;
+import org.junit.Test;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SetpointEntryTest {
+
+	private final double[] temperature = new double[] { 20 };
+
+	private final List<Double> starts = new ArrayList<>();
+
+	private SetpointEntry entry(Interpolator interpolator, int cycle) {
+		TimelineEntry.Series series = new TimelineEntry.Series(0, LocalDateTime.of(2024, 1, 1, 12, 0), 60, 11);
+		return new SetpointEntry(Kind.TEMPERATURE, Resource.INCUBATION, series, cycle, "temperature", interpolator, 0.1);
+	}
+
+	private Interpolator interpolator() {
+		Interpolator interpolator = new Interpolator(() -> temperature[0], (c, v) -> temperature[0] = v, 30, 11);
+		interpolator.setStartListener(starts::add);
+		return interpolator;
+	}
+
+	// checking a cycle for redundancy and running it captures the start value once
+	@Test
+	public void startValueIsCapturedOnce() {
+		Interpolator interpolator = interpolator();
+		SetpointEntry first = entry(interpolator, 0);
+		assertTrue(first.isRedundant());
+		first.run();
+		temperature[0] = 25;
+		SetpointEntry second = entry(interpolator, 1);
+		assertFalse(second.isRedundant());
+		second.run();
+
+		assertEquals(Arrays.asList(20.0), starts);
+		assertEquals(21, temperature[0], 1e-9);
+		entry(interpolator, 10).run();
+		assertEquals(30, temperature[0], 1e-9);
+	}
+
+	// if cycle 0 was skipped, the first cycle that runs captures the start value
+	@Test
+	public void skippedFirstCycle() {
+		Interpolator interpolator = interpolator();
+		SetpointEntry third = entry(interpolator, 2);
+		assertFalse(third.isRedundant());
+		third.run();
+		assertEquals(Arrays.asList(20.0), starts);
+		assertEquals(22, temperature[0], 1e-9);
+	}
+
+	// a start value restored from a journal is not captured again
+	@Test
+	public void restoredStartValue() {
+		Interpolator interpolator = interpolator();
+		interpolator.setStartValue(10);
+		entry(interpolator, 0).run();
+		assertEquals(10, temperature[0], 1e-9);
+		assertTrue(starts.isEmpty());
+	}
+
+	@Test
+	public void redundantInStepsOfTheResolution() {
+		Interpolator interpolator = interpolator();
+		interpolator.setStartValue(20);
+		temperature[0] = 21.02;
+		assertTrue(entry(interpolator, 1).isRedundant());
+		temperature[0] = 21.1;
+		assertFalse(entry(interpolator, 1).isRedundant());
+	}
+}
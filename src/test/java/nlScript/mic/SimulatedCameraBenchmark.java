@@ -0,0 +1,53 @@
+package nlScript.mic;
+
+import nlScript.mic.Microscope.Binning;
+import nlScript.mic.Microscope.Channel;
+import nlScript.mic.Microscope.LED;
+import nlScript.mic.Microscope.LEDSetting;
+import nlScript.mic.Microscope.Lens;
+import nlScript.mic.Microscope.MagnificationChanger;
+import nlScript.mic.Microscope.Position;
+
+/**
+ * Rendering speed of the simulated camera for different optics, and its frame rate in real-time mode.
+ */
+public class SimulatedCameraBenchmark {
+
+	// Measures how fast frames are rendered for different optics, and the frame rate reached in real-time mode
+	public static void main(String[] args) {
+		SimulatedCamera camera = new SimulatedCamera();
+		Position position = new Position("P", new Double[] { 5000.0, 5000.0, 100.0 }, new Double[] { 500.0, 500.0, 20.0 });
+		Channel channel = new Channel("GFP", new LEDSetting(LED.LED_470, 50), new LEDSetting[0], 10);
+
+		Object[][] optics = {
+				{ Lens.FIVE,   MagnificationChanger.ONE_ZERO, Binning.ONE  },
+				{ Lens.FIVE,   MagnificationChanger.ONE_ZERO, Binning.TWO  },
+				{ Lens.FIVE,   MagnificationChanger.ONE_ZERO, Binning.FOUR },
+				{ Lens.TWENTY, MagnificationChanger.ONE_ZERO, Binning.ONE  },
+				{ Lens.TWENTY, MagnificationChanger.TWO_ZERO, Binning.TWO  },
+		};
+		for(int round = 0; round < 2; round++) {
+			for(Object[] o : optics) {
+				Lens lens = (Lens) o[0];
+				MagnificationChanger mag = (MagnificationChanger) o[1];
+				Binning binning = (Binning) o[2];
+				long t0 = System.nanoTime();
+				AcquiredStack stack = camera.acquire(position, channel, 1, false, lens, mag, binning);
+				long t1 = System.nanoTime();
+				if(round == 1) {
+					System.out.printf("%-4s %-4s %-4s %4dx%4d px, %5.3f um/px, %2d planes: %6.1f ms/frame, %6.0f MB/s%n",
+							lens, mag, binning, stack.getWidth(), stack.getHeight(), stack.getPixelWidth(), stack.getPlaneCount(),
+							(t1 - t0) / 1e6 / stack.getPlaneCount(), stack.getSizeInBytes() / ((t1 - t0) / 1e3));
+				}
+			}
+		}
+
+		camera.setRealTime(true);
+		camera.setFrameRate(20);
+		long t0 = System.nanoTime();
+		AcquiredStack stack = camera.acquire(position, channel, 1, true, Lens.FIVE, MagnificationChanger.ONE_ZERO, Binning.FOUR);
+		long t1 = System.nanoTime();
+		System.out.printf("real-time at 20 fps: %d planes in %.0f ms (%.1f fps)%n",
+				stack.getPlaneCount(), (t1 - t0) / 1e6, stack.getPlaneCount() / ((t1 - t0) / 1e9));
+	}
+}
@@ -0,0 +1,115 @@
+package nlScript.mic;
+
+import nlScript.mic.Microscope.Binning;
+import nlScript.mic.Microscope.Channel;
+import nlScript.mic.Microscope.LED;
+import nlScript.mic.Microscope.LEDSetting;
+import nlScript.mic.Microscope.Lens;
+import nlScript.mic.Microscope.MagnificationChanger;
+import nlScript.mic.Microscope.Position;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class SimulatedCameraTest {
+
+	private static final Position POSITION = new Position("A", new Double[] { 100.0, 200.0, 50.0 }, new Double[] { 100.0, 100.0, 10.0 });
+	private static final Channel GFP = new Channel("GFP", new LEDSetting(LED.LED_470, 50), new LEDSetting[0], 20);
+
+	@Test
+	public void stackGeometry() {
+		SimulatedCamera camera = new SimulatedCamera(64, 32, 6.5);
+		AcquiredStack stack = camera.acquire(POSITION, GFP, 2, true, Lens.FIVE, MagnificationChanger.ONE_ZERO, Binning.TWO);
+		assertEquals(32, stack.getWidth());
+		assertEquals(16, stack.getHeight());
+		assertEquals(2.6, stack.getPixelWidth(), 1e-9);
+		assertEquals(6, stack.getPlaneCount());
+		assertEquals(55, stack.getZ(0), 1e-9);
+		assertEquals(45, stack.getZ(5), 1e-9);
+		assertEquals(32 * 16, stack.getPlane(0).length);
+		assertFalse(stack.getFrame(0).isPooled());
+		assertEquals(6, camera.getFrameCount());
+		stack.release();
+	}
+
+	// blobs are only visible with a light source switched on
+	@Test
+	public void signalNeedsLight() {
+		SimulatedCamera camera = new SimulatedCamera(256, 256, 6.5);
+		AcquiredStack stack = camera.acquire(POSITION, GFP, 1, false, Lens.FIVE, MagnificationChanger.ONE_ZERO, Binning.ONE);
+		assertTrue(max(stack.getPlane(5)) > 1000);
+
+		Channel dark = new Channel("dark", new LEDSetting(LED.LED_470, 0), new LEDSetting[0], 20);
+		AcquiredStack background = camera.acquire(POSITION, dark, 1, false, Lens.FIVE, MagnificationChanger.ONE_ZERO, Binning.ONE);
+		assertTrue(max(background.getPlane(5)) < 200);
+	}
+
+	@Test
+	public void framesComeFromThePool() {
+		SimulatedCamera camera = new SimulatedCamera(64, 64, 6.5);
+		FramePool pool = new FramePool(16, camera);
+		camera.setFramePool(pool);
+		AcquiredStack stack = camera.acquire(POSITION, GFP, 1, false, Lens.FIVE, MagnificationChanger.ONE_ZERO, Binning.FOUR);
+		assertTrue(stack.getFrame(0).isPooled());
+		assertEquals(5, pool.getFreeCount());
+		stack.release();
+		assertEquals(16, pool.getFreeCount());
+
+		// the same frames are used again
+		Frame frame = stack.getFrame(0);
+		AcquiredStack next = camera.acquire(POSITION, GFP, 1, false, Lens.FIVE, MagnificationChanger.ONE_ZERO, Binning.FOUR);
+		boolean reused = false;
+		for(int i = 0; i < next.getPlaneCount(); i++)
+			reused |= next.getFrame(i) == frame;
+		assertTrue(reused);
+		assertSame(pool, camera.getFramePool());
+		next.release();
+	}
+
+	// a stack with more planes than the pool has frames doesn't wait for frames that never come back
+	@Test
+	public void largeStacksBypassThePool() {
+		SimulatedCamera camera = new SimulatedCamera(64, 64, 6.5);
+		FramePool pool = new FramePool(4, camera);
+		camera.setFramePool(pool);
+		AcquiredStack stack = camera.acquire(POSITION, GFP, 1, false, Lens.FIVE, MagnificationChanger.ONE_ZERO, Binning.FOUR);
+		assertEquals(11, stack.getPlaneCount());
+		assertFalse(stack.getFrame(0).isPooled());
+		assertEquals(4, pool.getFreeCount());
+		assertEquals(0, pool.getAcquiredCount());
+	}
+
+	// frames taken for a stack that fails are given back
+	@Test
+	public void failedStacksReleaseTheirFrames() {
+		SimulatedCamera camera = new SimulatedCamera(64, 64, 6.5);
+		FramePool pool = new FramePool(8, camera);
+		camera.setFramePool(pool);
+		AcquiredStack held = camera.acquire(POSITION, GFP, 2, false, Lens.FIVE, MagnificationChanger.ONE_ZERO, Binning.FOUR);
+		assertEquals(2, pool.getFreeCount());
+
+		// takes the two free frames, then fails waiting for the third one
+		Thread.currentThread().interrupt();
+		try {
+			camera.acquire(POSITION, GFP, 2, false, Lens.FIVE, MagnificationChanger.ONE_ZERO, Binning.FOUR);
+			fail();
+		} catch(RuntimeException expected) {
+		} finally {
+			Thread.interrupted();
+		}
+		assertEquals(2, pool.getFreeCount());
+		held.release();
+		assertEquals(8, pool.getFreeCount());
+	}
+
+	private static int max(short[] pixels) {
+		int max = 0;
+		for(short p : pixels)
+			max = Math.max(max, p & 0xffff);
+		return max;
+	}
+}
@@ -0,0 +1,82 @@
+package nlScript.mic;
+
+import nlScript.mic.Microscope.Binning;
+import nlScript.mic.Microscope.Channel;
+import nlScript.mic.Microscope.LED;
+import nlScript.mic.Microscope.LEDSetting;
+import nlScript.mic.Microscope.Lens;
+import nlScript.mic.Microscope.LoopOrder;
+import nlScript.mic.Microscope.MagnificationChanger;
+import nlScript.mic.Microscope.Position;
+
+import java.time.Duration;
+
+import static nlScript.mic.Microscope.ALL_POSITIONS;
+
+/**
+ * Simulated throughput of the channel and loop orders, and optics commands avoided in a time-lapse.
+ */
+public class SimulatedMicroscopeBenchmark {
+
+	private static Channel channel(String name, int exposureTime, Object... ledsAndIntensities) {
+		LEDSetting[] settings = new LEDSetting[ledsAndIntensities.length / 2];
+		for(int i = 0; i < settings.length; i++)
+			settings[i] = new LEDSetting((LED) ledsAndIntensities[2 * i], (Integer) ledsAndIntensities[2 * i + 1]);
+		LEDSetting[] remaining = new LEDSetting[settings.length - 1];
+		System.arraycopy(settings, 1, remaining, 0, remaining.length);
+		return new Channel(name, settings[0], remaining, exposureTime);
+	}
+
+	// Compares the throughput of the channel orderings on 48 positions with 5 channels, once with
+	// fast LEDs and once with a slow light source change. Then runs a time-lapse of a 5x overview
+	// and a 20x detail acquisition, to count the optics commands sent and avoided.
+	public static void main(String[] args) {
+		SimulatedMicroscope mic = new SimulatedMicroscope();
+		Channel[] channels = {
+				channel("GFP",         20, LED.LED_470, 50),
+				channel("Cy5",         40, LED.LED_625, 80),
+				channel("GFP-mCherry", 20, LED.LED_470, 50, LED.LED_567, 60),
+				channel("DAPI",        10, LED.LED_385, 30),
+				channel("mCherry",     20, LED.LED_567, 60),
+		};
+		Position[] positions = new Position[48];
+		for(int i = 0; i < positions.length; i++)
+			positions[i] = new Position("P" + i,
+					new Double[] { (i / 6) * 4500.0, (i % 6) * 4500.0, 100.0 },
+					new Double[] { 500.0, 500.0, 20.0 });
+
+		for(long switchMillis : new long[] { 50, 1000 }) {
+			System.out.println("LED switching takes " + switchMillis + " ms:");
+			mic.setLEDSwitchTime(Duration.ofMillis(switchMillis), Duration.ofMillis(5));
+			for(ChannelOrder.Strategy channelOrder : ChannelOrder.Strategy.values()) {
+				for(LoopOrder loopOrder : LoopOrder.values()) {
+					mic.resetDevice();
+					mic.setChannelOrder(channelOrder);
+					mic.setLoopOrder(loopOrder);
+					mic.acquirePositionsAndChannels(positions, channels, 2);
+					System.out.printf("  %-16s %-14s %7.1f s  %6.0f stacks/h  %5d LED switches  %6.1f mm stage travel%n",
+							channelOrder, loopOrder,
+							mic.getElapsedTime().toMillis() / 1000.0, mic.getStacksPerHour(),
+							mic.getLEDSwitchCount(), mic.getStageTravel() / 1000);
+				}
+			}
+		}
+
+		mic.reset();
+		for(Channel channel : channels)
+			mic.addChannel(channel);
+		for(Position position : positions)
+			mic.addPosition(position);
+		String[] all = { ALL_POSITIONS };
+		Acquisition overview = new Acquisition(all, new String[] { "DAPI" }, 2, Lens.FIVE, MagnificationChanger.ONE_ZERO, Binning.FOUR);
+		Acquisition detail = new Acquisition(new String[] { "P0", "P1" }, new String[] { "GFP" }, 2, Lens.TWENTY, MagnificationChanger.ONE_ZERO, Binning.ONE);
+		for(int cycle = 0; cycle < 100; cycle++) {
+			mic.acquire(overview);
+			mic.acquire(overview);
+			if(cycle % 10 == 0)
+				mic.acquire(detail);
+		}
+		System.out.printf("Time-lapse: %d optics commands sent, %d avoided, %.1f s simulated%n",
+				mic.getSentCommandCount(), mic.getAvoidedCommandCount(), mic.getElapsedTime().toMillis() / 1000.0);
+	}
+}
@@ -0,0 +1,116 @@
+package nlScript.mic;
+
+import nlScript.mic.Microscope.Binning;
+import nlScript.mic.Microscope.Channel;
+import nlScript.mic.Microscope.LED;
+import nlScript.mic.Microscope.LEDSetting;
+import nlScript.mic.Microscope.Lens;
+import nlScript.mic.Microscope.MagnificationChanger;
+import nlScript.mic.Microscope.Position;
+import org.junit.Test;
+
+import java.time.Duration;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class SimulatedMicroscopeTest {
+
+	private static final Position POSITION = new Position("A", new Double[] { 0.0, 0.0, 0.0 }, new Double[] { 100.0, 100.0, 10.0 });
+	private static final Channel GFP = new Channel("GFP", new LEDSetting(LED.LED_470, 50), new LEDSetting[0], 20);
+
+	// 5 ms to the bottom of the stack, 50 ms for the LED, 11 planes of 20 + 10 ms, 10 ms to the top
+	@Test
+	public void addsUpWhatTheDeviceWouldTake() {
+		SimulatedMicroscope microscope = new SimulatedMicroscope();
+		microscope.acquireSinglePositionAndChannel(POSITION, GFP, 1, false);
+		assertEquals(Duration.ofMillis(395), microscope.getElapsedTime());
+		assertEquals(1, microscope.getLEDSwitchCount());
+		assertEquals(15, microscope.getStageTravel(), 1e-9);
+
+		// continues top-down, with the LED already on
+		microscope.acquireSinglePositionAndChannel(POSITION, GFP, 1, true);
+		assertEquals(Duration.ofMillis(395 + 340), microscope.getElapsedTime());
+		assertEquals(1, microscope.getLEDSwitchCount());
+		assertEquals(2, microscope.getStackCount());
+	}
+
+	@Test
+	public void movesBetweenPositionsSettle() {
+		SimulatedMicroscope microscope = new SimulatedMicroscope();
+		microscope.setLEDSwitchTime(Duration.ZERO, Duration.ZERO);
+		Position far = new Position("B", new Double[] { 10000.0, 0.0, 0.0 }, new Double[] { 100.0, 100.0, 0.0 });
+		microscope.acquireSinglePositionAndChannel(far, GFP, 1, false);
+		// 1 s of xy travel, 30 ms settling, a single plane
+		assertEquals(Duration.ofMillis(1000 + 30 + 30), microscope.getElapsedTime());
+	}
+
+	@Test
+	public void onlyChangedOpticsTakeTime() {
+		SimulatedMicroscope microscope = new SimulatedMicroscope();
+		microscope.setBinning(Binning.TWO);
+		microscope.setLens(Lens.TWENTY);
+		assertEquals(Duration.ofMillis(2050), microscope.getElapsedTime());
+		microscope.setBinning(Binning.TWO);
+		microscope.setLens(Lens.TWENTY);
+		assertEquals(Duration.ofMillis(2050), microscope.getElapsedTime());
+
+		microscope.resetDevice();
+		assertEquals(Duration.ZERO, microscope.getElapsedTime());
+		microscope.setLens(Lens.TWENTY);
+		assertEquals(Duration.ofMillis(2000), microscope.getElapsedTime());
+	}
+
+	@Test
+	public void cameraProducesTheStacks() {
+		SimulatedMicroscope microscope = new SimulatedMicroscope();
+		microscope.setCamera(new SimulatedCamera(64, 64, 6.5));
+		int[] planes = new int[1];
+		microscope.addStackListener(stack -> planes[0] += stack.getPlaneCount());
+		microscope.acquireSinglePositionAndChannel(POSITION, GFP, 2, false);
+		assertEquals(6, planes[0]);
+	}
+
+	@Test
+	public void planeCount() {
+		assertEquals(11, Microscope.getPlaneCount(POSITION, 1));
+		assertEquals(4, Microscope.getPlaneCount(POSITION, 3));
+		Position flat = new Position("B", new Double[] { 0.0, 0.0, 0.0 }, new Double[] { 100.0, 100.0, 0.0 });
+		assertEquals(1, Microscope.getPlaneCount(flat, 1));
+	}
+
+	// a z step of 0 is rejected instead of overflowing the plane count
+	@Test
+	public void zStepMustBePositive() {
+		SimulatedMicroscope microscope = new SimulatedMicroscope();
+		microscope.setCamera(new SimulatedCamera(64, 64, 6.5));
+		try {
+			microscope.acquireSinglePositionAndChannel(POSITION, GFP, 0, false);
+			fail();
+		} catch(IllegalArgumentException expected) {
+		}
+		assertEquals(Duration.ZERO, microscope.getElapsedTime());
+		assertEquals(0, microscope.getStackCount());
+		try {
+			new Acquisition(new String[] { "A" }, new String[] { "GFP" }, 0, Lens.FIVE, MagnificationChanger.ONE_ZERO, Binning.ONE);
+			fail();
+		} catch(IllegalArgumentException expected) {
+		}
+	}
+
+	// incubation values are shown as they are set, without rounding artifacts
+	@Test
+	public void incubationIsSetInSteps() {
+		SimulatedMicroscope microscope = new SimulatedMicroscope();
+		microscope.setTemperature(37.3);
+		assertEquals("37.3", Double.toString(microscope.getTemperature()));
+		microscope.setCO2Concentration(5.1);
+		assertEquals("5.1", Double.toString(microscope.getCO2Concentration()));
+		microscope.setTemperature(36.96);
+		assertEquals("37.0", Double.toString(microscope.getTemperature()));
+		for(int i = 0; i <= 1000; i++) {
+			microscope.setTemperature(i / 10.0);
+			assertEquals(i / 10.0, microscope.getTemperature(), 0);
+		}
+	}
+}
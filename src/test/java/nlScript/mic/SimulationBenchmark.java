@@ -0,0 +1,67 @@
+package nlScript.mic;
+
+import nlScript.ParseException;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Dry-runs a week-long script on a virtual clock.
+ */
+public class SimulationBenchmark {
+
+	public static void main(String[] args) throws ParseException {
+		String script =
+				"Define channel 'DAPI':\n" +
+				"  excite with 10% at 385nm\n" +
+				"  use an exposure time of 20ms.\n" +
+				"\n" +
+				"Define channel 'GFP':\n" +
+				"  excite with 20% at 470nm\n" +
+				"  use an exposure time of 50ms.\n" +
+				"\n" +
+				"Define a position 'A1':\n" +
+				"  100 x 100 x 10 microns\n" +
+				"  centered at (0, 0, 0) microns.\n" +
+				"\n" +
+				"Define a position 'B1':\n" +
+				"  100 x 100 x 10 microns\n" +
+				"  centered at (9000, 0, 0) microns.\n" +
+				"\n" +
+				"At the beginning, acquire...\n" +
+				"  every 1 minute(s) for 168 hour(s)\n" +
+				"  all positions\n" +
+				"  all channels\n" +
+				"  with a plane distance of 1 microns\n" +
+				"  using the 5x lens with the 1.0x magnification changer and a binning of 1 x 1.\n" +
+				"\n" +
+				"At the beginning, adjust...\n" +
+				"  every 10 second(s) for 24 hour(s)\n" +
+				"  the temperature to 37\u00B0C.\n";
+
+		Simulation simulation = new Simulation();
+		LocalDateTime start = simulation.getClock().now();
+
+		AtomicLong nAcquisitions = new AtomicLong();
+		final LocalDateTime[] last = new LocalDateTime[] { start };
+		simulation.getLanguageControl().microscope.addAcquisitionListener((p, c) -> {
+			LocalDateTime now = simulation.getClock().now();
+			if(now.isBefore(last[0]))
+				throw new IllegalStateException("Acquisitions out of order: " + now + " < " + last[0]);
+			last[0] = now;
+			nAcquisitions.incrementAndGet();
+		});
+
+		long t0 = System.nanoTime();
+		simulation.run(script);
+		long t1 = System.nanoTime();
+
+		System.out.println("Simulated time: " + Duration.between(start, simulation.getClock().now()));
+		System.out.println("Acquisitions:   " + nAcquisitions.get());
+		System.out.println("Real time:      " + (t1 - t0) / 1000000 + "ms");
+		System.out.println("Temperature:    " + simulation.getLanguageControl().microscope.getTemperature());
+		System.out.println();
+		System.out.println(simulation.getLanguageControl().getStatistics().getSummary());
+	}
+}
@@ -0,0 +1,71 @@
+package nlScript.mic;
+
+import ij.ImagePlus;
+import ij.ImageStack;
+import ij.io.FileSaver;
+import ij.process.ShortProcessor;
+import nlScript.mic.Microscope.Binning;
+import nlScript.mic.Microscope.Channel;
+import nlScript.mic.Microscope.LED;
+import nlScript.mic.Microscope.LEDSetting;
+import nlScript.mic.Microscope.Lens;
+import nlScript.mic.Microscope.MagnificationChanger;
+import nlScript.mic.Microscope.Position;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Write throughput of the StackWriter compared to ImageJ's FileSaver.
+ */
+public class StackWriterBenchmark {
+
+	// Writes 24 stacks of 21 planes of 1024x1024 pixels from the simulated camera, with ImageJ's
+	// FileSaver (one file per stack) and with the stack writer, and reports MB/s and how long
+	// acquisition was held up
+	public static void main(String[] args) throws IOException {
+		File root = new File(args.length > 0 ? args[0] : System.getProperty("java.io.tmpdir"), "stack-writer-benchmark");
+		Benchmarks.deleteRecursively(root);
+		SimulatedCamera camera = new SimulatedCamera();
+		Channel channel = new Channel("GFP", new LEDSetting(LED.LED_470, 50), new LEDSetting[0], 10);
+		AcquiredStack[] stacks = new AcquiredStack[24];
+		for(int i = 0; i < stacks.length; i++) {
+			Position position = new Position("P" + (i % 4), new Double[] { i * 1000.0, 0.0, 100.0 }, new Double[] { 500.0, 500.0, 20.0 });
+			stacks[i] = camera.acquire(position, channel, 1, i % 2 == 1, Lens.TWENTY, MagnificationChanger.ONE_ZERO, Binning.TWO);
+		}
+		long total = 0;
+		for(AcquiredStack stack : stacks)
+			total += stack.getSizeInBytes();
+
+		for(int round = 0; round < 2; round++) {
+			File imagej = new File(root, "imagej-" + round);
+			imagej.mkdirs();
+			long t0 = System.nanoTime();
+			for(int i = 0; i < stacks.length; i++) {
+				AcquiredStack stack = stacks[i];
+				ImageStack is = new ImageStack(stack.getWidth(), stack.getHeight());
+				for(int p = 0; p < stack.getPlaneCount(); p++)
+					is.addSlice(new ShortProcessor(stack.getWidth(), stack.getHeight(), stack.getPlane(p), null));
+				new FileSaver(new ImagePlus("stack", is)).saveAsTiffStack(new File(imagej, "stack" + i + ".tif").getPath());
+			}
+			long t1 = System.nanoTime();
+
+			StackWriter writer = new StackWriter(new File(root, "writer-" + round));
+			long t2 = System.nanoTime();
+			for(AcquiredStack stack : stacks)
+				writer.stackAcquired(stack);
+			long t3 = System.nanoTime();
+			writer.close();
+			long t4 = System.nanoTime();
+
+			if(round == 1) {
+				System.out.printf("%d MB in %d stacks%n", total >> 20, stacks.length);
+				System.out.printf("ImagePlus saving: %6.0f MB/s, acquisition held up for %5.0f ms%n",
+						total / 1e6 / ((t1 - t0) / 1e9), (t1 - t0) / 1e6);
+				System.out.printf("StackWriter:      %6.0f MB/s, acquisition held up for %5.0f ms (waited %d ms for a full queue)%n",
+						writer.getWrittenBytes() / 1e6 / ((t4 - t2) / 1e9), (t3 - t2) / 1e6, writer.getBlockedMillis());
+			}
+		}
+		Benchmarks.deleteRecursively(root);
+	}
+}
@@ -0,0 +1,122 @@
+package nlScript.mic;
+
+import ij.IJ;
+import ij.ImagePlus;
+import nlScript.mic.Microscope.Binning;
+import nlScript.mic.Microscope.Channel;
+import nlScript.mic.Microscope.LED;
+import nlScript.mic.Microscope.LEDSetting;
+import nlScript.mic.Microscope.Lens;
+import nlScript.mic.Microscope.MagnificationChanger;
+import nlScript.mic.Microscope.Position;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class StackWriterTest {
+
+	private static final Position POSITION = new Position("A 1", new Double[] { 0.0, 0.0, 0.0 }, new Double[] { 100.0, 100.0, 4.0 });
+	private static final Channel GFP = new Channel("GFP", new LEDSetting(LED.LED_470, 50), new LEDSetting[0], 20);
+
+	@Rule
+	public TemporaryFolder tmp = new TemporaryFolder();
+
+	private static AcquiredStack acquire(SimulatedCamera camera, boolean topDown) {
+		return camera.acquire(POSITION, GFP, 2, topDown, Lens.FIVE, MagnificationChanger.ONE_ZERO, Binning.ONE);
+	}
+
+	// stacks are appended bottom plane first, and can be opened with ImageJ
+	@Test
+	public void stacksCanBeOpened() throws IOException {
+		File folder = tmp.newFolder();
+		SimulatedCamera camera = new SimulatedCamera(40, 30, 6.5);
+		FramePool pool = new FramePool(8, camera);
+		camera.setFramePool(pool);
+		StackWriter writer = new StackWriter(folder);
+
+		AcquiredStack bottomUp = acquire(camera, false);
+		short[] bottom = bottomUp.getPlane(0);
+		writer.stackAcquired(bottomUp);
+		bottomUp.release();
+		AcquiredStack topDown = acquire(camera, true);
+		short[] top = topDown.getPlane(0);
+		writer.stackAcquired(topDown);
+		topDown.release();
+		writer.close();
+
+		assertEquals(2, writer.getWrittenStacks());
+		assertEquals(8, pool.getFreeCount());
+		File file = new File(folder, "A_1_GFP_000.tif");
+		assertTrue(file.exists());
+		ImagePlus image = IJ.openImage(file.getPath());
+		assertNotNull(image);
+		assertEquals(40, image.getWidth());
+		assertEquals(30, image.getHeight());
+		assertEquals(6, image.getStackSize());
+		assertEquals(16, image.getBitDepth());
+		assertEquals(2, image.getCalibration().pixelDepth, 1e-9);
+		assertEquals(1.3, image.getCalibration().pixelWidth, 1e-6);
+		assertArrayEquals(bottom, (short[]) image.getStack().getPixels(1));
+		// the top-down stack's first plane is its top one
+		assertArrayEquals(top, (short[]) image.getStack().getPixels(6));
+	}
+
+	@Test
+	public void largeFilesAreSplitIntoChunks() throws IOException {
+		File folder = tmp.newFolder();
+		SimulatedCamera camera = new SimulatedCamera(100, 100, 6.5);
+		// room for about four planes per chunk
+		StackWriter writer = new StackWriter(folder, 4 * 20500, StackWriter.DEFAULT_MAX_QUEUED);
+		for(int i = 0; i < 3; i++) {
+			AcquiredStack stack = acquire(camera, false);
+			writer.stackAcquired(stack);
+			stack.release();
+		}
+		writer.close();
+
+		int planes = 0;
+		for(int chunk = 0; chunk < 3; chunk++) {
+			File file = new File(folder, String.format("A_1_GFP_%03d.tif", chunk));
+			assertTrue(file.getName(), file.exists());
+			assertTrue(file.length() <= 4 * 20500);
+			ImagePlus image = IJ.openImage(file.getPath());
+			assertNotNull(image);
+			// every chunk carries the calibration
+			assertEquals(file.getName(), 2, image.getCalibration().pixelDepth, 1e-9);
+			assertEquals(file.getName(), "micron", image.getCalibration().getUnit());
+			planes += image.getStackSize();
+		}
+		assertEquals(9, planes);
+	}
+
+	// stacks that arrive after close() are neither written nor kept
+	@Test
+	public void stacksAfterCloseAreNotRetained() throws IOException {
+		File folder = tmp.newFolder();
+		SimulatedCamera camera = new SimulatedCamera(40, 30, 6.5);
+		FramePool pool = new FramePool(8, camera);
+		camera.setFramePool(pool);
+		StackWriter writer = new StackWriter(folder);
+		writer.close();
+
+		AcquiredStack stack = acquire(camera, false);
+		writer.stackAcquired(stack);
+		stack.release();
+		assertEquals(0, writer.getWrittenStacks());
+		assertEquals(8, pool.getFreeCount());
+	}
+
+	// TIFF offsets are 32 bit
+	@Test(expected = IllegalArgumentException.class)
+	public void chunksMustBeAddressable() {
+		new StackWriter(tmp.getRoot(), 0x100000000L, StackWriter.DEFAULT_MAX_QUEUED);
+	}
+}
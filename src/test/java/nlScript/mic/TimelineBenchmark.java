@@ -0,0 +1,39 @@
+package nlScript.mic;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Dispatch jitter of a Timeline, with and without precision mode.
+ */
+public class TimelineBenchmark {
+
+	private static Histogram measureJitter(boolean precise, int n, long intervalMillis) {
+		Timeline<LocalDateTime> timeline = new Timeline<>();
+		timeline.setPrecisionMode(precise);
+		Histogram lateness = new Histogram();
+		LocalDateTime start = LocalDateTime.now().plusNanos(TimeUnit.MILLISECONDS.toNanos(100));
+		for(long i = 0; i < n; i++) {
+			LocalDateTime time = start.plusNanos(TimeUnit.MILLISECONDS.toNanos(i * intervalMillis));
+			timeline.put(time, time);
+		}
+		timeline.process(time -> lateness.record(Duration.between(time, timeline.getClock().now()).toNanos()));
+		timeline.waitForProcessing();
+		return lateness;
+	}
+
+	// Compares the dispatch lateness of the normal and the precision mode
+	public static void main(String[] args) throws InterruptedException {
+		int n = 1000;
+		for(boolean precise : new boolean[] { false, true }) {
+			Histogram h = measureJitter(precise, n, 5);
+			System.out.printf("%-10s lateness [us]: mean %7.1f  median %7.1f  99%% %7.1f  max %7.1f%n",
+					precise ? "precision" : "normal",
+					h.getMean() / 1000,
+					h.getValueAtPercentile(50) / 1000.0,
+					h.getValueAtPercentile(99) / 1000.0,
+					h.getMax() / 1000.0);
+		}
+	}
+}
@@ -0,0 +1,232 @@
+package nlScript.mic;
+
+import org.junit.Test;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TimelineTest {
+
+	private static final LocalDateTime START = LocalDateTime.of(2024, 1, 1, 12, 0);
+
+	@Test
+	public void entriesRunInOrderOfTime() {
+		Timeline<String> timeline = new Timeline<>();
+		timeline.setClock(new VirtualClock(START));
+		timeline.put(START.plusSeconds(3), "c");
+		timeline.put(START.plusSeconds(1), "a");
+		timeline.put(START.plusSeconds(2), "b1");
+		timeline.put(START.plusSeconds(2), "b2");
+
+		List<String> executed = new ArrayList<>();
+		timeline.process(executed::add);
+		timeline.waitForProcessing();
+		assertEquals(Arrays.asList("a", "b1", "b2", "c"), executed);
+		assertTrue(timeline.isEmpty());
+	}
+
+	// only the next entry of a recurrence is stored, the following one when it is taken
+	@Test
+	public void recurringEntriesAreCreatedLazily() {
+		Timeline<Integer> timeline = new Timeline<>();
+		VirtualClock clock = new VirtualClock(START);
+		timeline.setClock(clock);
+		List<Integer> created = new ArrayList<>();
+		timeline.putRecurring(START.plusSeconds(10), Duration.ofSeconds(10), 5, cycle -> {
+			created.add(cycle);
+			return cycle;
+		});
+		assertEquals(Arrays.asList(0), created);
+
+		List<Integer> executed = new ArrayList<>();
+		timeline.process(executed::add);
+		timeline.waitForProcessing();
+		assertEquals(Arrays.asList(0, 1, 2, 3, 4), executed);
+		assertEquals(Arrays.asList(0, 1, 2, 3, 4), created);
+		assertEquals(START.plusSeconds(50), clock.now());
+	}
+
+	// pages include the cycles of a recurrence that are not stored yet, each one is created only once
+	@Test
+	public void pagesIncludeFutureCycles() {
+		Timeline<String> timeline = new Timeline<>();
+		VirtualClock clock = new VirtualClock(START);
+		timeline.setClock(clock);
+		List<Integer> created = new ArrayList<>();
+		timeline.putRecurring(START.plusSeconds(10), Duration.ofSeconds(10), 5, cycle -> {
+			created.add(cycle);
+			return "r" + cycle;
+		});
+		timeline.put(START.plusSeconds(25), "x");
+		timeline.put(START.plusSeconds(30), "y");
+
+		List<String> seen = new ArrayList<>();
+		Timeline.Page<String> page = timeline.getNextEvents(2);
+		while(true) {
+			for(Timeline.Event<String> e : page.getEvents()) {
+				seen.add(e.getEntry());
+				assertEquals(e.getTime(), START.plusSeconds(timeOf(e.getEntry())));
+			}
+			if(!page.hasMore())
+				break;
+			page = page.next(2);
+		}
+		assertEquals(Arrays.asList("r0", "r1", "x", "y", "r2", "r3", "r4"), seen);
+
+		List<String> later = new ArrayList<>();
+		for(Timeline.Event<String> e : timeline.getPage(START.plusSeconds(35), START.plusSeconds(50), 10).getEvents())
+			later.add(e.getEntry());
+		assertEquals(Arrays.asList("r3"), later);
+
+		List<String> executed = new ArrayList<>();
+		timeline.process(executed::add);
+		timeline.waitForProcessing();
+		assertEquals(Arrays.asList("r0", "r1", "x", "y", "r2", "r3", "r4"), executed);
+		assertEquals(Arrays.asList(0, 1, 2, 3, 4), created);
+	}
+
+	private static int timeOf(String entry) {
+		switch(entry) {
+			case "x": return 25;
+			case "y": return 30;
+			default: return 10 + 10 * Integer.parseInt(entry.substring(1));
+		}
+	}
+
+	// events of the same time are not split between pages, and every event is returned once
+	@Test
+	public void pagesCoverAllEvents() {
+		Timeline<Integer> timeline = new Timeline<>();
+		for(int i = 0; i < 10; i++)
+			timeline.put(START.plusSeconds(i / 3), i);
+
+		List<Integer> seen = new ArrayList<>();
+		Timeline.Page<Integer> page = timeline.getNextEvents(4);
+		while(true) {
+			for(Timeline.Event<Integer> e : page.getEvents())
+				seen.add(e.getEntry());
+			if(!page.hasMore())
+				break;
+			page = page.next(4);
+		}
+		assertEquals(Arrays.asList(0, 1, 2, 3, 4, 5, 6, 7, 8, 9), seen);
+	}
+
+	// virtual time only moves on once the entries running in lanes are done
+	@Test
+	public void virtualTimeWaitsForLanes() {
+		Timeline<LocalDateTime> timeline = new Timeline<>();
+		VirtualClock clock = new VirtualClock(START);
+		timeline.setClock(clock);
+		for(int i = 0; i < 300; i++)
+			timeline.put(START.plusSeconds(i / 2), START.plusSeconds(i / 2));
+
+		AtomicLong maxLateness = new AtomicLong();
+		AtomicInteger executed = new AtomicInteger();
+		timeline.process(planned -> {
+			long lateness = Duration.between(planned, clock.now()).toNanos();
+			maxLateness.accumulateAndGet(Math.abs(lateness), Math::max);
+			// takes a while in real time
+			LockSupport.parkNanos(100_000);
+			executed.incrementAndGet();
+		}, planned -> planned.getSecond() % 3);
+		timeline.waitForProcessing();
+
+		assertEquals(300, executed.get());
+		assertEquals(0, maxLateness.get());
+		assertEquals(START.plusSeconds(149), clock.now());
+	}
+
+	// an entry that waits in its lane is released on time, but starts late
+	@Test
+	public void releaseTimeExcludesWaitingInTheLane() {
+		Timeline<String> timeline = new Timeline<>();
+		LocalDateTime due = LocalDateTime.now().plusNanos(20_000_000);
+		timeline.put(due, "slow");
+		timeline.put(due, "waiting");
+		List<Duration> released = new ArrayList<>();
+		List<Duration> started = new ArrayList<>();
+		timeline.process(e -> {
+			released.add(Duration.between(due, Timeline.getReleaseTime()));
+			started.add(Duration.between(due, LocalDateTime.now()));
+			long end = System.nanoTime() + 200_000_000;
+			while(e.equals("slow") && System.nanoTime() < end)
+				LockSupport.parkNanos(end - System.nanoTime());
+		}, e -> "same lane");
+		timeline.waitForProcessing();
+
+		assertTrue(released.get(1).toMillis() < 100);
+		assertTrue(started.get(1).toMillis() >= 200);
+		assertEquals(null, Timeline.getReleaseTime());
+	}
+
+	@Test
+	public void watchdogInterruptsStalledEntries() throws InterruptedException {
+		Timeline<String> timeline = new Timeline<>();
+		timeline.setClock(new VirtualClock(START));
+		List<String> stalled = new ArrayList<>();
+		timeline.setWatchdog(e -> Duration.ofMillis(50), e -> false, e -> {
+			synchronized(stalled) {
+				stalled.add(e);
+			}
+		});
+		AtomicBoolean interrupted = new AtomicBoolean(false);
+		CountDownLatch done = new CountDownLatch(1);
+		timeline.put(START, "stalls");
+		timeline.process(e -> {
+			try {
+				Thread.sleep(10000);
+			} catch(InterruptedException ex) {
+				interrupted.set(true);
+			}
+			done.countDown();
+		});
+		assertTrue(done.await(5, TimeUnit.SECONDS));
+		timeline.waitForProcessing();
+		assertTrue(interrupted.get());
+		assertEquals(Arrays.asList("stalls"), stalled);
+		assertFalse(timeline.isProcessing());
+	}
+
+	// an isolated entry is left to finish on its own, while its lane continues on a new thread
+	@Test
+	public void isolatedEntriesAreNotInterrupted() throws InterruptedException {
+		Timeline<String> timeline = new Timeline<>();
+		timeline.setClock(new VirtualClock(START));
+		timeline.setWatchdog(e -> Duration.ofMillis(50), e -> true, e -> {});
+		AtomicBoolean interrupted = new AtomicBoolean(false);
+		CountDownLatch nextRan = new CountDownLatch(1);
+		CountDownLatch stalledDone = new CountDownLatch(1);
+		timeline.put(START, "stalls");
+		timeline.put(START.plusSeconds(1), "next");
+		timeline.process(e -> {
+			if(e.equals("next")) {
+				nextRan.countDown();
+				return;
+			}
+			try {
+				// until the next entry ran on the new thread
+				assertTrue(nextRan.await(5, TimeUnit.SECONDS));
+			} catch(InterruptedException ex) {
+				interrupted.set(true);
+			}
+			stalledDone.countDown();
+		}, e -> "same lane");
+		assertTrue(stalledDone.await(5, TimeUnit.SECONDS));
+		timeline.waitForProcessing();
+		assertFalse(interrupted.get());
+	}
+}